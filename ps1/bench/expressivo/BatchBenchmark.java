@@ -0,0 +1,69 @@
+package expressivo;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Compares evaluating one expression over many rows of bindings row by row,
+ * through Commands.simplify(String, Map), with evaluating whole columns at
+ * once through Expression.batch, at 1K, 1M and 10M rows.
+ *
+ * <p>The per-row path takes microseconds per row, so it is timed over the
+ * first SAMPLE_ROWS rows only; both paths are reported per row. Run with a
+ * heap large enough for the 10M-row columns, e.g. -Xmx2g.
+ */
+public class BatchBenchmark {
+
+    private static final String INPUT = "(x + 2)*(y + 3.75)*(z + 0.125) + x*y*z + 3*x*x + 0.5*y";
+    private static final String[] ORDER = { "x", "y", "z" };
+    private static final int[] ROWS = { 1000, 1000000, 10000000 };
+    private static final int SAMPLE_ROWS = 1000;
+
+    /**
+     * Run the benchmark.
+     * @param args unused
+     */
+    public static void main(String[] args) {
+        final Microbench bench = new Microbench();
+        final BatchEvaluator batch = Expression.parse(INPUT).batch(ORDER);
+        for (int rows : ROWS) {
+            final double[][] columns = randomColumns(rows, new Random(6005));
+            final double[] results = new double[rows];
+            final int sample = Math.min(rows, SAMPLE_ROWS);
+
+            final Microbench.Result perRow = bench.run("Commands.simplify per row, " + sample + " of " + rows,
+                    () -> simplifyRows(columns, sample));
+            final Microbench.Result columnar = bench.run("batch(...).eval, " + rows + " rows", () -> {
+                batch.eval(columns, results);
+                return results[rows - 1];
+            });
+            final double perRowNanos = perRow.nanosPerOp / sample;
+            final double columnarNanos = columnar.nanosPerOp / rows;
+            System.out.printf("%,d rows: %.1f ns/row per row, %.2f ns/row batch, %.0fx%n",
+                    rows, perRowNanos, columnarNanos, perRowNanos / columnarNanos);
+        }
+    }
+
+    private static double simplifyRows(double[][] columns, int rows) {
+        final Map<String, Double> environment = new HashMap<>();
+        double total = 0;
+        for (int row = 0; row < rows; row++) {
+            for (int i = 0; i < ORDER.length; i++) {
+                environment.put(ORDER[i], columns[i][row]);
+            }
+            total += Double.parseDouble(Commands.simplify(INPUT, environment));
+        }
+        return total;
+    }
+
+    static double[][] randomColumns(int rows, Random random) {
+        final double[][] columns = new double[ORDER.length][rows];
+        for (double[] column : columns) {
+            for (int row = 0; row < rows; row++) {
+                column[row] = random.nextDouble() * 100;
+            }
+        }
+        return columns;
+    }
+}
@@ -0,0 +1,175 @@
+package expressivo;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+/**
+ * Compares two JSON result files of JMH (written with -rf json, as by
+ * gradle :bench:jmh), e.g. of the main branch and of a change, benchmark by
+ * benchmark.
+ *
+ * <p>Usage:
+ * <pre>
+ *   java expressivo.BenchmarkCompare baseline.json current.json [threshold-percent]
+ * </pre>
+ * Prints the score of each benchmark in both files and the change, and the
+ * change in bytes allocated per operation where the gc profiler measured it,
+ * marking changes beyond the threshold (default 10%), and lists the benchmarks
+ * in only one file. A benchmark is identified by its name and parameters. A
+ * change counts only if it also exceeds the score errors JMH reported, so
+ * that noise is not a regression. Exits with status 1 if any benchmark is
+ * slower by more than the threshold, so that a script can fail on a regression.
+ */
+public class BenchmarkCompare {
+
+    private static final double DEFAULT_THRESHOLD_PERCENT = 10;
+
+    /** Secondary metric of the gc profiler: bytes allocated per operation. */
+    private static final String ALLOCATION_METRIC = "gc.alloc.rate.norm";
+
+    /**
+     * Compare two result files.
+     * @param args baseline file, current file and optionally the threshold in percent
+     * @throws IOException if a file cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || args.length > 3) {
+            System.err.println("usage: BenchmarkCompare baseline.json current.json [threshold-percent]");
+            System.exit(2);
+        }
+        final double threshold = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_THRESHOLD_PERCENT;
+        final Map<String, Result> baseline = read(args[0]);
+        final Map<String, Result> current = read(args[1]);
+
+        int regressions = 0;
+        System.out.printf("%-60s %14s %14s %9s %12s%n", "benchmark", "baseline", "current", "change", "alloc B/op");
+        for (Map.Entry<String, Result> entry : current.entrySet()) {
+            final Result before = baseline.get(entry.getKey());
+            if (before == null) {
+                continue;
+            }
+            final Result after = entry.getValue();
+            if (!before.unit.equals(after.unit)) {
+                System.out.printf("%-60s units differ: %s and %s%n", entry.getKey(), before.unit, after.unit);
+                continue;
+            }
+            final double change = 100 * (after.score / before.score - 1);
+            final boolean significant = after.score - after.error > before.score + before.error
+                    || after.score + after.error < before.score - before.error;
+            final String mark;
+            if (significant && change > threshold) {
+                mark = "  REGRESSION";
+                regressions++;
+            } else if (significant && change < -threshold) {
+                mark = "  improved";
+            } else {
+                mark = "";
+            }
+            final String allocation = Double.isNaN(before.bytesPerOp) || Double.isNaN(after.bytesPerOp)
+                    ? "-"
+                    : String.format("%+.0f", after.bytesPerOp - before.bytesPerOp);
+            System.out.printf("%-60s %14.1f %14.1f %+8.1f%% %12s%s%n",
+                    entry.getKey(), before.score, after.score, change, allocation, mark);
+        }
+        for (String name : baseline.keySet()) {
+            if (!current.containsKey(name)) {
+                System.out.println("only in baseline: " + name);
+            }
+        }
+        for (String name : current.keySet()) {
+            if (!baseline.containsKey(name)) {
+                System.out.println("only in current: " + name);
+            }
+        }
+        System.out.printf("%d regression(s) beyond %.1f%%%n", regressions, threshold);
+        if (regressions > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * The primary metric of one benchmark, for a mode whose greater score is
+     * worse, such as average time, and its allocation per operation.
+     */
+    static final class Result {
+        /** score of the primary metric */
+        final double score;
+        /** error of score at JMH's confidence level, 0 if JMH did not report one */
+        final double error;
+        /** unit of score and error, e.g. "ns/op" */
+        final String unit;
+        /** bytes allocated per operation, NaN if not measured */
+        final double bytesPerOp;
+
+        Result(double score, double error, String unit, double bytesPerOp) {
+            this.score = score;
+            this.error = error;
+            this.unit = unit;
+            this.bytesPerOp = bytesPerOp;
+        }
+    }
+
+    /**
+     * @param file a JSON result file written by JMH
+     * @return map from benchmark to its result, in file order; a benchmark is
+     *         named by its class and method, without the package, followed by
+     *         its parameters, e.g. "StageBenchmarks.simplify workload=wideSum/100"
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if the file is not a JSON result file of JMH
+     */
+    static Map<String, Result> read(String file) throws IOException {
+        final JsonArray runs;
+        try (Reader in = Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)) {
+            runs = JsonParser.parseReader(in).getAsJsonArray();
+        } catch (JsonParseException | IllegalStateException e) {
+            throw new IllegalArgumentException(file + ": not a JMH result file", e);
+        }
+        final Map<String, Result> results = new LinkedHashMap<>();
+        for (JsonElement element : runs) {
+            try {
+                final JsonObject run = element.getAsJsonObject();
+                final JsonObject primary = run.getAsJsonObject("primaryMetric");
+                final JsonObject secondary = run.getAsJsonObject("secondaryMetrics");
+                final JsonElement error = primary.get("scoreError");
+                final double bytesPerOp = secondary != null && secondary.has(ALLOCATION_METRIC)
+                        ? secondary.getAsJsonObject(ALLOCATION_METRIC).get("score").getAsDouble()
+                        : Double.NaN;
+                results.put(name(run), new Result(primary.get("score").getAsDouble(),
+                        error == null || error.getAsString().equals("NaN") ? 0 : error.getAsDouble(),
+                        primary.get("scoreUnit").getAsString(), bytesPerOp));
+            } catch (NullPointerException | IllegalStateException | ClassCastException | NumberFormatException e) {
+                throw new IllegalArgumentException(file + ": bad result " + element, e);
+            }
+        }
+        return results;
+    }
+
+    private static String name(JsonObject run) {
+        final String benchmark = run.get("benchmark").getAsString();
+        final StringBuilder name = new StringBuilder(benchmark.startsWith("expressivo.")
+                ? benchmark.substring("expressivo.".length())
+                : benchmark);
+        if (run.has("params")) {
+            final Map<String, String> params = new TreeMap<>();
+            for (Map.Entry<String, JsonElement> param : run.getAsJsonObject("params").entrySet()) {
+                params.put(param.getKey(), param.getValue().getAsString());
+            }
+            for (Map.Entry<String, String> param : params.entrySet()) {
+                name.append(' ').append(param.getKey()).append('=').append(param.getValue());
+            }
+        }
+        return name.toString();
+    }
+}
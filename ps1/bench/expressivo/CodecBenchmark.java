@@ -0,0 +1,51 @@
+package expressivo;
+
+/**
+ * Compares the binary encoding of ExpressionCodec with the text form
+ * (toString, and Expression.parse to read it back) on large derivatives, as
+ * computed by Expression.differentiate and by the textbook rules alone
+ * (Differentiation.differentiateVerbatim): encoded size, and the time to
+ * encode and decode.
+ */
+public class CodecBenchmark {
+
+    private static final String[] INPUTS = {
+        "x*x*x*x*x*x*y*y + 3*x*x*y + 0.1*x",
+        "(x + 1)*(x*y + 2)*(x + y + 3)*(y + 4)*(x + 0.5)",
+    };
+    private static final int ORDER = 3;
+
+    /**
+     * Run the benchmark.
+     * @param args unused
+     */
+    public static void main(String[] args) {
+        final Microbench bench = new Microbench();
+        for (String input : INPUTS) {
+            for (boolean verbatim : new boolean[] { false, true }) {
+                Expression e = Expression.parse(input);
+                for (int i = 0; i < ORDER; i++) {
+                    e = verbatim ? Differentiation.differentiateVerbatim(e, "x") : e.differentiate("x");
+                }
+                System.out.printf("%sd^%d/dx^%d of %s:%n", verbatim ? "verbatim " : "", ORDER, ORDER, input);
+                run(bench, e);
+            }
+        }
+    }
+
+    private static void run(Microbench bench, Expression derivative) {
+        final String text = derivative.toString();
+        final byte[] binary = ExpressionCodec.encode(derivative);
+        System.out.printf("  text %,d chars, binary %,d bytes (%.1fx smaller)%n",
+                text.length(), binary.length, (double) text.length() / binary.length);
+
+        final Microbench.Result toString = bench.run("  toString", () -> derivative.toString());
+        final Microbench.Result encode = bench.run("  encode", () -> ExpressionCodec.encode(derivative));
+        System.out.printf("    encode %.1f MB/s, %.2fx toString%n",
+                binary.length * encode.opsPerSecond() / 1e6, toString.nanosPerOp / encode.nanosPerOp);
+        final Microbench.Result parse = bench.run("  parse", () -> Expression.parse(text));
+        final Microbench.Result decode = bench.run("  decode", () -> ExpressionCodec.decode(binary));
+        System.out.printf("    decode %.1f MB/s, %.2fx parse%n",
+                binary.length * decode.opsPerSecond() / 1e6, parse.nanosPerOp / decode.nanosPerOp);
+    }
+}
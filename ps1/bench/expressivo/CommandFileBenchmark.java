@@ -0,0 +1,139 @@
+package expressivo;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Measures the throughput in commands per second of a generated script of
+ * COMMANDS commands, executed by the interactive loop Main had before batch
+ * mode (a prompt per line, a regex compiled per command, console output
+ * flushed per line) and by CommandFile, both writing to a file.
+ */
+public class CommandFileBenchmark {
+
+    private static final int COMMANDS = Integer.getInteger("bench.commands", 200_000);
+
+    /**
+     * Run the benchmark.
+     * @param args unused
+     * @throws IOException if the script or output files cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        final Microbench bench = new Microbench();
+        final Path script = Files.createTempFile("commands", ".txt");
+        final Path output = Files.createTempFile("output", ".txt");
+        try {
+            Files.write(script, script(new Random(6005), COMMANDS), StandardCharsets.UTF_8);
+
+            final Microbench.Result loop = bench.run("interactive loop, " + COMMANDS + " commands", () -> {
+                try (PrintStream out = new PrintStream(
+                        new BufferedOutputStream(new FileOutputStream(output.toFile())), true)) {
+                    return interactiveLoop(script, out);
+                } catch (IOException ioe) {
+                    throw new UncheckedIOException(ioe);
+                }
+            });
+            final Microbench.Result batch = bench.run("batch mode, " + COMMANDS + " commands", () -> {
+                try (OutputStream out = new FileOutputStream(output.toFile())) {
+                    return CommandFile.run(script.toString(), out);
+                } catch (IOException ioe) {
+                    throw new UncheckedIOException(ioe);
+                }
+            });
+            System.out.printf("  interactive loop %,.0f commands/s, batch mode %,.0f commands/s (%.2fx)%n",
+                    COMMANDS * loop.opsPerSecond(), COMMANDS * batch.opsPerSecond(),
+                    loop.nanosPerOp / batch.nanosPerOp);
+        } finally {
+            Files.delete(script);
+            Files.delete(output);
+        }
+    }
+
+    /**
+     * @param random source of randomness
+     * @param commands number of lines
+     * @return a script of expressions each followed by a few !d/d and !simplify commands
+     */
+    static List<String> script(Random random, int commands) {
+        final String[] variables = { "x", "y", "z" };
+        final List<String> lines = new ArrayList<>();
+        while (lines.size() < commands) {
+            final StringBuilder expression = new StringBuilder();
+            final int terms = 1 + random.nextInt(4);
+            for (int t = 0; t < terms; t++) {
+                expression.append(t == 0 ? "" : " + ").append(random.nextInt(10));
+                for (int f = random.nextInt(3); f > 0; f--) {
+                    expression.append("*").append(variables[random.nextInt(variables.length)]);
+                }
+            }
+            lines.add(expression.toString());
+            for (int c = random.nextInt(4); c > 0 && lines.size() < commands; c--) {
+                lines.add(random.nextBoolean()
+                        ? "!d/d" + variables[random.nextInt(variables.length)]
+                        : "!simplify x=" + random.nextInt(5) + " y=" + random.nextInt(5));
+            }
+        }
+        return lines;
+    }
+
+    /*
+     * The loop of Main.main before batch mode, reading the script as standard input.
+     */
+    private static long interactiveLoop(Path script, PrintStream out) throws IOException {
+        long commands = 0;
+        try (BufferedReader in = Files.newBufferedReader(script)) {
+            String current = null;
+            for (String input = in.readLine(); input != null && !input.isEmpty(); input = in.readLine()) {
+                out.print("> ");
+                commands++;
+                try {
+                    final String output;
+                    if (input.startsWith("!d/d")) {
+                        final Matcher matcher = Pattern.compile("!d/d([A-Za-z]+) *").matcher(input);
+                        if (!matcher.matches() || current == null) {
+                            out.println("error");
+                            continue;
+                        }
+                        output = Commands.differentiate(current, matcher.group(1));
+                        current = output;
+                    } else if (input.startsWith("!simplify")) {
+                        final Pattern assignment = Pattern.compile("([A-Za-z]+) *= *([^ ]+)");
+                        if (!Pattern.compile("!simplify( +" + assignment.pattern() + ")* *").matcher(input).matches()
+                                || current == null) {
+                            out.println("error");
+                            continue;
+                        }
+                        final Map<String, Double> environment = new HashMap<>();
+                        final Matcher matcher = assignment.matcher(input);
+                        while (matcher.find()) {
+                            environment.put(matcher.group(1), Double.valueOf(matcher.group(2)));
+                        }
+                        output = Commands.simplify(current, environment);
+                    } else {
+                        output = Expression.parse(input).toString();
+                        current = output;
+                    }
+                    out.println(output);
+                } catch (RuntimeException re) {
+                    out.println(re.getClass().getName() + ": " + re.getMessage());
+                }
+            }
+        }
+        return commands;
+    }
+}
@@ -0,0 +1,69 @@
+package expressivo;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compares parsing a !simplify command with 50 assignments by the regular
+ * expressions Main used before (compiled per command, the line matched and
+ * then scanned again, values boxed into a new HashMap) with CommandLexer
+ * parsing it in one pass into a reused Environment; and the same for whole
+ * !simplify commands executed by a Main.Session.
+ */
+public class CommandLexerBenchmark {
+
+    private static final int VARIABLES = 50;
+
+    /**
+     * Run the benchmark.
+     * @param args unused
+     */
+    public static void main(String[] args) {
+        final Microbench bench = new Microbench();
+        final StringBuilder command = new StringBuilder("!simplify");
+        for (int i = 0; i < VARIABLES; i++) {
+            command.append(' ').append(name(i)).append('=').append(i * 0.25);
+        }
+        final String input = command.toString();
+        final Environment environment = new Environment();
+
+        final Microbench.Result regex = bench.run("parse, regular expressions", () -> parseWithRegex(input));
+        final Microbench.Result lexer = bench.run("parse, CommandLexer", () -> {
+            CommandLexer.parseSimplify(input, environment);
+            return environment;
+        });
+        System.out.printf("  speedup %.2fx%n", regex.nanosPerOp / lexer.nanosPerOp);
+
+        final String expression = name(0) + "*" + name(1) + " + " + name(2) + "*" + name(3) + "*x + " + name(49);
+        final Main.Session session = new Main.Session();
+        session.execute(expression);
+        final Microbench.Result before = bench.run("!simplify, regular expressions", () -> {
+            return Commands.simplify(expression, parseWithRegex(input));
+        });
+        final Microbench.Result after = bench.run("!simplify, Session", () -> session.execute(input));
+        System.out.printf("  speedup %.2fx%n", before.nanosPerOp / after.nanosPerOp);
+    }
+
+    private static String name(int i) {
+        return "v" + (char) ('a' + i / 26) + (char) ('a' + i % 26);
+    }
+
+    /*
+     * Main.parseSimpify before CommandLexer.
+     */
+    private static Map<String, Double> parseWithRegex(String input) {
+        final String assignment = "([A-Za-z]+) *= *([^ ]+)";
+        final Matcher commandMatcher = Pattern.compile("!simplify( +" + assignment + ")* *").matcher(input);
+        if (!commandMatcher.matches()) {
+            throw new Main.CommandSyntaxException("usage: !simplify var1=val1 var2=val2 ...");
+        }
+        final Map<String, Double> environment = new HashMap<>();
+        final Matcher argumentMatcher = Pattern.compile(assignment).matcher(input);
+        while (argumentMatcher.find()) {
+            environment.put(argumentMatcher.group(1), Double.valueOf(argumentMatcher.group(2)));
+        }
+        return environment;
+    }
+}
@@ -0,0 +1,38 @@
+package expressivo;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Measures the latency of repeating the same Commands call with the parse
+ * cache warm (the input is already cached) and cold (the cache is cleared
+ * before every call, so each call parses).
+ */
+public class CommandsCacheBenchmark {
+
+    private static final String INPUT = "(x + 2)*(y + 3.75)*(z + 0.125) + x*y*z + 3*x*x + 0.5*y";
+
+    /**
+     * Run the benchmark.
+     * @param args unused
+     */
+    public static void main(String[] args) {
+        final Microbench bench = new Microbench();
+        final ParseCache cache = ParseCache.shared();
+        final Map<String, Double> environment = new HashMap<>();
+        environment.put("x", 1.5);
+        environment.put("y", 2.5);
+
+        bench.run("differentiate, cold", () -> {
+            cache.clear();
+            return Commands.differentiate(INPUT, "x");
+        });
+        bench.run("differentiate, warm", () -> Commands.differentiate(INPUT, "x"));
+        bench.run("simplify, cold", () -> {
+            cache.clear();
+            return Commands.simplify(INPUT, environment);
+        });
+        bench.run("simplify, warm", () -> Commands.simplify(INPUT, environment));
+        System.out.println(cache);
+    }
+}
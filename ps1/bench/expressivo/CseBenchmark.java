@@ -0,0 +1,76 @@
+package expressivo;
+
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Measures common subexpression elimination on higher derivatives of products:
+ * the number of instructions in the Program with and without sharing, and the
+ * time to evaluate each over a batch of rows, along with compiled (shared) and
+ * bound (tree) per-row evaluation.
+ */
+public class CseBenchmark {
+
+    private static final String[] INPUTS = {
+        "(x + 1)*(x*y + 2)*(x + y + 3)*(y + 4)*(x*x + y)",
+        "(x + y)*(x + 2*y)*(x + 3*y)*(x + 4*y)*(x + 5*y)*(x + 6*y)",
+    };
+    private static final String[] ORDER = { "x", "y" };
+    private static final int ROWS = 100000;
+
+    /**
+     * Run the benchmark.
+     * @param args unused
+     */
+    public static void main(String[] args) {
+        final Microbench bench = new Microbench();
+        final Map<String, Integer> slots = BytecodeCompiler.slots(ORDER);
+        final double[][] columns = randomColumns(new Random(6005));
+        final double[] results = new double[ROWS];
+        final double[] values = { 1.5, 2.5 };
+        for (String input : INPUTS) {
+            Expression derivative = Expression.parse(input);
+            for (int order = 1; order <= 4; order++) {
+                derivative = derivative.differentiate("x");
+                if (order < 3) {
+                    continue;
+                }
+                final Program tree = Program.of(derivative, slots, false);
+                final Program shared = Program.of(derivative, slots, true);
+                System.out.printf("d^%d/dx^%d of %s: %,d instructions as a tree, %,d shared%n",
+                        order, order, input, tree.size(), shared.size());
+
+                final BatchEvaluator treeBatch = new BatchEvaluator(tree, ORDER.length, Kernels.preferred());
+                final BatchEvaluator sharedBatch = new BatchEvaluator(shared, ORDER.length, Kernels.preferred());
+                bench.run("  batch, tree,   " + ROWS + " rows", () -> {
+                    treeBatch.eval(columns, results);
+                    return results[0];
+                });
+                bench.run("  batch, shared, " + ROWS + " rows", () -> {
+                    sharedBatch.eval(columns, results);
+                    return results[0];
+                });
+                final Evaluator bound = derivative.bind(ORDER);
+                final Evaluator compiled = derivative.compile(ORDER);
+                bench.run("  bind(...).eval (tree)", () -> {
+                    values[0] += 1e-9;
+                    return bound.eval(values);
+                });
+                bench.run("  compile(...).eval (shared)", () -> {
+                    values[0] += 1e-9;
+                    return compiled.eval(values);
+                });
+            }
+        }
+    }
+
+    private static double[][] randomColumns(Random random) {
+        final double[][] columns = new double[ORDER.length][ROWS];
+        for (double[] column : columns) {
+            for (int row = 0; row < ROWS; row++) {
+                column[row] = random.nextDouble() * 10;
+            }
+        }
+        return columns;
+    }
+}
@@ -0,0 +1,66 @@
+package expressivo;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Compares repeated differentiation by the textbook sum and product rules
+ * (Differentiation.differentiateVerbatim) with differentiation through the
+ * Arithmetic smart constructors (Expression.differentiate): the size of the
+ * nth derivative of some sample polynomials, and the time to compute it.
+ */
+public class DerivativeBenchmark {
+
+    private static final String[] INPUTS = {
+        "x*x*x*x*x*x",
+        "(x + 1)*(x*y + 2)*(x + y + 3)*(y + 4)",
+        "3*x*x*x + 2*x*x*y + x*y*y + 7*x + y + 5",
+    };
+    private static final int MAX_ORDER = 5;
+
+    /**
+     * Run the benchmark.
+     * @param args unused
+     */
+    public static void main(String[] args) {
+        final Microbench bench = new Microbench();
+        for (String input : INPUTS) {
+            final Expression expression = Expression.parse(input);
+            System.out.println(input);
+            for (int order = 1; order <= MAX_ORDER; order++) {
+                final int n = order;
+                System.out.printf("  d^%d/dx^%d: %,14d tree nodes verbatim %,10d tree nodes simplified%n",
+                        n, n, treeSize(derivative(expression, n, false)), treeSize(derivative(expression, n, true)));
+                bench.run("  verbatim   d^" + n + "/dx^" + n, () -> derivative(expression, n, false));
+                bench.run("  simplified d^" + n + "/dx^" + n, () -> derivative(expression, n, true));
+            }
+        }
+    }
+
+    private static Expression derivative(Expression e, int order, boolean simplifying) {
+        for (int i = 0; i < order; i++) {
+            e = simplifying ? e.differentiate("x") : Differentiation.differentiateVerbatim(e, "x");
+        }
+        return e;
+    }
+
+    /*
+     * Number of nodes in e viewed as a tree, i.e. counting shared subtrees once per use.
+     */
+    private static long treeSize(Expression e) {
+        return treeSize(e, new IdentityHashMap<>());
+    }
+
+    private static long treeSize(Expression e, Map<Expression, Long> memo) {
+        final Long known = memo.get(e);
+        if (known != null) {
+            return known;
+        }
+        long size = 1;
+        for (int i = 0; i < Traversal.arity(e); i++) {
+            size += treeSize(Traversal.operand(e, i), memo);
+        }
+        memo.put(e, size);
+        return size;
+    }
+}
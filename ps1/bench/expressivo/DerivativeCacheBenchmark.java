@@ -0,0 +1,65 @@
+package expressivo;
+
+/**
+ * Compares differentiation with and without a DerivativeCache: repeating the
+ * same derivative (warm cache), taking successive higher-order derivatives, and
+ * differentiating a family of expressions that share a large subexpression.
+ */
+public class DerivativeCacheBenchmark {
+
+    private static final String INPUT = "(x + 1)*(x*y + 2)*(x + y + 3)*(y + 4) + 3*x*x*x + 2*x*x*y + x*y*y";
+    private static final int MAX_ORDER = 4;
+    private static final int FAMILY = 16;
+
+    /**
+     * Run the benchmark.
+     * @param args unused
+     */
+    public static void main(String[] args) {
+        final Microbench bench = new Microbench();
+        final Expression expression = Expression.parse(INPUT);
+        final DerivativeCache warm = new DerivativeCache();
+
+        report(bench.run("repeat, uncached", () -> expression.differentiate("x")),
+                bench.run("repeat, cached", () -> warm.differentiate(expression, "x")));
+
+        report(bench.run("d^" + MAX_ORDER + "/dx^" + MAX_ORDER + ", uncached", () -> {
+            Expression e = expression;
+            for (int i = 0; i < MAX_ORDER; i++) {
+                e = e.differentiate("x");
+            }
+            return e;
+        }), bench.run("d^" + MAX_ORDER + "/dx^" + MAX_ORDER + ", cold cache", () -> {
+            final DerivativeCache cache = new DerivativeCache();
+            Expression e = expression;
+            for (int i = 0; i < MAX_ORDER; i++) {
+                e = cache.differentiate(e, "x");
+            }
+            return e;
+        }));
+
+        final Expression[] family = new Expression[FAMILY];
+        for (int i = 0; i < FAMILY; i++) {
+            family[i] = Expression.plus(expression, Expression.times(new Number(i), new Variable("x")));
+        }
+        report(bench.run("shared family, uncached", () -> {
+            Expression last = null;
+            for (Expression e : family) {
+                last = e.differentiate("x");
+            }
+            return last;
+        }), bench.run("shared family, cold cache", () -> {
+            final DerivativeCache cache = new DerivativeCache();
+            Expression last = null;
+            for (Expression e : family) {
+                last = cache.differentiate(e, "x");
+            }
+            return last;
+        }));
+        System.out.println(warm);
+    }
+
+    private static void report(Microbench.Result uncached, Microbench.Result cached) {
+        System.out.printf("  speedup %.2fx%n", uncached.nanosPerOp / cached.nanosPerOp);
+    }
+}
@@ -0,0 +1,46 @@
+package expressivo;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compares the ways of evaluating one expression many times with different
+ * variable bindings. The B/op column shows the allocation per evaluation.
+ */
+public class EvaluateBenchmark {
+
+    private static final String INPUT = "(x + 2)*(y + 3.75)*(z + 0.125) + x*y*z + 3*x*x + 0.5*y";
+    private static final String[] ORDER = { "x", "y", "z" };
+
+    /**
+     * Run the benchmark.
+     * @param args unused
+     */
+    public static void main(String[] args) {
+        final Microbench bench = new Microbench();
+        final Expression expression = Expression.parse(INPUT);
+        final double[] values = { 1.5, 2.5, 3.5 };
+
+        final Map<String, Double> environment = new HashMap<>();
+        bench.run("simplify(Map)", () -> {
+            for (int i = 0; i < ORDER.length; i++) {
+                environment.put(ORDER[i], values[i]);
+            }
+            values[0] += 1e-9;
+            return expression.simplify(environment).getValue();
+        });
+
+        final Evaluator compiled = expression.compile(ORDER);
+        bench.run("compile(...).eval(double[])", () -> {
+            values[0] += 1e-9;
+            return compiled.eval(values);
+        });
+
+        // expect 0 B/op: binding is done once, evaluation allocates nothing
+        final Evaluator bound = expression.bind(ORDER);
+        bench.run("bind(...).eval(double[])", () -> {
+            values[0] += 1e-9;
+            return bound.eval(values);
+        });
+    }
+}
@@ -0,0 +1,271 @@
+package expressivo;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * A seeded source of random expressions of a given shape, each with an input
+ * string that parses to it and an environment for simplify, for benchmarks and
+ * stress tests at sizes far beyond the unit tests.
+ *
+ * <p>A tree of n leaves is split at each operator into operands of k and n - k
+ * leaves, where k is near n/2 if the balance is 1, and 1 or n - 1 if it is 0;
+ * every tree fits within the maximum depth. Each operator is a sum or a product
+ * with equal probability, and each leaf a variable or a number. Numbers have
+ * at most 4 decimal places, so that they survive Expression.toString exactly.
+ *
+ * <p>Generation recurses only into the smaller operand of each operator, so it
+ * handles trees of any depth. The input strings, however, nest parentheses as
+ * deeply as the tree nests sums in products and right operands in operators of
+ * the same kind, so the input of a very deep tree may be nested too deeply for
+ * the recursive-descent parser. Not thread-safe; the same seed and parameters
+ * give the same samples.
+ */
+final class ExpressionGenerator {
+
+    /**
+     * Distributions of the numbers in generated expressions and environments.
+     */
+    enum Numbers {
+        /** integers 0 to 9 */
+        INTEGERS,
+        /** multiples of 0.0001 in [0, 10) */
+        DECIMALS,
+        /** log-uniform in [0.0001, 1000000], rounded to 4 decimal places */
+        WIDE
+    }
+
+    /**
+     * An expression with a matching input string and environment.
+     */
+    static final class Sample {
+        /** the expression, built with the factory methods of Expression */
+        final Expression expression;
+        /** an input that Expression.parse parses to expression, with random spacing */
+        final String input;
+        /** all the variables the generator draws from, x first; not all need occur in expression */
+        final List<String> variables;
+        /** a value for every variable but x, unmodifiable */
+        final Map<String, Double> environment;
+        /** a value for every variable, in the order of variables */
+        private final double[] values;
+
+        Sample(Expression expression, String input, List<String> variables, double[] values) {
+            this.expression = expression;
+            this.input = input;
+            this.variables = variables;
+            this.values = values.clone();
+            final Map<String, Double> environment = new LinkedHashMap<>();
+            for (int i = 1; i < variables.size(); i++) {
+                environment.put(variables.get(i), values[i]);
+            }
+            this.environment = Collections.unmodifiableMap(environment);
+        }
+
+        /**
+         * @return a value for every variable, in the order of variables
+         */
+        double[] values() {
+            return values.clone();
+        }
+    }
+
+    private static final double VARIABLE_PROBABILITY = 0.6;
+    private static final double SPACE_PROBABILITY = 0.5;
+    private static final double EXTRA_PARENTHESES_PROBABILITY = 0.05;
+    private static final double SCALE = 1e4;
+
+    private final Random random;
+    private final int leaves;
+    private final int maxDepth;
+    private final double balance;
+    private final List<String> variables;
+    private final Numbers numbers;
+    // Rep invariant:
+    //    leaves >= 1, leaves <= 2^maxDepth, 0 <= balance <= 1, variables nonempty and distinct
+
+    /**
+     * Make a generator.
+     * @param seed seed of the random numbers
+     * @param leaves number of leaves of each expression, > 0
+     * @param maxDepth greatest number of operators on a path from the root to a leaf;
+     *         at least log2(leaves)
+     * @param balance 0 for trees as lopsided as possible, 1 for trees as balanced as
+     *         possible, or in between
+     * @param variableCount number of distinct variables, > 0: x, then the names
+     *         Workloads.variable gives
+     * @param numbers distribution of the numbers
+     * @throws IllegalArgumentException if a parameter is out of range
+     */
+    ExpressionGenerator(long seed, int leaves, int maxDepth, double balance, int variableCount, Numbers numbers) {
+        if (leaves <= 0 || variableCount <= 0 || !(balance >= 0 && balance <= 1)) {
+            throw new IllegalArgumentException("invalid parameters: " + leaves + " leaves, "
+                    + variableCount + " variables, balance " + balance);
+        }
+        if (maxDepth < 0 || maxDepth < 31 && leaves > 1 << maxDepth) {
+            throw new IllegalArgumentException(leaves + " leaves do not fit in depth " + maxDepth);
+        }
+        this.random = new Random(seed);
+        this.leaves = leaves;
+        this.maxDepth = maxDepth;
+        this.balance = balance;
+        final List<String> names = new ArrayList<>();
+        for (int i = 0; i < variableCount; i++) {
+            names.add(Workloads.variable(i));
+        }
+        this.variables = Collections.unmodifiableList(names);
+        this.numbers = numbers;
+    }
+
+    /**
+     * @return a new random sample
+     */
+    Sample next() {
+        final Expression expression = tree(leaves, maxDepth);
+        final String input = input(expression);
+        final double[] values = new double[variables.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = number();
+        }
+        return new Sample(expression, input, variables, values);
+    }
+
+    /*
+     * A random tree of the given number of leaves within the given depth. Descends
+     * along the larger operand of each operator and recurses into the smaller, which
+     * has at most half the leaves, so the recursion is at most log2(leaves) deep.
+     */
+    private Expression tree(int leaves, int depth) {
+        final List<Expression> smaller = new ArrayList<>();
+        final BitSet smallerOnLeft = new BitSet();
+        final BitSet sums = new BitSet();
+        while (leaves > 1) {
+            final int left = split(leaves, depth);
+            final int small = Math.min(left, leaves - left);
+            smallerOnLeft.set(smaller.size(), left == small);
+            sums.set(smaller.size(), random.nextBoolean());
+            smaller.add(tree(small, depth - 1));
+            leaves -= small;
+            depth--;
+        }
+        Expression e = leaf();
+        for (int i = smaller.size() - 1; i >= 0; i--) {
+            final Expression left = smallerOnLeft.get(i) ? smaller.get(i) : e;
+            final Expression right = smallerOnLeft.get(i) ? e : smaller.get(i);
+            e = sums.get(i) ? Expression.plus(left, right) : Expression.times(left, right);
+        }
+        return e;
+    }
+
+    /*
+     * Number of leaves of the left operand of an operator with the given number
+     * of leaves, > 1, within the given depth, > 0.
+     */
+    private int split(int leaves, int depth) {
+        final int capacity = depth > 31 ? Integer.MAX_VALUE : 1 << (depth - 1);
+        final double lopsided = random.nextBoolean() ? 0 : 1;
+        final int left = (int) Math.round((balance * 0.5 + (1 - balance) * lopsided) * leaves);
+        return Math.max(Math.max(1, leaves - capacity), Math.min(left, Math.min(leaves - 1, capacity)));
+    }
+
+    private Expression leaf() {
+        if (random.nextDouble() < VARIABLE_PROBABILITY) {
+            return Expression.variable(variables.get(random.nextInt(variables.size())));
+        }
+        return Expression.number(number());
+    }
+
+    private double number() {
+        switch (numbers) {
+        case INTEGERS:
+            return random.nextInt(10);
+        case DECIMALS:
+            return random.nextInt(100_000) / SCALE;
+        default:
+            return Math.round(Math.pow(10, -4 + 10 * random.nextDouble()) * SCALE) / SCALE;
+        }
+    }
+
+    /*
+     * An input for expression: numbers in their shortest form, only the parentheses
+     * needed and a few more, and random spaces around the operators.
+     */
+    private String input(Expression expression) {
+        final InputWriter writer = new InputWriter();
+        Traversal.walk(expression, writer);
+        return writer.out.toString();
+    }
+
+    /*
+     * Writes the input for an expression, as Printer does its toString.
+     */
+    private final class InputWriter implements Walker {
+        private final StringBuilder out = new StringBuilder();
+        // for each operator being visited: whether it is a sum, whether it was
+        // parenthesized, and the index of its operand being visited
+        private final BitSet sum = new BitSet();
+        private final BitSet parenthesized = new BitSet();
+        private final List<Integer> operand = new ArrayList<>();
+
+        @Override
+        public void leaf(Expression node) {
+            if (node instanceof Number) {
+                out.append(BigDecimal.valueOf(node.getValue()).stripTrailingZeros().toPlainString());
+            } else {
+                out.append(((Variable) node).name());
+            }
+        }
+
+        @Override
+        public void enter(Expression node) {
+            final int depth = operand.size();
+            final boolean isSum = Traversal.isSum(node);
+            // the parsers read a + b + c as (a + b) + c, a*b*c as (a*b)*c and a + b*c as a + (b*c)
+            final boolean needed = depth > 0 && (isSum
+                    ? !sum.get(depth - 1) || operand.get(depth - 1) > 0
+                    : !sum.get(depth - 1) && operand.get(depth - 1) > 0);
+            final boolean parenthesize = needed || random.nextDouble() < EXTRA_PARENTHESES_PROBABILITY;
+            if (parenthesize) {
+                out.append('(');
+            }
+            sum.set(depth, isSum);
+            parenthesized.set(depth, parenthesize);
+            operand.add(0);
+        }
+
+        @Override
+        public void between(Expression node, int index) {
+            operand.set(operand.size() - 1, index + 1);
+            space();
+            out.append(Traversal.isSum(node) ? '+' : '*');
+            space();
+        }
+
+        @Override
+        public void exit(Expression node) {
+            operand.remove(operand.size() - 1);
+            if (parenthesized.get(operand.size())) {
+                out.append(')');
+            }
+        }
+
+        private void space() {
+            if (random.nextDouble() < SPACE_PROBABILITY) {
+                out.append(' ');
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%d leaves, depth <= %d, balance %.2f, %d variables, %s numbers",
+                leaves, maxDepth, balance, variables.size(), numbers.name().toLowerCase(Locale.ROOT));
+    }
+}
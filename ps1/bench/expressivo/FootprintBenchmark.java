@@ -0,0 +1,79 @@
+package expressivo;
+
+/**
+ * Compares the heap footprint of an n-term sum stored as a left-nested chain
+ * of binary Plus nodes and as a single n-ary Sum, and the time to evaluate each.
+ *
+ * <p>Sizes are measured, in the manner of JOL's GraphLayout.totalSize, as the
+ * growth of the used heap after full collections when the structure is made
+ * reachable. Every term is the same Variable instance, so only the cost of the
+ * sum itself is counted. With compressed references each Plus is an object
+ * header plus two references and a cached hash (24 bytes), while a Sum costs
+ * 4 bytes per operand in its operand array and 4 in its prefix-hash array.
+ */
+public class FootprintBenchmark {
+
+    private static final int[] TERMS = { 1000, 100000, 1000000 };
+
+    /**
+     * Run the benchmark.
+     * @param args unused
+     */
+    public static void main(String[] args) {
+        Interner.setEnabled(false);
+        final Expression x = new Variable("x");
+        for (int terms : TERMS) {
+            final long binaryBytes = footprint(() -> binary(x, terms));
+            final long naryBytes = footprint(() -> nary(x, terms));
+            System.out.printf("%,10d terms: binary Plus chain %,14d bytes (%5.1f B/term), "
+                    + "n-ary Sum %,14d bytes (%5.1f B/term)%n",
+                    terms, binaryBytes, (double) binaryBytes / terms, naryBytes, (double) naryBytes / terms);
+        }
+
+        final Microbench bench = new Microbench();
+        final int terms = 100000;
+        final double[] values = { 1.0 };
+        final Evaluator binary = binary(x, terms).bind("x");
+        final Evaluator nary = nary(x, terms).bind("x");
+        final Expression binaryTree = binary(x, terms);
+        final Expression naryTree = nary(x, terms);
+        bench.run("bind(binary).eval, " + terms + " terms", () -> binary.eval(values));
+        bench.run("bind(n-ary).eval,  " + terms + " terms", () -> nary.eval(values));
+        bench.run("toString binary,   " + terms + " terms", () -> binaryTree.toString());
+        bench.run("toString n-ary,    " + terms + " terms", () -> naryTree.toString());
+    }
+
+    private static Expression binary(Expression term, int terms) {
+        Expression sum = term;
+        for (int i = 1; i < terms; i++) {
+            sum = new Plus(sum, term);
+        }
+        return sum;
+    }
+
+    private static Expression nary(Expression term, int terms) {
+        final Expression[] operands = new Expression[terms];
+        java.util.Arrays.fill(operands, term);
+        return new Sum(operands);
+    }
+
+    private interface Builder {
+        Expression build();
+    }
+
+    private static long footprint(Builder builder) {
+        final long before = usedHeapAfterGc();
+        final Expression result = builder.build();
+        final long after = usedHeapAfterGc();
+        Microbench.consume(result);
+        return after - before;
+    }
+
+    private static long usedHeapAfterGc() {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,58 @@
+package expressivo;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Measures HashMap lookups keyed by expressions of increasing size. With the
+ * hash memoized in Plus and Times a lookup should cost the same at any size,
+ * while recomputing the structural hash, as Plus/Times.hashCode used to, is
+ * linear in the size of the tree.
+ */
+public class HashBenchmark {
+
+    private static final int[] TERMS = { 10, 100, 1000, 10000 };
+
+    /**
+     * Run the benchmark.
+     * @param args unused
+     */
+    public static void main(String[] args) {
+        final Microbench bench = new Microbench();
+        for (int terms : TERMS) {
+            final Map<Expression, Integer> map = new HashMap<>();
+            final Expression key = polynomial(terms);
+            for (int i = 0; i < 1000; i++) {
+                map.put(polynomial(i % 50 + 1), i);
+            }
+            map.put(key, -1);
+
+            bench.run("HashMap.get, memoized hash,  " + terms + " terms", () -> map.get(key));
+            bench.run("recomputed structural hash,  " + terms + " terms", () -> structuralHash(key));
+        }
+    }
+
+    /*
+     * x*1 + x*2 + ... + x*terms, as a left-nested chain of Plus.
+     */
+    private static Expression polynomial(int terms) {
+        final Expression x = Expression.variable("x");
+        Expression result = x;
+        for (int i = 1; i <= terms; i++) {
+            result = result.plus(x.times(Expression.number(i)));
+        }
+        return result;
+    }
+
+    /*
+     * The hash as Plus and Times computed it before it was memoized.
+     */
+    private static int structuralHash(Expression e) {
+        if (e instanceof Plus) {
+            return 31 * (31 + structuralHash(((Plus) e).left())) + structuralHash(((Plus) e).right());
+        } else if (e instanceof Times) {
+            return 31 * (31 + structuralHash(((Times) e).left())) + structuralHash(((Times) e).right());
+        }
+        return e.hashCode();
+    }
+}
@@ -0,0 +1,123 @@
+package expressivo;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Measures the effect of hash-consing Expression nodes on repeated
+ * differentiation: time and allocation per derivative, number of node
+ * instances reachable from the result, and heap retained by the result.
+ *
+ * <p>Allocation per derivative is about the same either way, because each
+ * candidate node is allocated before it is looked up; the saving is in the
+ * nodes that survive, which is what later collections have to trace and copy.
+ */
+public class InternBenchmark {
+
+    private static final String INPUT = "(x + 1)*(x*y + 2)*(x + y + 3)*(y + 4)";
+    private static final int MAX_ORDER = 4;
+
+    /**
+     * Run the benchmark.
+     * @param args unused
+     */
+    public static void main(String[] args) {
+        final Microbench bench = new Microbench();
+        for (boolean interning : new boolean[] { false, true }) {
+            Interner.setEnabled(interning);
+            final Expression input = Expression.parse(INPUT);
+            final String label = interning ? "interned" : "not interned";
+            for (int order = 1; order <= MAX_ORDER; order++) {
+                final int n = order;
+                // measure the footprint first, before the derivative's nodes are already interned
+                final Result footprint = footprint(() -> derivative(Expression.parse(INPUT), n));
+                final Expression derivative = derivative(input, n);
+                System.out.printf("%-14s d^%d/dx^%d: %,12d tree nodes %,12d instances %,14d bytes retained%n",
+                        label, n, n, treeSize(derivative), footprint.instances, footprint.retainedBytes);
+                bench.run(label + " d^" + n + "/dx^" + n, () -> derivative(input, n));
+            }
+        }
+    }
+
+    private static Expression derivative(Expression e, int order) {
+        for (int i = 0; i < order; i++) {
+            e = e.differentiate("x");
+        }
+        return e;
+    }
+
+    private static final class Result {
+        final int instances;
+        final long retainedBytes;
+
+        Result(int instances, long retainedBytes) {
+            this.instances = instances;
+            this.retainedBytes = retainedBytes;
+        }
+    }
+
+    private interface Builder {
+        Expression build();
+    }
+
+    /*
+     * Build an expression and measure the heap it retains, as the difference in
+     * used heap after full collections with and without the result reachable.
+     */
+    private static Result footprint(Builder builder) {
+        final long before = usedHeapAfterGc();
+        final Expression result = builder.build();
+        final long after = usedHeapAfterGc();
+        final int instances = instances(result).size();
+        Microbench.consume(result);
+        return new Result(instances, after - before);
+    }
+
+    private static long usedHeapAfterGc() {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /*
+     * Number of nodes in e viewed as a tree, i.e. counting shared subtrees once per use.
+     */
+    private static long treeSize(Expression e) {
+        return treeSize(e, new IdentityHashMap<>());
+    }
+
+    private static long treeSize(Expression e, Map<Expression, Long> memo) {
+        final Long known = memo.get(e);
+        if (known != null) {
+            return known;
+        }
+        long size = 1;
+        for (int i = 0; i < Traversal.arity(e); i++) {
+            size += treeSize(Traversal.operand(e, i), memo);
+        }
+        memo.put(e, size);
+        return size;
+    }
+
+    /*
+     * Distinct node instances reachable from e.
+     */
+    private static Set<Expression> instances(Expression e) {
+        final Set<Expression> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        addInstances(e, seen);
+        return seen;
+    }
+
+    private static void addInstances(Expression e, Set<Expression> seen) {
+        if (!seen.add(e)) {
+            return;
+        }
+        for (int i = 0; i < Traversal.arity(e); i++) {
+            addInstances(Traversal.operand(e, i), seen);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package expressivo;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Measures the cost of Metrics on the commands: Commands.differentiate and
+ * Commands.simplify with metrics off and on, against the same work done
+ * without instrumentation, on a small expression whose parse and derivative
+ * are cached, so that the commands are as cheap as they get and the cost of
+ * the instrumentation shows the most; and an empty start/stop pair, against
+ * an empty operation, which is the harness's own cost per operation.
+ */
+public class MetricsBenchmark {
+
+    private static final String EXPRESSION = "(x + 2.5)*(y + 3)*x + x*y*z + 4*z";
+
+    /**
+     * Run the benchmark.
+     * @param args unused
+     */
+    public static void main(String[] args) {
+        final Microbench bench = new Microbench();
+        final Map<String, Double> environment = Collections.singletonMap("x", 2.0);
+
+        Metrics.setEnabled(false);
+        final Microbench.Result bare = bench.run("differentiate, uninstrumented", () -> DerivativeCache.shared()
+                .differentiate(ParseCache.shared().parse(EXPRESSION), "x").toString());
+        final Microbench.Result off = bench.run("differentiate, metrics off",
+                () -> Commands.differentiate(EXPRESSION, "x"));
+        Metrics.setEnabled(true);
+        final Microbench.Result on = bench.run("differentiate, metrics on",
+                () -> Commands.differentiate(EXPRESSION, "x"));
+        System.out.printf("  overhead off %+.1f%%, on %+.1f%%%n", overhead(bare, off), overhead(bare, on));
+
+        Metrics.setEnabled(false);
+        final Microbench.Result bareSimplify = bench.run("simplify, uninstrumented", () -> Polynomial.of(
+                ParseCache.shared().parse(EXPRESSION).simplify(environment)).toExpression().toString());
+        final Microbench.Result offSimplify = bench.run("simplify, metrics off",
+                () -> Commands.simplify(EXPRESSION, environment));
+        Metrics.setEnabled(true);
+        final Microbench.Result onSimplify = bench.run("simplify, metrics on",
+                () -> Commands.simplify(EXPRESSION, environment));
+        System.out.printf("  overhead off %+.1f%%, on %+.1f%%%n",
+                overhead(bareSimplify, offSimplify), overhead(bareSimplify, onSimplify));
+
+        bench.run("empty operation", () -> 0.0);
+        for (boolean enabled : new boolean[] { false, true }) {
+            Metrics.setEnabled(enabled);
+            bench.run("start/stop pair, metrics " + (enabled ? "on" : "off"), () -> {
+                final long start = Metrics.start(Metrics.Phase.TO_STRING);
+                Metrics.stop(Metrics.Phase.TO_STRING, start);
+                return (double) start;
+            });
+        }
+        Metrics.setEnabled(false);
+        System.out.println(Metrics.dump());
+    }
+
+    private static double overhead(Microbench.Result baseline, Microbench.Result result) {
+        return 100 * (result.nanosPerOp / baseline.nanosPerOp - 1);
+    }
+}
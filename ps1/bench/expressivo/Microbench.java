@@ -0,0 +1,169 @@
+package expressivo;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Minimal benchmark harness shared by the expressivo benchmarks.
+ *
+ * <p>Each benchmark is a Supplier whose result is consumed by a sink so the JIT
+ * cannot eliminate the work. A benchmark is warmed up for a fixed time and then
+ * measured over several timed iterations; the reported figures are the median
+ * time per operation and the average number of bytes allocated per operation
+ * by the measuring thread (the equivalent of JMH's gc.alloc.rate.norm).
+ *
+ * <p>Run a benchmark class with assertions disabled and a fixed heap, e.g.
+ *   java -Xms2g -Xmx2g -cp bin expressivo.ParseBenchmark
+ */
+final class Microbench {
+
+    private static final long DEFAULT_WARMUP_MILLIS = 2000;
+    private static final long DEFAULT_ITERATION_MILLIS = 1000;
+    private static final int DEFAULT_ITERATIONS = 5;
+
+    private static volatile Object sink;
+    private static volatile double doubleSink;
+
+    private final long warmupNanos;
+    private final long iterationNanos;
+    private final int iterations;
+
+    /**
+     * Make a harness with the default warmup (2 s) and measurement (5 x 1 s),
+     * overridable with the system properties bench.warmup, bench.iteration
+     * (milliseconds) and bench.iterations.
+     */
+    Microbench() {
+        this(Long.getLong("bench.warmup", DEFAULT_WARMUP_MILLIS),
+                Long.getLong("bench.iteration", DEFAULT_ITERATION_MILLIS),
+                Integer.getInteger("bench.iterations", DEFAULT_ITERATIONS));
+    }
+
+    Microbench(long warmupMillis, long iterationMillis, int iterations) {
+        this.warmupNanos = TimeUnit.MILLISECONDS.toNanos(warmupMillis);
+        this.iterationNanos = TimeUnit.MILLISECONDS.toNanos(iterationMillis);
+        this.iterations = iterations;
+    }
+
+    /**
+     * Result of one benchmark.
+     */
+    static final class Result {
+        final String name;
+        final double nanosPerOp;
+        final double bytesPerOp;
+        final long operations;
+
+        Result(String name, double nanosPerOp, double bytesPerOp, long operations) {
+            this.name = name;
+            this.nanosPerOp = nanosPerOp;
+            this.bytesPerOp = bytesPerOp;
+            this.operations = operations;
+        }
+
+        /** @return operations per second implied by nanosPerOp */
+        double opsPerSecond() {
+            return 1e9 / nanosPerOp;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-50s %14.1f ns/op %14.1f ops/s %12.1f B/op",
+                    name, nanosPerOp, opsPerSecond(), bytesPerOp);
+        }
+    }
+
+    /**
+     * Warm up, measure and print a benchmark.
+     * @param name label printed with the result
+     * @param operation work to measure; its result is consumed
+     * @return the measured result
+     */
+    Result run(String name, Supplier<?> operation) {
+        return measure(name, durationNanos -> loop(operation, durationNanos));
+    }
+
+    /**
+     * Warm up, measure and print a benchmark with a primitive result, which
+     * is consumed without boxing so that allocation-free code reports 0 B/op.
+     * @param name label printed with the result
+     * @param operation work to measure; its result is consumed
+     * @return the measured result
+     */
+    Result run(String name, DoubleSupplier operation) {
+        return measure(name, durationNanos -> loop(operation, durationNanos));
+    }
+
+    private interface Loop {
+        /* Run the operation repeatedly for durationNanos, returning the number of runs. */
+        long run(long durationNanos);
+    }
+
+    private Result measure(String name, Loop loop) {
+        loop.run(warmupNanos);
+
+        final List<Double> nanosPerOp = new ArrayList<>();
+        long totalOps = 0;
+        long totalBytes = 0;
+        for (int i = 0; i < iterations; i++) {
+            final long bytesBefore = allocatedBytes();
+            final long start = System.nanoTime();
+            final long ops = loop.run(iterationNanos);
+            final long elapsed = System.nanoTime() - start;
+            totalBytes += allocatedBytes() - bytesBefore;
+            totalOps += ops;
+            nanosPerOp.add((double) elapsed / ops);
+        }
+        Collections.sort(nanosPerOp);
+
+        final Result result = new Result(name, nanosPerOp.get(nanosPerOp.size() / 2),
+                (double) totalBytes / totalOps, totalOps);
+        System.out.println(result);
+        return result;
+    }
+
+    /**
+     * Consume a value so that computing it cannot be optimized away.
+     * @param value any value
+     */
+    static void consume(Object value) {
+        sink = value;
+    }
+
+    private static long loop(Supplier<?> operation, long durationNanos) {
+        final long deadline = System.nanoTime() + durationNanos;
+        long ops = 0;
+        do {
+            sink = operation.get();
+            ops++;
+        } while (System.nanoTime() < deadline);
+        return ops;
+    }
+
+    private static long loop(DoubleSupplier operation, long durationNanos) {
+        final long deadline = System.nanoTime() + durationNanos;
+        long ops = 0;
+        double accumulator = 0;
+        do {
+            accumulator += operation.getAsDouble();
+            ops++;
+        } while (System.nanoTime() < deadline);
+        doubleSink = accumulator;
+        return ops;
+    }
+
+    @SuppressWarnings("restriction")
+    private static long allocatedBytes() {
+        final java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads)
+                    .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,53 @@
+package expressivo;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Measures how BatchEvaluator.evalParallel scales with the number of threads
+ * in its fork/join pool, against the single-threaded eval, for a column set too
+ * large to fit in cache.
+ *
+ * <p>Run with a heap large enough for the columns, e.g. -Xmx2g. The number of
+ * rows and the chunk size can be set with the system properties bench.rows and
+ * bench.chunk.
+ */
+public class ParallelBatchBenchmark {
+
+    private static final String INPUT = "(x + 2)*(y + 3.75)*(z + 0.125) + x*y*z + 3*x*x + 0.5*y";
+    private static final String[] ORDER = { "x", "y", "z" };
+    private static final int[] THREADS = { 1, 2, 4, 8, 16 };
+
+    /**
+     * Run the benchmark.
+     * @param args unused
+     */
+    public static void main(String[] args) {
+        final int rows = Integer.getInteger("bench.rows", 10000000);
+        final int chunkRows = Integer.getInteger("bench.chunk", BatchEvaluator.DEFAULT_CHUNK_ROWS);
+        final Microbench bench = new Microbench();
+        final BatchEvaluator batch = Expression.parse(INPUT).batch(ORDER);
+        final double[][] columns = BatchBenchmark.randomColumns(rows, new Random(6005));
+        final double[] results = new double[rows];
+
+        System.out.printf("%,d rows, %,d rows per chunk, %d processors%n",
+                rows, chunkRows, Runtime.getRuntime().availableProcessors());
+        final Microbench.Result sequential = bench.run("eval", () -> {
+            batch.eval(columns, results);
+            return results[rows - 1];
+        });
+        for (int threads : THREADS) {
+            final ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                final Microbench.Result parallel = bench.run("evalParallel, " + threads + " threads", () -> {
+                    batch.evalParallel(columns, results, pool, chunkRows);
+                    return results[rows - 1];
+                });
+                System.out.printf("  %2d threads: %.2f ns/row, speedup %.2fx%n", threads,
+                        parallel.nanosPerOp / rows, sequential.nanosPerOp / parallel.nanosPerOp);
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+}
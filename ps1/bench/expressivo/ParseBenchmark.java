@@ -0,0 +1,55 @@
+package expressivo;
+
+import java.io.File;
+import java.io.IOException;
+
+import expressivo.Expression.Grammar;
+import expressivo.ExpressionParser.Backend;
+import lib6005.parser.GrammarCompiler;
+import lib6005.parser.ParseTree;
+import lib6005.parser.Parser;
+import lib6005.parser.UnableToParseException;
+
+/**
+ * Compares Expression.parse against the old behavior of compiling
+ * Expression.g on every call, and the grammar-based parser against the
+ * recursive-descent one.
+ *
+ * <p>Must be run from the ps1 directory so that the per-call baseline can
+ * find src/expressivo/Expression.g.
+ */
+public class ParseBenchmark {
+
+    private static final String[] INPUTS = {
+        "x",
+        "x*x*x + x*y + z + 1",
+        "(3.5*alpha + beta)*(gamma + 2)*(x + y + z) + 0.25*x*x",
+    };
+
+    /**
+     * Run the benchmark.
+     * @param args unused
+     */
+    public static void main(String[] args) {
+        final Microbench bench = new Microbench();
+        for (String input : INPUTS) {
+            bench.run("compile per call  \"" + input + "\"", () -> parseCompilingEachTime(input));
+            bench.run("shared parser     \"" + input + "\"",
+                    () -> Expression.parse(input, Backend.GRAMMAR));
+            bench.run("recursive descent \"" + input + "\"",
+                    () -> Expression.parse(input, Backend.RECURSIVE_DESCENT));
+        }
+        bench.run("grammar compile only", ExpressionParser::compile);
+    }
+
+    private static Expression parseCompilingEachTime(String input) {
+        try {
+            Parser<Grammar> parser =
+                    GrammarCompiler.compile(new File("src/expressivo/Expression.g"), Grammar.ROOT);
+            ParseTree<Grammar> tree = parser.parse(input);
+            return Expression.buildAST(tree);
+        } catch (UnableToParseException | IOException e) {
+            throw new IllegalArgumentException("expression is invalid", e);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package expressivo;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Measures the throughput in commands per second of a generated script of
+ * COMMANDS commands executed serially by CommandFile and by a CommandPipeline
+ * with several numbers of threads, writing to a file.
+ */
+public class PipelineBenchmark {
+
+    private static final int COMMANDS = Integer.getInteger("bench.commands", 200_000);
+    private static final int[] THREADS = { 1, 2, 4, 8 };
+
+    /**
+     * Run the benchmark.
+     * @param args unused
+     * @throws IOException if the script or output files cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        final Microbench bench = new Microbench();
+        final Path script = Files.createTempFile("commands", ".txt");
+        final Path output = Files.createTempFile("output", ".txt");
+        System.out.println(Runtime.getRuntime().availableProcessors() + " processors");
+        try {
+            Files.write(script, CommandFileBenchmark.script(new Random(6005), COMMANDS), StandardCharsets.UTF_8);
+            // one pass first, so that every measurement starts with the caches of Commands warm
+            run(bench, script, output, 0, "warm-up");
+            final Microbench.Result serial = run(bench, script, output, 0, "serial");
+            for (int threads : THREADS) {
+                final Microbench.Result pipelined = run(bench, script, output, threads,
+                        "pipeline, " + threads + " threads");
+                System.out.printf("  %,.0f commands/s (%.2fx serial)%n",
+                        COMMANDS * pipelined.opsPerSecond(), serial.nanosPerOp / pipelined.nanosPerOp);
+            }
+        } finally {
+            Files.delete(script);
+            Files.delete(output);
+        }
+    }
+
+    private static Microbench.Result run(Microbench bench, Path script, Path output, int threads, String name) {
+        return bench.run(name, () -> {
+            try (OutputStream out = new FileOutputStream(output.toFile())) {
+                return threads == 0 ? CommandFile.run(script.toString(), out) : pipeline(script, out, threads);
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+        });
+    }
+
+    /*
+     * As CommandFile.run(script, out, threads), but with a pipeline even for 1 thread.
+     */
+    private static long pipeline(Path script, OutputStream out, int threads) throws IOException {
+        final Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8),
+                CommandFile.BUFFER_SIZE);
+        try (CommandFile.LineReader in = new CommandFile.LineReader(FileChannel.open(script), CommandFile.BUFFER_SIZE)) {
+            final long commands = new CommandPipeline(threads, CommandPipeline.DEFAULT_CAPACITY).run(in, writer);
+            writer.flush();
+            return commands;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package expressivo;
+
+import java.util.Random;
+
+/**
+ * Compares repeated differentiation of a large polynomial as an Expression tree
+ * with differentiation in Polynomial normal form, and reports the size of the
+ * result each way.
+ */
+public class PolynomialBenchmark {
+
+    private static final int TERMS = 300;
+    private static final int MAX_DEGREE = 8;
+    private static final int MAX_ORDER = 4;
+
+    /**
+     * Run the benchmark.
+     * @param args unused
+     */
+    public static void main(String[] args) {
+        final Expression expression = Expression.parse(randomPolynomial(new Random(6005)));
+        final Polynomial polynomial = Polynomial.of(expression);
+        final Microbench bench = new Microbench();
+        System.out.printf("input: %,d characters, %d distinct terms%n",
+                expression.toString().length(), polynomial.terms().size());
+        bench.run("Polynomial.of", () -> Polynomial.of(expression));
+        for (int order = 1; order <= MAX_ORDER; order++) {
+            final int n = order;
+            System.out.printf("d^%d/dx^%d: %,10d characters as Expression, %,8d in normal form%n", n, n,
+                    derivative(expression, n).toString().length(),
+                    derivative(polynomial, n).toExpression().toString().length());
+            bench.run("Expression d^" + n + "/dx^" + n, () -> derivative(expression, n));
+            bench.run("Polynomial d^" + n + "/dx^" + n, () -> derivative(polynomial, n));
+        }
+    }
+
+    /*
+     * A sum of TERMS random terms c*x^i*y^j*z^k with total degree at most MAX_DEGREE.
+     */
+    private static String randomPolynomial(Random random) {
+        final StringBuilder builder = new StringBuilder();
+        for (int term = 0; term < TERMS; term++) {
+            if (term > 0) {
+                builder.append(" + ");
+            }
+            builder.append(1 + random.nextInt(9));
+            final int degree = random.nextInt(MAX_DEGREE + 1);
+            for (int i = 0; i < degree; i++) {
+                builder.append('*').append("xyz".charAt(random.nextInt(3)));
+            }
+        }
+        return builder.toString();
+    }
+
+    private static Expression derivative(Expression e, int order) {
+        for (int i = 0; i < order; i++) {
+            e = e.differentiate("x");
+        }
+        return e;
+    }
+
+    private static Polynomial derivative(Polynomial p, int order) {
+        for (int i = 0; i < order; i++) {
+            p = p.differentiate("x");
+        }
+        return p;
+    }
+}
@@ -0,0 +1,130 @@
+package expressivo;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import expressivo.Expression.Grammar;
+import lib6005.parser.ParseTree;
+import lib6005.parser.UnableToParseException;
+
+/**
+ * JMH regression benchmarks of the whole pipeline: Expression.parse with each
+ * backend, buildAST, differentiate, simplify, toString, equals, hashCode and
+ * the Commands entry points, over each of the generated Workloads.
+ *
+ * <p>Run with gradle :bench:jmh, which writes JMH's JSON results with the
+ * allocation per operation from the gc profiler (gc.alloc.rate.norm); compare
+ * two such files with BenchmarkCompare. The grammar benchmarks need
+ * Expression.g on the classpath, as in the jar of the main project.
+ *
+ * <p>The Commands benchmarks go through the shared ParseCache and
+ * DerivativeCache, so they measure the repeated command, with its parse and
+ * derivative cached.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+public class StageBenchmarks {
+
+    /**
+     * A workload, by the name given to Workloads.named.
+     */
+    @State(Scope.Benchmark)
+    public static class Input {
+        @Param({ "wideSum/10", "wideSum/100", "wideSum/1000", "deepProduct/8", "deepProduct/64",
+            "nthDerivative/1", "nthDerivative/3", "nthDerivative/5", "manyVariables/10", "manyVariables/100" })
+        public String workload;
+
+        Workloads.Workload w;
+        // equal to w.expression but sharing no node with it
+        Expression copy;
+
+        @Setup
+        public void setUp() {
+            w = Workloads.named(workload);
+            copy = Workloads.copy(w.expression);
+        }
+    }
+
+    /**
+     * A workload and its parse tree from the grammar-based parser.
+     */
+    @State(Scope.Benchmark)
+    public static class Parsed {
+        @Param({ "wideSum/10", "wideSum/100", "wideSum/1000", "deepProduct/8", "deepProduct/64",
+            "nthDerivative/1", "nthDerivative/3", "nthDerivative/5", "manyVariables/10", "manyVariables/100" })
+        public String workload;
+
+        String input;
+        ParseTree<Grammar> tree;
+
+        @Setup
+        public void setUp() throws UnableToParseException {
+            input = Workloads.named(workload).input;
+            tree = ExpressionParser.parser().parse(input);
+        }
+    }
+
+    @Benchmark
+    public Expression parseGrammar(Parsed in) {
+        return Expression.parse(in.input, ExpressionParser.Backend.GRAMMAR);
+    }
+
+    @Benchmark
+    public Expression parseRecursiveDescent(Input in) {
+        return Expression.parse(in.w.input, ExpressionParser.Backend.RECURSIVE_DESCENT);
+    }
+
+    @Benchmark
+    public Expression buildAST(Parsed in) {
+        return Expression.buildAST(in.tree);
+    }
+
+    @Benchmark
+    public Expression differentiate(Input in) {
+        return in.w.expression.differentiate("x");
+    }
+
+    @Benchmark
+    public Expression simplify(Input in) {
+        return in.w.expression.simplify(in.w.environment);
+    }
+
+    @Benchmark
+    public String print(Input in) {
+        return in.w.expression.toString();
+    }
+
+    @Benchmark
+    public boolean equalsCopy(Input in) {
+        return in.w.expression.equals(in.copy);
+    }
+
+    @Benchmark
+    public int hashCodeCopy(Input in) {
+        return in.copy.hashCode();
+    }
+
+    @Benchmark
+    public String commandsDifferentiate(Input in) {
+        return Commands.differentiate(in.w.input, "x");
+    }
+
+    @Benchmark
+    public String commandsSimplify(Input in) {
+        return Commands.simplify(in.w.input, in.w.environment);
+    }
+}
@@ -0,0 +1,260 @@
+package expressivo;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Soak test of the commands: several threads run Commands on random samples
+ * from an ExpressionGenerator at once, through the shared caches, checking
+ * invariants of each result, and the throughput is reported.
+ *
+ * <p>Usage:
+ * <pre>
+ *   java -ea expressivo.StressDriver [--threads n] [--seconds s] [--samples n] [--leaves n]
+ *       [--depth n] [--balance b] [--variables n] [--numbers integers|decimals|wide] [--seed n]
+ * </pre>
+ * Each check takes a random sample and verifies one of:
+ * <ul>
+ * <li>round trip: the sample's input and its expression's toString both parse to
+ *     the expression
+ * <li>differentiate: Commands.differentiate by a random variable prints the same
+ *     derivative as Expression.differentiate, which prints the same when parsed back,
+ *     and whose value at a random point agrees with that of the derivative by the
+ *     plain sum and product rules
+ * <li>simplify: Commands.simplify gives the same result for the sample's input and
+ *     for its expression's toString, a valid expression, and with every variable
+ *     bound gives the value of the expression to within its 4 printed decimals
+ * </ul>
+ * Values are only compared when finite, since large samples can overflow.
+ * Exits with status 1 if any check fails, printing the first few failures.
+ */
+public class StressDriver {
+
+    private static final int MAX_REPORTED_FAILURES = 10;
+    private static final int MAX_REPORTED_INPUT = 200;
+    private static final double RELATIVE_TOLERANCE = 1e-9;
+    // Commands prints numbers with 4 decimals
+    private static final double PRINTED_TOLERANCE = 1e-4;
+
+    private enum Check {
+        ROUND_TRIP, DIFFERENTIATE, SIMPLIFY;
+
+        String label() {
+            return name().toLowerCase(Locale.ROOT).replace('_', ' ');
+        }
+    }
+
+    private final List<ExpressionGenerator.Sample> samples;
+    private final List<Map<String, Double>> pointEnvironments = new ArrayList<>();
+    private final LongAdder[] checks = new LongAdder[Check.values().length];
+    private final LongAdder failures = new LongAdder();
+    private final Queue<String> reported = new ConcurrentLinkedQueue<>();
+    // Thread safety argument:
+    //   samples and pointEnvironments are not modified after construction; the
+    //   counters are LongAdders and reported is a concurrent queue
+
+    private StressDriver(List<ExpressionGenerator.Sample> samples) {
+        this.samples = samples;
+        for (ExpressionGenerator.Sample sample : samples) {
+            final Map<String, Double> point = new HashMap<>();
+            final double[] values = sample.values();
+            for (int i = 0; i < values.length; i++) {
+                point.put(sample.variables.get(i), values[i]);
+            }
+            pointEnvironments.add(point);
+        }
+        for (int i = 0; i < checks.length; i++) {
+            checks[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Run the stress test.
+     * @param args options, as described above
+     * @throws InterruptedException if interrupted while waiting for the threads
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        int seconds = 10;
+        int sampleCount = 100;
+        int leaves = 200;
+        int depth = 30;
+        double balance = 0.5;
+        int variables = 4;
+        ExpressionGenerator.Numbers numbers = ExpressionGenerator.Numbers.DECIMALS;
+        long seed = 6005;
+        try {
+            for (int i = 0; i < args.length; i += 2) {
+                if (i + 1 == args.length) {
+                    usage();
+                }
+                final String value = args[i + 1];
+                switch (args[i]) {
+                case "--threads": threads = Integer.parseInt(value); break;
+                case "--seconds": seconds = Integer.parseInt(value); break;
+                case "--samples": sampleCount = Integer.parseInt(value); break;
+                case "--leaves": leaves = Integer.parseInt(value); break;
+                case "--depth": depth = Integer.parseInt(value); break;
+                case "--balance": balance = Double.parseDouble(value); break;
+                case "--variables": variables = Integer.parseInt(value); break;
+                case "--numbers": numbers = ExpressionGenerator.Numbers.valueOf(value.toUpperCase(Locale.ROOT)); break;
+                case "--seed": seed = Long.parseLong(value); break;
+                default: usage();
+                }
+            }
+        } catch (IllegalArgumentException iae) {
+            usage();
+        }
+
+        final ExpressionGenerator generator;
+        try {
+            generator = new ExpressionGenerator(seed, leaves, depth, balance, variables, numbers);
+        } catch (IllegalArgumentException iae) {
+            System.err.println(iae.getMessage());
+            System.exit(2);
+            return;
+        }
+        final List<ExpressionGenerator.Sample> samples = new ArrayList<>();
+        for (int i = 0; i < sampleCount; i++) {
+            samples.add(generator.next());
+        }
+        System.out.printf("stress: %d threads for %d s over %d samples (%s), seed %d%n",
+                threads, seconds, sampleCount, generator, seed);
+
+        final StressDriver driver = new StressDriver(samples);
+        final long start = System.nanoTime();
+        final long deadline = start + TimeUnit.SECONDS.toNanos(seconds);
+        final ExecutorService pool = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            final Random random = new Random(seed + t + 1);
+            pool.execute(() -> driver.run(random, deadline));
+        }
+        pool.shutdown();
+        pool.awaitTermination(seconds + 3600, TimeUnit.SECONDS);
+        final double elapsed = (System.nanoTime() - start) / 1e9;
+
+        long total = 0;
+        for (Check check : Check.values()) {
+            final long count = driver.checks[check.ordinal()].sum();
+            total += count;
+            System.out.printf("%-14s %,12d checks %,12.1f checks/s%n", check.label(), count, count / elapsed);
+        }
+        System.out.printf("%-14s %,12d checks %,12.1f checks/s%n", "total", total, total / elapsed);
+        for (String failure : driver.reported) {
+            System.out.println("FAILED " + failure);
+        }
+        System.out.printf("%d failure(s)%n", driver.failures.sum());
+        if (driver.failures.sum() > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static void usage() {
+        System.err.println("usage: StressDriver [--threads n] [--seconds s] [--samples n] [--leaves n] [--depth n]"
+                + " [--balance b] [--variables n] [--numbers integers|decimals|wide] [--seed n]");
+        System.exit(2);
+    }
+
+    /*
+     * Run random checks until the deadline.
+     */
+    private void run(Random random, long deadline) {
+        while (System.nanoTime() < deadline) {
+            final int index = random.nextInt(samples.size());
+            final ExpressionGenerator.Sample sample = samples.get(index);
+            final Check check = Check.values()[random.nextInt(Check.values().length)];
+            final String variable = sample.variables.get(random.nextInt(sample.variables.size()));
+            String failure;
+            try {
+                switch (check) {
+                case ROUND_TRIP:
+                    failure = roundTrip(sample);
+                    break;
+                case DIFFERENTIATE:
+                    failure = differentiate(sample, variable);
+                    break;
+                default:
+                    failure = simplify(sample, pointEnvironments.get(index));
+                    break;
+                }
+            } catch (RuntimeException | Error e) {
+                failure = "threw " + e;
+            }
+            checks[check.ordinal()].increment();
+            if (failure != null) {
+                failures.increment();
+                if (reported.size() < MAX_REPORTED_FAILURES) {
+                    reported.add(String.format("%s of sample %d%s: %s%n  input: %s", check.label(), index,
+                            check == Check.DIFFERENTIATE ? " by " + variable : "", failure, abbreviate(sample.input)));
+                }
+            }
+        }
+    }
+
+    private static String roundTrip(ExpressionGenerator.Sample sample) {
+        if (!Expression.parse(sample.input).equals(sample.expression)) {
+            return "input parses to a different expression";
+        }
+        final String printed = sample.expression.toString();
+        if (!Expression.parse(printed).equals(sample.expression)) {
+            return "toString parses to a different expression: " + abbreviate(printed);
+        }
+        return null;
+    }
+
+    private static String differentiate(ExpressionGenerator.Sample sample, String variable) {
+        final String derivative = Commands.differentiate(sample.input, variable);
+        final Expression expected = sample.expression.differentiate(variable);
+        if (!derivative.equals(expected.toString())) {
+            return "Commands.differentiate differs from Expression.differentiate: " + abbreviate(derivative);
+        }
+        // folded constants are rounded to 4 decimals, so compare the printed forms
+        if (!Expression.parse(derivative).toString().equals(derivative)) {
+            return "derivative prints differently when parsed back: " + abbreviate(derivative);
+        }
+        final String[] order = sample.variables.toArray(new String[0]);
+        final double value = expected.bind(order).eval(sample.values());
+        final double verbatim = Differentiation.differentiateVerbatim(sample.expression, variable)
+                .bind(order).eval(sample.values());
+        if (Double.isFinite(verbatim) && !close(value, verbatim, 0)) {
+            return "derivative is " + value + " but the sum and product rules give " + verbatim;
+        }
+        return null;
+    }
+
+    private static String simplify(ExpressionGenerator.Sample sample, Map<String, Double> point) {
+        final String simplified = Commands.simplify(sample.input, sample.environment);
+        final String again = Commands.simplify(sample.expression.toString(), sample.environment);
+        if (!simplified.equals(again)) {
+            return "input and toString simplify differently: " + abbreviate(simplified) + " vs " + abbreviate(again);
+        }
+        Expression.parse(simplified);
+        final double expected = sample.expression.bind(sample.variables.toArray(new String[0])).eval(sample.values());
+        if (Double.isFinite(expected)) {
+            final Expression value = Expression.parse(Commands.simplify(sample.input, point));
+            if (!value.hasValue() || !close(value.getValue(), expected, PRINTED_TOLERANCE)) {
+                return "simplifies to " + abbreviate(value.toString()) + " with every variable bound, not " + expected;
+            }
+        }
+        return null;
+    }
+
+    private static boolean close(double actual, double expected, double absolute) {
+        return Math.abs(actual - expected)
+                <= absolute + RELATIVE_TOLERANCE * Math.max(Math.abs(actual), Math.abs(expected));
+    }
+
+    private static String abbreviate(String s) {
+        return s.length() <= MAX_REPORTED_INPUT ? s : s.substring(0, MAX_REPORTED_INPUT) + "...";
+    }
+}
@@ -0,0 +1,102 @@
+package expressivo;
+
+import java.util.Random;
+
+/**
+ * Compares rendering expressions of about NODES nodes with numbers formatted
+ * by String.format("%.4f"), as Number.toString did before FixedPoint, with
+ * Printer's rendering through FixedPoint, into a new and into a reused
+ * StringBuilder; and formatting a single number both ways.
+ */
+public class ToStringBenchmark {
+
+    private static final int NODES = 10_000;
+
+    /**
+     * Run the benchmark.
+     * @param args unused
+     */
+    public static void main(String[] args) {
+        final Microbench bench = new Microbench();
+        final double[] values = { 0.5, 1234.5678, 3, 1e-3 };
+        final int[] next = { 0 };
+        final Microbench.Result format = bench.run("number, String.format",
+                () -> String.format("%.4f", values[next[0]++ & 3]));
+        final Microbench.Result fixed = bench.run("number, FixedPoint", () -> FixedPoint.format(values[next[0]++ & 3]));
+        System.out.printf("  speedup %.2fx%n", format.nanosPerOp / fixed.nanosPerOp);
+
+        final Random random = new Random(6005);
+        for (boolean chain : new boolean[] { true, false }) {
+            final Expression e = chain ? chain(random) : balanced(random, NODES);
+            final String label = chain ? "left-nested chain" : "balanced tree";
+            final StringBuilder reused = new StringBuilder();
+            final Microbench.Result before = bench.run(label + ", String.format leaves", () -> formatted(e));
+            final Microbench.Result after = bench.run(label + ", toString", () -> e.toString());
+            final Microbench.Result reusing = bench.run(label + ", reused builder", () -> {
+                reused.setLength(0);
+                return Printer.print(e, reused);
+            });
+            System.out.printf("  speedup %.2fx, %.2fx with a reused builder%n",
+                    before.nanosPerOp / after.nanosPerOp, before.nanosPerOp / reusing.nanosPerOp);
+        }
+    }
+
+    /*
+     * A left-nested sum of NODES/4 terms number*variable, as the parsers build it.
+     */
+    private static Expression chain(Random random) {
+        Expression e = term(random);
+        for (int i = 1; i < NODES / 4; i++) {
+            e = Expression.plus(e, term(random));
+        }
+        return e;
+    }
+
+    private static Expression balanced(Random random, int nodes) {
+        if (nodes <= 3) {
+            return term(random);
+        }
+        final Expression left = balanced(random, nodes / 2);
+        final Expression right = balanced(random, nodes / 2);
+        return random.nextBoolean() ? new Plus(left, right) : new Times(left, right);
+    }
+
+    private static Expression term(Random random) {
+        return new Times(new Number(random.nextInt(100000) / 64.0), new Variable(random.nextBoolean() ? "x" : "y"));
+    }
+
+    /*
+     * Printer's rendering, with each number formatted by String.format.
+     */
+    private static String formatted(Expression e) {
+        final StringBuilder out = new StringBuilder();
+        Traversal.walk(e, new Walker() {
+            @Override public void leaf(Expression node) {
+                out.append(node instanceof Number ? String.format("%.4f", node.getValue()) : node.toString());
+            }
+            @Override public void enter(Expression node) {
+                if (Traversal.isSum(node)) {
+                    for (int i = 1; i < Traversal.arity(node); i++) {
+                        out.append('(');
+                    }
+                }
+            }
+            @Override public void between(Expression node, int index) {
+                if (Traversal.isSum(node)) {
+                    if (index > 0) {
+                        out.append(')');
+                    }
+                    out.append(" + ");
+                } else {
+                    out.append('*');
+                }
+            }
+            @Override public void exit(Expression node) {
+                if (Traversal.isSum(node)) {
+                    out.append(')');
+                }
+            }
+        });
+        return out.toString();
+    }
+}
@@ -0,0 +1,57 @@
+package expressivo;
+
+import java.util.Optional;
+import java.util.Random;
+
+/**
+ * Compares batch evaluation with the scalar ColumnKernels loops and with the
+ * Vector API kernels, for a pure sum of products and for a mixed expression,
+ * over column sets that fit in cache and that do not.
+ *
+ * <p>Run with --add-modules jdk.incubator.vector (and the classes compiled from
+ * vector/ on the class path); without it only the scalar kernels are measured.
+ */
+public class VectorBatchBenchmark {
+
+    private static final String[] INPUTS = {
+        "x*y + y*z + z*x + 2*x*y*z + 3*x + 4",
+        "(x + 2)*(y + 3.75)*(z + 0.125) + x*y*z + 3*x*x + 0.5*y",
+    };
+    private static final String[] ORDER = { "x", "y", "z" };
+    private static final int[] ROWS = { 4096, 4000000 };
+
+    /**
+     * Run the benchmark.
+     * @param args unused
+     */
+    public static void main(String[] args) {
+        final Optional<ColumnKernels> vector = Kernels.vector();
+        if (!vector.isPresent()) {
+            System.out.println("jdk.incubator.vector not available: measuring scalar kernels only");
+        }
+        final Microbench bench = new Microbench();
+        for (String input : INPUTS) {
+            final Program program = Program.of(Expression.parse(input), BytecodeCompiler.slots(ORDER));
+            for (int rows : ROWS) {
+                final double[][] columns = BatchBenchmark.randomColumns(rows, new Random(6005));
+                final double[] results = new double[rows];
+                final Microbench.Result scalar = run(bench, "scalar", input, rows,
+                        new BatchEvaluator(program, ORDER.length, ScalarKernels.INSTANCE), columns, results);
+                if (vector.isPresent()) {
+                    final Microbench.Result simd = run(bench, "vector", input, rows,
+                            new BatchEvaluator(program, ORDER.length, vector.get()), columns, results);
+                    System.out.printf("  %,d rows: %.2f ns/row scalar, %.2f ns/row vector, %.2fx%n", rows,
+                            scalar.nanosPerOp / rows, simd.nanosPerOp / rows, scalar.nanosPerOp / simd.nanosPerOp);
+                }
+            }
+        }
+    }
+
+    private static Microbench.Result run(Microbench bench, String kernels, String input, int rows,
+            BatchEvaluator evaluator, double[][] columns, double[] results) {
+        return bench.run(kernels + " " + rows + " rows: " + input, () -> {
+            evaluator.eval(columns, results);
+            return results[rows - 1];
+        });
+    }
+}
@@ -0,0 +1,224 @@
+package expressivo;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The generated workloads of StageBenchmarks: families of expressions of a
+ * given size, each as an input string, the expression parsed from it, and an
+ * environment binding every variable but x.
+ */
+final class Workloads {
+
+    private static final int SUM_VARIABLES = 8;
+    private static final String DERIVATIVE_BASE = "x*x*x*x*y + 3*x*x*y*z + x*y*y + 2*x + 7";
+
+    private Workloads() {
+        throw new AssertionError("noninstantiable");
+    }
+
+    /**
+     * An input of the benchmarks.
+     */
+    static final class Workload {
+        /** family and size, e.g. "wideSum/100", used in benchmark names */
+        final String name;
+        /** input as entered by a user */
+        final String input;
+        /** Expression.parse(input) */
+        final Expression expression;
+        /** a value for every variable of expression except x, unmodifiable */
+        final Map<String, Double> environment;
+
+        Workload(String family, int size, String input) {
+            this.name = family + "/" + size;
+            this.input = input;
+            this.expression = Expression.parse(input, ExpressionParser.Backend.RECURSIVE_DESCENT);
+            this.environment = environment(variables(input));
+        }
+    }
+
+    /**
+     * @param name family and size, e.g. "wideSum/100": wideSum, deepProduct,
+     *         nthDerivative or manyVariables, and a size valid for that family
+     * @return the workload of that family and size
+     * @throws IllegalArgumentException if name is not of that form
+     */
+    static Workload named(String name) {
+        final int slash = name.indexOf('/');
+        final String family = slash < 0 ? name : name.substring(0, slash);
+        final int size;
+        try {
+            size = Integer.parseInt(name.substring(slash + 1));
+        } catch (NumberFormatException nfe) {
+            throw new IllegalArgumentException("expected family/size, got " + name, nfe);
+        }
+        switch (family) {
+        case "wideSum":
+            return new Workload(family, size, wideSum(size));
+        case "deepProduct":
+            return new Workload(family, size, deepProduct(size));
+        case "nthDerivative":
+            return new Workload(family, size, nthDerivative(size));
+        case "manyVariables":
+            return new Workload(family, size, manyVariables(size));
+        default:
+            throw new IllegalArgumentException("unknown workload family " + family);
+        }
+    }
+
+    /**
+     * @param terms number of terms, > 0
+     * @return a left-nested sum of terms coefficient*variable over a few variables,
+     *         e.g. "0.5*x + 1.5*va + ..."
+     */
+    static String wideSum(int terms) {
+        final StringBuilder input = new StringBuilder();
+        for (int i = 0; i < terms; i++) {
+            if (i > 0) {
+                input.append(" + ");
+            }
+            input.append(i + 0.5).append('*').append(variable(i % SUM_VARIABLES));
+        }
+        return input.toString();
+    }
+
+    /**
+     * @param depth number of factors, > 0
+     * @return a right-nested product of depth binomials, a tree of depth about depth,
+     *         e.g. "(x + 1)*((y + 2)*(x + 3))"
+     */
+    static String deepProduct(int depth) {
+        String input = factor(depth - 1);
+        for (int i = depth - 2; i >= 0; i--) {
+            input = factor(i) + "*(" + input + ")";
+        }
+        return input;
+    }
+
+    private static String factor(int i) {
+        return "(" + (i % 2 == 0 ? "x" : "y") + " + " + (i + 1) + ")";
+    }
+
+    /**
+     * @param order number of times to differentiate, >= 0
+     * @return the order-th derivative by x of a fixed polynomial, by the sum and
+     *         product rules without simplification, as printed
+     */
+    static String nthDerivative(int order) {
+        Expression e = Expression.parse(DERIVATIVE_BASE, ExpressionParser.Backend.RECURSIVE_DESCENT);
+        for (int i = 0; i < order; i++) {
+            e = Differentiation.differentiateVerbatim(e, "x");
+        }
+        return e.toString();
+    }
+
+    /**
+     * @param count number of variables, > 1
+     * @return a sum of the products of consecutive pairs of count variables,
+     *         e.g. "x*va + va*vb + ... + vz*x"
+     */
+    static String manyVariables(int count) {
+        final StringBuilder input = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                input.append(" + ");
+            }
+            input.append(variable(i)).append('*').append(variable((i + 1) % count));
+        }
+        return input.toString();
+    }
+
+    /**
+     * @param index index of a variable, >= 0
+     * @return a distinct variable name for each index: x, then va, vb, ..., vz, vaa, ...
+     */
+    static String variable(int index) {
+        if (index == 0) {
+            return "x";
+        }
+        final StringBuilder name = new StringBuilder();
+        for (int i = index - 1; ; i = i / 26 - 1) {
+            name.append((char) ('a' + i % 26));
+            if (i < 26) {
+                break;
+            }
+        }
+        return name.append('v').reverse().toString();
+    }
+
+    /**
+     * @param expression any expression
+     * @return an expression equal to expression, built with the constructors of
+     *         the node classes rather than the factory methods, so that it shares no
+     *         node with expression and comparing the two visits every node
+     */
+    static Expression copy(Expression expression) {
+        return Traversal.fold(expression, new Fold<Expression>() {
+            @Override
+            public Expression number(Number node) {
+                return new Number(node.getValue());
+            }
+
+            @Override
+            public Expression variable(Variable node) {
+                return new Variable(node.name());
+            }
+
+            @Override
+            public Expression plus(Plus node, Expression left, Expression right) {
+                return new Plus(left, right);
+            }
+
+            @Override
+            public Expression times(Times node, Expression left, Expression right) {
+                return new Times(left, right);
+            }
+
+            @Override
+            public Expression sum(Sum node, List<Expression> operands) {
+                return new Sum(operands.toArray(new Expression[0]));
+            }
+
+            @Override
+            public Expression product(Product node, List<Expression> operands) {
+                return new Product(operands.toArray(new Expression[0]));
+            }
+        });
+    }
+
+    /*
+     * The variable names in input, in order of first occurrence.
+     */
+    private static Set<String> variables(String input) {
+        final Set<String> names = new LinkedHashSet<>();
+        int i = 0;
+        while (i < input.length()) {
+            if (Character.isLetter(input.charAt(i))) {
+                final int start = i;
+                while (i < input.length() && Character.isLetter(input.charAt(i))) {
+                    i++;
+                }
+                names.add(input.substring(start, i));
+            } else {
+                i++;
+            }
+        }
+        return names;
+    }
+
+    private static Map<String, Double> environment(Set<String> variables) {
+        final Map<String, Double> environment = new LinkedHashMap<>();
+        int i = 0;
+        for (String name : variables) {
+            if (!name.equals("x")) {
+                environment.put(name, 0.5 * ++i);
+            }
+        }
+        return Collections.unmodifiableMap(environment);
+    }
+}
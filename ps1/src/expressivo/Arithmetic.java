@@ -0,0 +1,93 @@
+package expressivo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Smart constructors for sums and products: like Expression.plus, times and sum,
+ * but applying the identities 0 + e = e + 0 = e, 0 * e = e * 0 = 0 and
+ * 1 * e = e * 1 = e, and folding operations on two numbers, as they build.
+ *
+ * <p>Every result is equal in value to the expression the plain factory would
+ * have built, for every assignment of nonnegative values to its variables.
+ */
+final class Arithmetic {
+
+    private Arithmetic() {
+        throw new AssertionError("noninstantiable");
+    }
+
+    /**
+     * @param left left operand
+     * @param right right operand
+     * @return an expression with the value of left + right: one of the operands if the
+     *         other is 0, a number if both are numbers, otherwise Expression.plus(left, right)
+     */
+    static Expression add(Expression left, Expression right) {
+        if (isZero(left)) {
+            return right;
+        } else if (isZero(right)) {
+            return left;
+        } else if (left.hasValue() && right.hasValue()) {
+            return Expression.number(left.getValue() + right.getValue());
+        }
+        return Expression.plus(left, right);
+    }
+
+    /**
+     * @param left left operand
+     * @param right right operand
+     * @return an expression with the value of left * right: 0 if either operand is 0,
+     *         one of the operands if the other is 1, a number if both are numbers,
+     *         otherwise Expression.times(left, right)
+     */
+    static Expression multiply(Expression left, Expression right) {
+        if (isZero(left) || isZero(right)) {
+            return Expression.number(0);
+        } else if (isOne(left)) {
+            return right;
+        } else if (isOne(right)) {
+            return left;
+        } else if (left.hasValue() && right.hasValue()) {
+            return Expression.number(left.getValue() * right.getValue());
+        }
+        return Expression.times(left, right);
+    }
+
+    /**
+     * @param operands operands of a left-nested sum, left to right; at least one
+     * @return an expression with the value of the sum of operands: the nonzero operands,
+     *         with any leading numbers folded into one, as a single Expression.sum; or 0 if
+     *         every operand is 0
+     */
+    static Expression addAll(List<Expression> operands) {
+        final List<Expression> terms = new ArrayList<>(operands.size());
+        double constant = 0;
+        boolean leading = true;
+        for (Expression operand : operands) {
+            if (leading && operand.hasValue()) {
+                constant += operand.getValue();
+            } else {
+                leading = false;
+                if (!isZero(operand)) {
+                    terms.add(operand);
+                }
+            }
+        }
+        if (constant != 0) {
+            terms.add(0, Expression.number(constant));
+        }
+        if (terms.isEmpty()) {
+            return Expression.number(0);
+        }
+        return Expression.sum(terms.toArray(new Expression[0]));
+    }
+
+    private static boolean isZero(Expression e) {
+        return e.hasValue() && e.getValue() == 0;
+    }
+
+    private static boolean isOne(Expression e) {
+        return e.hasValue() && e.getValue() == 1;
+    }
+}
@@ -0,0 +1,232 @@
+package expressivo;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Evaluates one expression over many rows of variable bindings given as
+ * columns, one double[] per variable (see Expression.batch).
+ *
+ * <p>Rows are processed in blocks of BLOCK_ROWS: for each block, the instructions
+ * of the expression's Program are executed in order, each applying one
+ * ColumnKernels loop (SIMD where available, see Kernels) to a whole block of operands. Intermediate values live in a
+ * few block-sized buffers that stay in cache, and each row's result is
+ * bit-for-bit equal to Expression.simplify on that row's bindings.
+ *
+ * <p>evalParallel splits the rows into chunks that are evaluated as fork/join
+ * tasks, each with its own buffers; the rows are independent, so the results
+ * are the same as from eval.
+ */
+public final class BatchEvaluator {
+
+    /** Number of rows evaluated together; 8 KB per buffer. */
+    static final int BLOCK_ROWS = 1024;
+    /** Default number of rows per fork/join task. */
+    public static final int DEFAULT_CHUNK_ROWS = 64 * BLOCK_ROWS;
+
+    private final Program program;
+    private final int variableCount;
+    private final ColumnKernels kernels;
+    // Rep invariant:
+    //    every VARIABLE instruction of program has slot < variableCount
+    // Abstraction Function:
+    //   represents the function mapping columns to the column of values of program,
+    //   row by row, computed with kernels
+    // Safety from rep exposure:
+    //   all fields are private, immutable (Program) or stateless (kernels)
+    // Thread safety argument:
+    //   eval keeps all mutable state in local buffers, so instances may be shared
+
+    // Check that the rep invariant is true
+    // *** Warning: this does nothing unless you turn on assertion checking
+    // by passing -enableassertions to Java
+    private void checkRep() {
+        for (int i = 0; i < program.size(); i++) {
+            assert program.kind(i) != Program.VARIABLE || program.slot(i) < variableCount;
+        }
+    }
+
+    BatchEvaluator(Program program, int variableCount, ColumnKernels kernels) {
+        this.program = program;
+        this.variableCount = variableCount;
+        this.kernels = kernels;
+        checkRep();
+    }
+
+    /**
+     * @param expression expression to evaluate
+     * @param variableOrder distinct names of the variables, in the order of the columns
+     *         that will be passed to eval; must include every variable in expression
+     * @return batch evaluator for expression
+     * @throws IllegalArgumentException if variableOrder has duplicates or misses a variable
+     *         of expression
+     */
+    static BatchEvaluator of(Expression expression, String... variableOrder) {
+        return new BatchEvaluator(Program.of(expression, BytecodeCompiler.slots(variableOrder)),
+                variableOrder.length, Kernels.preferred());
+    }
+
+    /**
+     * Evaluate the expression for every row.
+     * @param columns columns[i][row] is the value of variable i of the variable order in row;
+     *         columns.length must be the number of variables, and each column must have
+     *         at least results.length rows
+     * @param results set to the value of the expression for each row, 0 <= row < results.length
+     * @throws IllegalArgumentException if there are too few columns or a column is too short
+     */
+    public void eval(double[][] columns, double[] results) {
+        eval(columns, results, 0, results.length);
+    }
+
+    /**
+     * Evaluate the expression for a range of rows.
+     * @param columns as for eval(columns, results)
+     * @param results set to the value of the expression for each row, from <= row < to;
+     *         other elements are unchanged
+     * @param from first row to evaluate
+     * @param to one past the last row to evaluate, from <= to <= results.length
+     * @throws IllegalArgumentException if there are too few columns or a column is too short
+     * @throws IndexOutOfBoundsException if [from, to) is not a range of rows of results
+     */
+    public void eval(double[][] columns, double[] results, int from, int to) {
+        checkColumns(columns, to);
+        if (from < 0 || from > to || to > results.length) {
+            throw new IndexOutOfBoundsException("rows [" + from + ", " + to + ") of " + results.length);
+        }
+        final double[][] buffers = new double[program.registerCount()][Math.min(BLOCK_ROWS, to - from)];
+        for (int start = from; start < to; start += BLOCK_ROWS) {
+            evalBlock(columns, buffers, results, start, Math.min(BLOCK_ROWS, to - start));
+        }
+    }
+
+    /**
+     * Evaluate the expression for every row, in parallel on the common fork/join pool
+     * with chunks of DEFAULT_CHUNK_ROWS rows.
+     * @param columns as for eval(columns, results)
+     * @param results as for eval(columns, results)
+     * @throws IllegalArgumentException if there are too few columns or a column is too short
+     */
+    public void evalParallel(double[][] columns, double[] results) {
+        evalParallel(columns, results, ForkJoinPool.commonPool(), DEFAULT_CHUNK_ROWS);
+    }
+
+    /**
+     * Evaluate the expression for every row, in parallel.
+     * @param columns as for eval(columns, results)
+     * @param results as for eval(columns, results)
+     * @param pool pool whose threads evaluate the chunks
+     * @param chunkRows largest number of rows evaluated by one task, > 0; best a
+     *         multiple of BLOCK_ROWS
+     * @throws IllegalArgumentException if there are too few columns, a column is too
+     *         short, or chunkRows <= 0
+     */
+    public void evalParallel(double[][] columns, double[] results, ForkJoinPool pool, int chunkRows) {
+        if (chunkRows <= 0) {
+            throw new IllegalArgumentException("chunk size must be positive: " + chunkRows);
+        }
+        checkColumns(columns, results.length);
+        if (results.length <= chunkRows) {
+            eval(columns, results, 0, results.length);
+            return;
+        }
+        pool.invoke(new Chunk(columns, results, 0, results.length, chunkRows));
+    }
+
+    /*
+     * Evaluation of rows [from, to), split in halves until at most chunkRows rows remain.
+     */
+    private final class Chunk extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final double[][] columns;
+        private final double[] results;
+        private final int from;
+        private final int to;
+        private final int chunkRows;
+
+        Chunk(double[][] columns, double[] results, int from, int to, int chunkRows) {
+            this.columns = columns;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+            this.chunkRows = chunkRows;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= chunkRows) {
+                eval(columns, results, from, to);
+                return;
+            }
+            // split on a chunk boundary, so that every task but the last has chunkRows rows
+            final int chunks = (to - from + chunkRows - 1) / chunkRows;
+            final int middle = Math.min(to, from + (chunks / 2) * chunkRows);
+            invokeAll(new Chunk(columns, results, from, middle, chunkRows),
+                    new Chunk(columns, results, middle, to, chunkRows));
+        }
+    }
+
+    private void checkColumns(double[][] columns, int rows) {
+        if (columns.length < variableCount) {
+            throw new IllegalArgumentException("expected " + variableCount + " columns, got " + columns.length);
+        }
+        for (int i = 0; i < variableCount; i++) {
+            if (columns[i].length < rows) {
+                throw new IllegalArgumentException("column " + i + " has " + columns[i].length
+                        + " rows, expected at least " + rows);
+            }
+        }
+    }
+
+    private void evalBlock(double[][] columns, double[][] buffers, double[] results, int start, int length) {
+        for (int i = 0; i < program.size(); i++) {
+            final byte kind = program.kind(i);
+            if (kind != Program.ADD && kind != Program.MULTIPLY) {
+                continue;
+            }
+            int x = program.left(i);
+            int y = program.right(i);
+            if (program.kind(x) == Program.CONSTANT) {
+                // both operations are commutative in IEEE 754, so swapping is exact
+                final int swap = x;
+                x = y;
+                y = swap;
+            }
+            final double[] out = buffers[program.register(i)];
+            final double[] xs = operand(columns, buffers, x);
+            final int xOffset = offset(x, start);
+            if (program.kind(y) == Program.CONSTANT) {
+                if (kind == Program.ADD) {
+                    kernels.add(xs, xOffset, program.constant(y), out, length);
+                } else {
+                    kernels.multiply(xs, xOffset, program.constant(y), out, length);
+                }
+            } else {
+                final double[] ys = operand(columns, buffers, y);
+                final int yOffset = offset(y, start);
+                if (kind == Program.ADD) {
+                    kernels.add(xs, xOffset, ys, yOffset, out, length);
+                } else {
+                    kernels.multiply(xs, xOffset, ys, yOffset, out, length);
+                }
+            }
+        }
+        final int result = program.result();
+        if (program.kind(result) == Program.CONSTANT) {
+            Arrays.fill(results, start, start + length, program.constant(result));
+        } else {
+            System.arraycopy(operand(columns, buffers, result), offset(result, start), results, start, length);
+        }
+    }
+
+    /* Array holding the values of a VARIABLE, ADD or MULTIPLY instruction for the current block. */
+    private double[] operand(double[][] columns, double[][] buffers, int i) {
+        return program.kind(i) == Program.VARIABLE ? columns[program.slot(i)] : buffers[program.register(i)];
+    }
+
+    /* Index in operand(i) of the value for row start of the current block. */
+    private int offset(int i, int start) {
+        return program.kind(i) == Program.VARIABLE ? start : 0;
+    }
+}
@@ -0,0 +1,400 @@
+package expressivo;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An Expression whose variables have been resolved to indices into an array
+ * of values, for evaluation with no hashing or boxing.
+ *
+ * <p>Sum and Product nodes, and chains of left-nested Plus (resp. Times) nodes,
+ * are bound to a single n-ary node that accumulates its operands in a
+ * loop, left to right. This is the same order of floating-point operations as
+ * Expression.simplify, so the results are identical, and the evaluation depth
+ * is the number of alternations between sums and products rather than the
+ * number of terms.
+ *
+ * <p>Binding is a Traversal.fold, so it does not recurse. Bound nodes nested at
+ * most MAX_HEIGHT deep are evaluated recursively; deeper expressions, such as
+ * long right-nested chains, are flattened instead to postfix instructions that
+ * eval runs in a loop over an operand stack, so expressions of any depth can be
+ * evaluated. BytecodeCompiler falls back to binding for exactly the largest
+ * expressions, so both cases occur.
+ */
+abstract class BoundExpression implements Evaluator {
+
+    /** Greatest nesting of bound nodes that is evaluated recursively. */
+    static final int MAX_HEIGHT = 256;
+
+    /**
+     * Resolve every variable of an expression to its slot.
+     * @param expression expression to bind
+     * @param variableOrder distinct names of the variables, in the order their values
+     *         will be passed to eval
+     * @return evaluator e such that e.eval(values) is the value of expression with each
+     *         variableOrder[i] replaced by values[i]; e.eval allocates no memory after
+     *         its first call in each thread
+     * @throws IllegalArgumentException if variableOrder has duplicates or misses a variable
+     *         of expression
+     */
+    static Evaluator bind(Expression expression, String... variableOrder) {
+        final Map<String, Integer> slots = BytecodeCompiler.slots(variableOrder);
+        final BoundExpression bound = Traversal.fold(expression, new Binder(slots));
+        if (bound.height() <= MAX_HEIGHT) {
+            return bound;
+        }
+        final Instructions instructions = new Instructions(slots);
+        final int maxDepth = Traversal.fold(expression, instructions);
+        return new Postfix(instructions, maxDepth);
+    }
+
+    /**
+     * @return number of nodes on the longest path from this one to a leaf, counting both
+     */
+    abstract int height();
+
+    /*
+     * Binds each node from its bound operands, appending the operands of a sum
+     * (resp. product) to the n-ary node bound for its left operand if that is
+     * a sum (resp. product) too. Traversal.fold folds a shared subexpression
+     * once per use, so each bound node has one parent and can be appended to.
+     */
+    private static final class Binder implements Fold<BoundExpression> {
+        private final Map<String, Integer> slots;
+
+        Binder(Map<String, Integer> slots) {
+            this.slots = slots;
+        }
+
+        @Override
+        public BoundExpression number(Number node) {
+            return new Constant(node.getValue());
+        }
+
+        @Override
+        public BoundExpression variable(Variable node) {
+            return new Slot(slot(slots, node));
+        }
+
+        @Override
+        public BoundExpression plus(Plus node, BoundExpression left, BoundExpression right) {
+            return Addition.of(left).append(right);
+        }
+
+        @Override
+        public BoundExpression times(Times node, BoundExpression left, BoundExpression right) {
+            return Multiplication.of(left).append(right);
+        }
+
+        @Override
+        public BoundExpression sum(Sum node, List<BoundExpression> operands) {
+            final Addition sum = Addition.of(operands.get(0));
+            for (int i = 1; i < operands.size(); i++) {
+                sum.append(operands.get(i));
+            }
+            return sum;
+        }
+
+        @Override
+        public BoundExpression product(Product node, List<BoundExpression> operands) {
+            final Multiplication product = Multiplication.of(operands.get(0));
+            for (int i = 1; i < operands.size(); i++) {
+                product.append(operands.get(i));
+            }
+            return product;
+        }
+    }
+
+    private static int slot(Map<String, Integer> slots, Variable variable) {
+        final Integer slot = slots.get(variable.name());
+        if (slot == null) {
+            throw new IllegalArgumentException("variable " + variable.name() + " is not in the variable order");
+        }
+        return slot;
+    }
+
+    private static final class Constant extends BoundExpression {
+        private final double value;
+
+        Constant(double value) {
+            this.value = value;
+        }
+
+        @Override
+        public double eval(double[] vars) {
+            return value;
+        }
+
+        @Override
+        int height() {
+            return 1;
+        }
+    }
+
+    private static final class Slot extends BoundExpression {
+        private final int index;
+
+        Slot(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public double eval(double[] vars) {
+            return vars[index];
+        }
+
+        @Override
+        int height() {
+            return 1;
+        }
+    }
+
+    /*
+     * An n-ary node, whose operands are appended while binding.
+     */
+    private abstract static class Nary extends BoundExpression {
+        BoundExpression[] operands = new BoundExpression[4];
+        int size = 0;
+        private int height = 1;
+        // Rep invariant:
+        //    size <= operands.length, and size >= 2 once binding is done
+        //    height == 1 + the greatest height of operands[0..size-1]
+
+        final void add(BoundExpression operand) {
+            if (size == operands.length) {
+                operands = Arrays.copyOf(operands, 2 * size);
+            }
+            operands[size++] = operand;
+            height = Math.max(height, operand.height() + 1);
+        }
+
+        @Override
+        final int height() {
+            return height;
+        }
+    }
+
+    private static final class Addition extends Nary {
+
+        // the left operand itself if it is an addition, else a new addition of it
+        static Addition of(BoundExpression left) {
+            if (left instanceof Addition) {
+                return (Addition) left;
+            }
+            return new Addition().append(left);
+        }
+
+        Addition append(BoundExpression operand) {
+            add(operand);
+            return this;
+        }
+
+        @Override
+        public double eval(double[] vars) {
+            double sum = operands[0].eval(vars);
+            for (int i = 1; i < size; i++) {
+                sum += operands[i].eval(vars);
+            }
+            return sum;
+        }
+    }
+
+    private static final class Multiplication extends Nary {
+
+        // the left operand itself if it is a multiplication, else a new multiplication of it
+        static Multiplication of(BoundExpression left) {
+            if (left instanceof Multiplication) {
+                return (Multiplication) left;
+            }
+            return new Multiplication().append(left);
+        }
+
+        Multiplication append(BoundExpression operand) {
+            add(operand);
+            return this;
+        }
+
+        @Override
+        public double eval(double[] vars) {
+            double product = operands[0].eval(vars);
+            for (int i = 1; i < size; i++) {
+                product *= operands[i].eval(vars);
+            }
+            return product;
+        }
+    }
+
+    private static final byte CONSTANT = 0;
+    private static final byte SLOT = 1;
+    private static final byte ADD = 2;
+    private static final byte MULTIPLY = 3;
+
+    /*
+     * Appends the postfix instructions of each node as the fold reaches it, which
+     * is after its operands, left to right. The result for a node is the greatest
+     * stack depth its instructions reach.
+     */
+    private static final class Instructions implements Fold<Integer> {
+        private final Map<String, Integer> slots;
+        private byte[] kinds = new byte[16];
+        private int[] arguments = new int[16];
+        private double[] constants = new double[16];
+        private int size = 0;
+
+        Instructions(Map<String, Integer> slots) {
+            this.slots = slots;
+        }
+
+        @Override
+        public Integer number(Number node) {
+            add(CONSTANT, 0, node.getValue());
+            return 1;
+        }
+
+        @Override
+        public Integer variable(Variable node) {
+            add(SLOT, slot(slots, node), 0);
+            return 1;
+        }
+
+        @Override
+        public Integer plus(Plus node, Integer left, Integer right) {
+            add(ADD, 2, 0);
+            return Math.max(left, right + 1);
+        }
+
+        @Override
+        public Integer times(Times node, Integer left, Integer right) {
+            add(MULTIPLY, 2, 0);
+            return Math.max(left, right + 1);
+        }
+
+        @Override
+        public Integer sum(Sum node, List<Integer> operands) {
+            add(ADD, operands.size(), 0);
+            return depth(operands);
+        }
+
+        @Override
+        public Integer product(Product node, List<Integer> operands) {
+            add(MULTIPLY, operands.size(), 0);
+            return depth(operands);
+        }
+
+        // operand i is evaluated with the i operands before it on the stack
+        private static int depth(List<Integer> operands) {
+            int depth = 0;
+            for (int i = 0; i < operands.size(); i++) {
+                depth = Math.max(depth, operands.get(i) + i);
+            }
+            return depth;
+        }
+
+        private void add(byte kind, int argument, double constant) {
+            if (size == kinds.length) {
+                kinds = Arrays.copyOf(kinds, 2 * size);
+                arguments = Arrays.copyOf(arguments, 2 * size);
+                constants = Arrays.copyOf(constants, 2 * size);
+            }
+            kinds[size] = kind;
+            arguments[size] = argument;
+            constants[size] = constant;
+            size++;
+        }
+    }
+
+    /*
+     * An expression of any depth as postfix instructions, evaluated in a loop.
+     */
+    private static final class Postfix implements Evaluator {
+        private final byte[] kinds;
+        private final int[] arguments;
+        private final double[] constants;
+        private final int maxDepth;
+        private final ThreadLocal<double[]> stacks;
+        // Rep invariant:
+        //    kinds, arguments and constants have the same length n >= 1
+        //    for each i < n, kinds[i] is CONSTANT, SLOT, ADD or MULTIPLY, and
+        //      if kinds[i] is SLOT, arguments[i] >= 0
+        //      if kinds[i] is ADD or MULTIPLY, arguments[i] >= 2
+        //    running the instructions in order never pops an empty stack, never
+        //      holds more than maxDepth values, and ends with exactly one value
+        // Abstraction Function:
+        //   represents the expression whose postfix form is instructions 0..n-1, where
+        //   instruction i pushes constants[i] if kinds[i] is CONSTANT, pushes the
+        //   variable in slot arguments[i] if kinds[i] is SLOT, and replaces the top
+        //   arguments[i] values by their sum (resp. product), taken left to right,
+        //   if kinds[i] is ADD (resp. MULTIPLY)
+        // Safety from rep exposure:
+        //   all fields are private and final, and the arrays are never returned
+        // Thread safety argument:
+        //   the instructions are never mutated after construction; each thread
+        //   evaluates on its own stack from the ThreadLocal stacks
+
+        Postfix(Instructions instructions, int maxDepth) {
+            this.kinds = Arrays.copyOf(instructions.kinds, instructions.size);
+            this.arguments = Arrays.copyOf(instructions.arguments, instructions.size);
+            this.constants = Arrays.copyOf(instructions.constants, instructions.size);
+            this.maxDepth = maxDepth;
+            this.stacks = ThreadLocal.withInitial(() -> new double[this.maxDepth]);
+            checkRep();
+        }
+
+        // Check that the rep invariant is true
+        // *** Warning: this does nothing unless you turn on assertion checking
+        // by passing -enableassertions to Java
+        private void checkRep() {
+            final int n = kinds.length;
+            assert n >= 1 && arguments.length == n && constants.length == n;
+            int depth = 0;
+            for (int i = 0; i < n; i++) {
+                if (kinds[i] == CONSTANT || kinds[i] == SLOT) {
+                    depth++;
+                } else {
+                    assert arguments[i] >= 2 && arguments[i] <= depth;
+                    depth -= arguments[i] - 1;
+                }
+                assert depth <= maxDepth;
+            }
+            assert depth == 1;
+        }
+
+        @Override
+        public double eval(double[] vars) {
+            final double[] stack = stacks.get();
+            int top = -1;
+            for (int i = 0; i < kinds.length; i++) {
+                switch (kinds[i]) {
+                case CONSTANT:
+                    stack[++top] = constants[i];
+                    break;
+                case SLOT:
+                    stack[++top] = vars[arguments[i]];
+                    break;
+                case ADD: {
+                    final int first = top - arguments[i] + 1;
+                    double sum = stack[first];
+                    for (int j = first + 1; j <= top; j++) {
+                        sum += stack[j];
+                    }
+                    stack[first] = sum;
+                    top = first;
+                    break;
+                }
+                default: {
+                    final int first = top - arguments[i] + 1;
+                    double product = stack[first];
+                    for (int j = first + 1; j <= top; j++) {
+                        product *= stack[j];
+                    }
+                    stack[first] = product;
+                    top = first;
+                    break;
+                }
+                }
+            }
+            return stack[0];
+        }
+    }
+}
@@ -0,0 +1,427 @@
+package expressivo;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compiles an Expression to a JVM class implementing Evaluator.
+ *
+ * <p>The generated eval method is straight-line bytecode for the expression's
+ * Program: each constant is a constant load, each variable an array load from
+ * vars, and each addition or multiplication a dadd or dmul, in the same order as
+ * Expression.simplify performs them, so the compiled code returns bit-for-bit the
+ * same result. A value the Program uses more than once (a common subexpression)
+ * is computed once, kept in a local variable and reloaded where it is used again. The class is defined
+ * as a hidden class of this package, so it can be unloaded once the Evaluator
+ * is unreachable.
+ *
+ * <p>The class file is written directly (no bytecode library). It has no
+ * branches, so it needs no stack map frames and uses class file version 52.
+ */
+final class BytecodeCompiler {
+
+    /** Largest code array the JVM accepts in a single method. */
+    private static final int MAX_CODE_LENGTH = 65535;
+    /** Largest constant pool index or operand stack depth a class file can express. */
+    private static final int MAX_U2 = 65535;
+
+    private static final String CLASS_NAME = "expressivo/CompiledExpression";
+    private static final String EVALUATOR_NAME = "expressivo/Evaluator";
+
+    // opcodes
+    private static final int ICONST_0 = 0x03;
+    private static final int DCONST_0 = 0x0e;
+    private static final int DCONST_1 = 0x0f;
+    private static final int BIPUSH = 0x10;
+    private static final int SIPUSH = 0x11;
+    private static final int LDC_W = 0x13;
+    private static final int LDC2_W = 0x14;
+    private static final int ALOAD_0 = 0x2a;
+    private static final int ALOAD_1 = 0x2b;
+    private static final int DALOAD = 0x31;
+    private static final int DLOAD = 0x18;
+    private static final int DSTORE = 0x39;
+    private static final int DUP2 = 0x5c;
+    private static final int DADD = 0x63;
+    private static final int DMUL = 0x6b;
+    private static final int DRETURN = 0xaf;
+    private static final int RETURN = 0xb1;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int WIDE = 0xc4;
+
+    // access flags
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+
+    private final ConstantPool pool = new ConstantPool();
+    private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+    private int stackDepth = 0;
+    private int maxStackDepth = 0;
+    private int maxLocals = 2;
+    // Rep invariant:
+    //    0 <= stackDepth <= maxStackDepth
+    //    maxLocals >= 2, for this and vars
+    // Abstraction Function:
+    //   represents a class file being generated, whose eval method so far consists
+    //   of code, with constants in pool and maxLocals local variable slots
+
+    private void checkRep() {
+        assert stackDepth >= 0 && stackDepth <= maxStackDepth;
+        assert maxLocals >= 2;
+    }
+
+    private BytecodeCompiler() {
+        checkRep();
+    }
+
+    /**
+     * Compile an expression.
+     * @param expression expression to compile
+     * @param variableOrder distinct names of the variables, in the order their values
+     *         will be passed to Evaluator.eval
+     * @return evaluator for expression; a BoundExpression if expression is too large
+     *         to fit in a single JVM method
+     * @throws IllegalArgumentException if variableOrder has duplicates, or if expression
+     *         contains a variable not in variableOrder
+     */
+    static Evaluator compile(Expression expression, String... variableOrder) {
+        final Program program = Program.of(expression, slots(variableOrder));
+        final BytecodeCompiler compiler = new BytecodeCompiler();
+        try {
+            compiler.emit(program);
+            compiler.emitByte(DRETURN);
+            return compiler.define();
+        } catch (TooLargeException tle) {
+            return BoundExpression.bind(expression, variableOrder);
+        }
+    }
+
+    /**
+     * @param variableOrder names of variables
+     * @return map from each name to its index in variableOrder
+     * @throws IllegalArgumentException if variableOrder has duplicates
+     */
+    static Map<String, Integer> slots(String... variableOrder) {
+        final Map<String, Integer> slots = new HashMap<>();
+        for (int i = 0; i < variableOrder.length; i++) {
+            if (slots.put(variableOrder[i], i) != null) {
+                throw new IllegalArgumentException("duplicate variable " + variableOrder[i]);
+            }
+        }
+        return slots;
+    }
+
+    /*
+     * Emit code that leaves the value of program on the operand stack. The program
+     * is visited depth-first from its result with an explicit stack, so that deep
+     * programs do not overflow. An instruction used more than once is stored in a
+     * local variable the first time it is computed and loaded from there after.
+     */
+    private void emit(Program program) {
+        final int[] uses = new int[program.size()];
+        for (int i = 0; i < program.size(); i++) {
+            if (isOperation(program, i)) {
+                uses[program.left(i)]++;
+                uses[program.right(i)]++;
+            }
+        }
+        final int[] locals = new int[program.size()];
+        final boolean[] stored = new boolean[program.size()];
+        for (int i = 0; i < program.size(); i++) {
+            if (isOperation(program, i) && uses[i] > 1) {
+                locals[i] = maxLocals;
+                maxLocals += 2;
+                if (maxLocals > MAX_U2) {
+                    throw new TooLargeException();
+                }
+            }
+        }
+
+        // pending instructions; a negative entry -1-i means "operands of i are on the stack"
+        int[] pending = new int[16];
+        int size = 0;
+        pending[size++] = program.result();
+        while (size > 0) {
+            final int entry = pending[--size];
+            if (entry < 0) {
+                final int i = -1 - entry;
+                emitByte(program.kind(i) == Program.ADD ? DADD : DMUL);
+                pop(2);
+                if (uses[i] > 1) {
+                    emitByte(DUP2);
+                    push(2);
+                    emitLocal(DSTORE, locals[i]);
+                    pop(2);
+                    stored[i] = true;
+                }
+            } else if (program.kind(entry) == Program.VARIABLE) {
+                emitVariable(program.slot(entry));
+            } else if (program.kind(entry) == Program.CONSTANT) {
+                emitConstant(program.constant(entry));
+            } else if (stored[entry]) {
+                emitLocal(DLOAD, locals[entry]);
+                push(2);
+            } else {
+                if (size + 3 > pending.length) {
+                    pending = Arrays.copyOf(pending, pending.length * 2);
+                }
+                pending[size++] = -1 - entry;
+                pending[size++] = program.right(entry);
+                pending[size++] = program.left(entry);
+            }
+            checkCodeLength();
+        }
+    }
+
+    private static boolean isOperation(Program program, int i) {
+        return program.kind(i) == Program.ADD || program.kind(i) == Program.MULTIPLY;
+    }
+
+    private void emitLocal(int opcode, int local) {
+        if (local <= 0xff) {
+            emitByte(opcode);
+            emitByte(local);
+        } else {
+            emitByte(WIDE);
+            emitByte(opcode);
+            emitShort(local);
+        }
+    }
+
+    private void checkCodeLength() {
+        if (code.size() > MAX_CODE_LENGTH) {
+            throw new TooLargeException();
+        }
+    }
+
+    private void emitVariable(int slot) {
+        emitByte(ALOAD_1);
+        push(1);
+        if (slot <= 5) {
+            emitByte(ICONST_0 + slot);
+        } else if (slot <= Byte.MAX_VALUE) {
+            emitByte(BIPUSH);
+            emitByte(slot);
+        } else if (slot <= Short.MAX_VALUE) {
+            emitByte(SIPUSH);
+            emitShort(slot);
+        } else {
+            emitByte(LDC_W);
+            emitShort(pool.integer(slot));
+        }
+        push(1);
+        emitByte(DALOAD);
+        pop(2);
+        push(2);
+    }
+
+    private void emitConstant(double value) {
+        final long bits = Double.doubleToRawLongBits(value);
+        if (bits == Double.doubleToRawLongBits(0.0)) {
+            emitByte(DCONST_0);
+        } else if (bits == Double.doubleToRawLongBits(1.0)) {
+            emitByte(DCONST_1);
+        } else {
+            emitByte(LDC2_W);
+            emitShort(pool.doubleConstant(value));
+        }
+        push(2);
+    }
+
+    private void push(int slotCount) {
+        stackDepth += slotCount;
+        maxStackDepth = Math.max(maxStackDepth, stackDepth);
+        if (maxStackDepth > MAX_U2) {
+            throw new TooLargeException();
+        }
+    }
+
+    private void pop(int slotCount) {
+        stackDepth -= slotCount;
+        checkRep();
+    }
+
+    private void emitByte(int b) {
+        code.write(b);
+    }
+
+    private void emitShort(int s) {
+        code.write(s >>> 8);
+        code.write(s);
+    }
+
+    /*
+     * Write out the class file around the eval code generated so far,
+     * define it as a hidden class and instantiate it.
+     */
+    private Evaluator define() {
+        final byte[] classFile = classFile();
+        try {
+            final MethodHandles.Lookup lookup =
+                    MethodHandles.lookup().defineHiddenClass(classFile, true);
+            return (Evaluator) lookup.findConstructor(lookup.lookupClass(), MethodType.methodType(void.class))
+                    .invoke();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException("cannot define compiled expression", t);
+        }
+    }
+
+    private byte[] classFile() {
+        final int thisClass = pool.classRef(CLASS_NAME);
+        final int superClass = pool.classRef("java/lang/Object");
+        final int evaluator = pool.classRef(EVALUATOR_NAME);
+        final int objectInit = pool.methodRef(superClass, "<init>", "()V");
+        final int initName = pool.utf8("<init>");
+        final int initType = pool.utf8("()V");
+        final int evalName = pool.utf8("eval");
+        final int evalType = pool.utf8("([D)D");
+        final int codeName = pool.utf8("Code");
+        // constant_pool_count, a u2, is one more than the number of slots
+        if (pool.size() >= MAX_U2) {
+            throw new TooLargeException();
+        }
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);  // minor version
+            out.writeShort(52); // major version: Java 8, no stack map frames required
+            pool.writeTo(out);
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(1);  // interfaces
+            out.writeShort(evaluator);
+            out.writeShort(0);  // fields
+            out.writeShort(2);  // methods
+
+            // public <init>() { super(); }
+            final byte[] init = { (byte) ALOAD_0, (byte) INVOKESPECIAL,
+                (byte) (objectInit >>> 8), (byte) objectInit, (byte) RETURN };
+            writeMethod(out, initName, initType, codeName, 1, 1, init);
+
+            // public double eval(double[] vars) { return <expression>; }
+            writeMethod(out, evalName, evalType, codeName, maxStackDepth, maxLocals, code.toByteArray());
+
+            out.writeShort(0);  // class attributes
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeMethod(DataOutputStream out, int name, int descriptor, int codeName,
+            int maxStack, int maxLocals, byte[] code) throws IOException {
+        out.writeShort(ACC_PUBLIC);
+        out.writeShort(name);
+        out.writeShort(descriptor);
+        out.writeShort(1);  // attributes
+        out.writeShort(codeName);
+        out.writeInt(12 + code.length);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(code.length);
+        out.write(code);
+        out.writeShort(0);  // exception table
+        out.writeShort(0);  // code attributes
+    }
+
+    /**
+     * Thrown when the generated code would exceed a limit of the class file format.
+     */
+    private static final class TooLargeException extends RuntimeException {
+        private static final long serialVersionUID = 1;
+    }
+
+    /**
+     * Mutable constant pool of a class file under construction.
+     */
+    private static final class ConstantPool {
+        private static final int UTF8 = 1;
+        private static final int INTEGER = 3;
+        private static final int DOUBLE = 6;
+        private static final int CLASS = 7;
+        private static final int METHODREF = 10;
+        private static final int NAME_AND_TYPE = 12;
+
+        private final ByteArrayOutputStream entries = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(entries);
+        private final Map<Object, Integer> indices = new HashMap<>();
+        private int nextIndex = 1;
+        // Abstraction Function:
+        //   represents the constant pool whose serialized entries are in entries,
+        //   with the index of each distinct constant recorded in indices
+        //   (keyed by a string describing the entry, or by the Long raw bits of a double)
+
+        int size() {
+            return nextIndex - 1;
+        }
+
+        int utf8(String value) {
+            return add("U" + value, UTF8, 1, () -> out.writeUTF(value));
+        }
+
+        int integer(int value) {
+            return add("I" + value, INTEGER, 1, () -> out.writeInt(value));
+        }
+
+        int doubleConstant(double value) {
+            final long bits = Double.doubleToRawLongBits(value);
+            return add(bits, DOUBLE, 2, () -> out.writeLong(bits));
+        }
+
+        int classRef(String internalName) {
+            final int name = utf8(internalName);
+            return add("C" + internalName, CLASS, 1, () -> out.writeShort(name));
+        }
+
+        int methodRef(int owner, String name, String descriptor) {
+            final int nameIndex = utf8(name);
+            final int descriptorIndex = utf8(descriptor);
+            final int nameAndType = add("N" + name + ":" + descriptor, NAME_AND_TYPE, 1, () -> {
+                out.writeShort(nameIndex);
+                out.writeShort(descriptorIndex);
+            });
+            return add("M" + owner + "." + name + ":" + descriptor, METHODREF, 1, () -> {
+                out.writeShort(owner);
+                out.writeShort(nameAndType);
+            });
+        }
+
+        void writeTo(DataOutputStream classFile) throws IOException {
+            classFile.writeShort(nextIndex);
+            entries.writeTo(classFile);
+        }
+
+        private interface EntryBody {
+            void write() throws IOException;
+        }
+
+        private int add(Object key, int tag, int width, EntryBody body) {
+            final Integer existing = indices.get(key);
+            if (existing != null) {
+                return existing;
+            }
+            try {
+                out.writeByte(tag);
+                body.write();
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+            final int index = nextIndex;
+            nextIndex += width;
+            indices.put(key, index);
+            return index;
+        }
+    }
+}
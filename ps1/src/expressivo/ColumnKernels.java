@@ -0,0 +1,52 @@
+package expressivo;
+
+/**
+ * Element-wise arithmetic on ranges of double arrays, the inner loops of
+ * BatchEvaluator. Each operation reads length elements of its inputs starting at
+ * the given offsets and writes length elements of out starting at 0; out may be
+ * the same array as an input at offset 0, for an operation in place.
+ */
+interface ColumnKernels {
+
+    /**
+     * Set out[k] = x[xOffset + k] + y[yOffset + k] for 0 <= k < length.
+     * @param x left operands
+     * @param xOffset index in x of the first left operand
+     * @param y right operands
+     * @param yOffset index in y of the first right operand
+     * @param out destination
+     * @param length number of elements
+     */
+    void add(double[] x, int xOffset, double[] y, int yOffset, double[] out, int length);
+
+    /**
+     * Set out[k] = x[xOffset + k] + c for 0 <= k < length.
+     * @param x left operands
+     * @param xOffset index in x of the first left operand
+     * @param c right operand of every addition
+     * @param out destination
+     * @param length number of elements
+     */
+    void add(double[] x, int xOffset, double c, double[] out, int length);
+
+    /**
+     * Set out[k] = x[xOffset + k] * y[yOffset + k] for 0 <= k < length.
+     * @param x left operands
+     * @param xOffset index in x of the first left operand
+     * @param y right operands
+     * @param yOffset index in y of the first right operand
+     * @param out destination
+     * @param length number of elements
+     */
+    void multiply(double[] x, int xOffset, double[] y, int yOffset, double[] out, int length);
+
+    /**
+     * Set out[k] = x[xOffset + k] * c for 0 <= k < length.
+     * @param x left operands
+     * @param xOffset index in x of the first left operand
+     * @param c right operand of every multiplication
+     * @param out destination
+     * @param length number of elements
+     */
+    void multiply(double[] x, int xOffset, double c, double[] out, int length);
+}
@@ -0,0 +1,177 @@
+package expressivo;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Non-interactive execution of a file of commands, one per line, as by
+ * "Main --batch".
+ *
+ * <p>Scripts of millions of commands are read through a large NIO buffer and
+ * split into lines without a Reader, and the output is written through a
+ * large buffer that is flushed only when full and at the end, so the cost per
+ * command is the command itself rather than the console I/O around it.
+ */
+final class CommandFile {
+
+    /** Size of the input and output buffers, in bytes. */
+    static final int BUFFER_SIZE = 1 << 20;
+
+    private CommandFile() {
+        throw new AssertionError("noninstantiable");
+    }
+
+    /**
+     * Execute every nonempty line of a file as a command in a single session,
+     * writing the output of each command on its own line.
+     * @param file name of the file of commands, UTF-8 encoded, or "-" for standard input
+     * @param out stream to write the output to, UTF-8 encoded; flushed but not closed
+     * @return number of commands executed
+     * @throws IOException if there is an error reading the file or writing the output
+     */
+    static long run(String file, OutputStream out) throws IOException {
+        return run(file, out, 1);
+    }
+
+    /**
+     * Execute every nonempty line of a file as a command, as by run(file, out),
+     * with a CommandPipeline if threads > 1.
+     * @param file name of the file of commands, UTF-8 encoded, or "-" for standard input
+     * @param out stream to write the output to, UTF-8 encoded; flushed but not closed
+     * @param threads number of threads executing commands, > 0
+     * @return number of commands executed
+     * @throws IOException if there is an error reading the file or writing the output
+     * @throws IllegalArgumentException if threads <= 0
+     */
+    static long run(String file, OutputStream out, int threads) throws IOException {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads must be positive: " + threads);
+        }
+        final ReadableByteChannel channel = file.equals("-")
+                ? Channels.newChannel(System.in)
+                : FileChannel.open(Paths.get(file), StandardOpenOption.READ);
+        final Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+        try (LineReader in = new LineReader(channel, BUFFER_SIZE)) {
+            final long commands = threads == 1
+                    ? run(in, writer)
+                    : new CommandPipeline(threads, CommandPipeline.DEFAULT_CAPACITY).run(in, writer);
+            writer.flush();
+            return commands;
+        }
+    }
+
+    /**
+     * Execute every nonempty line from a reader as a command in a single session.
+     * @param in lines of commands
+     * @param out writer to append the output of each command to, followed by a newline
+     * @return number of commands executed
+     * @throws IOException if there is an error reading or writing
+     */
+    static long run(LineReader in, Writer out) throws IOException {
+        final Main.Session session = new Main.Session();
+        long commands = 0;
+        for (String line = in.readLine(); line != null; line = in.readLine()) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            out.write(session.execute(line));
+            out.write('\n');
+            commands++;
+        }
+        return commands;
+    }
+
+    /**
+     * Splits the bytes of a channel into UTF-8 lines, reading a large block at a time.
+     * Lines end with "\n" or "\r\n"; the last line need not end with either.
+     * Not thread-safe.
+     */
+    static final class LineReader implements Closeable {
+
+        private final ReadableByteChannel channel;
+        private ByteBuffer buffer;
+        private boolean endOfInput = false;
+        // Rep invariant:
+        //    buffer is a heap buffer in read mode (flipped) whose remaining bytes
+        //      are the unread input read from channel so far
+        // Abstraction Function:
+        //   represents the lines of buffer's remaining bytes followed by the rest of
+        //   channel (none if endOfInput)
+
+        /**
+         * @param channel channel to read from; closed by close()
+         * @param bufferSize initial size of the buffer, > 0; grows to hold the longest line
+         */
+        LineReader(ReadableByteChannel channel, int bufferSize) {
+            this.channel = channel;
+            this.buffer = ByteBuffer.allocate(bufferSize);
+            this.buffer.flip();
+        }
+
+        /**
+         * @return the next line without its line terminator, or null at the end of input
+         * @throws IOException if there is an error reading the channel
+         */
+        String readLine() throws IOException {
+            int scanned = buffer.position();
+            while (true) {
+                final byte[] bytes = buffer.array();
+                // '\n' never occurs within a multi-byte UTF-8 character, so lines can be split on bytes
+                for (int i = scanned; i < buffer.limit(); i++) {
+                    if (bytes[i] == '\n') {
+                        final int start = buffer.position();
+                        final int end = i > start && bytes[i - 1] == '\r' ? i - 1 : i;
+                        buffer.position(i + 1);
+                        return new String(bytes, start, end - start, StandardCharsets.UTF_8);
+                    }
+                }
+                if (endOfInput) {
+                    if (!buffer.hasRemaining()) {
+                        return null;
+                    }
+                    final String line = new String(bytes, buffer.position(), buffer.remaining(), StandardCharsets.UTF_8);
+                    buffer.position(buffer.limit());
+                    return line;
+                }
+                scanned = fill();
+            }
+        }
+
+        /*
+         * Read more of the channel into the buffer, moving the unread bytes to the
+         * front and growing the buffer if they fill it. Returns the index at which
+         * the bytes that have not been scanned for a line terminator start.
+         */
+        private int fill() throws IOException {
+            final int unread = buffer.remaining();
+            if (unread == buffer.capacity()) {
+                final ByteBuffer larger = ByteBuffer.allocate(2 * buffer.capacity());
+                larger.put(buffer);
+                buffer = larger;
+            } else {
+                buffer.compact();
+            }
+            if (channel.read(buffer) < 0) {
+                endOfInput = true;
+            }
+            buffer.flip();
+            return unread;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
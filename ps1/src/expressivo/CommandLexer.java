@@ -0,0 +1,165 @@
+package expressivo;
+
+/**
+ * Single-pass parsers for the !d/d, !simplify and !metrics commands of Main.
+ *
+ * <p>The commands are parsed character by character, with no regular
+ * expressions: a !simplify command's assignments are validated and stored
+ * into an Environment in the same pass. The accepted language and the errors
+ * reported are those of the regular expressions
+ * <pre>
+ *   !d/d([A-Za-z]+) *
+ *   !simplify( +([A-Za-z]+) *= *([^ ]+))* *
+ * </pre>
+ * with each value parsed by Double.parseDouble.
+ */
+final class CommandLexer {
+
+    /** Prefix of a differentiation command. */
+    static final String DIFFERENTIATE_PREFIX = "!d/d";
+    /** Prefix of a simplification command. */
+    static final String SIMPLIFY_PREFIX = "!simplify";
+    /** Prefix of a command dumping or controlling Metrics. */
+    static final String METRICS_PREFIX = "!metrics";
+
+    /**
+     * What a !metrics command does before dumping the metrics.
+     */
+    enum MetricsAction {
+        /** nothing */
+        DUMP,
+        /** turn metrics on: "!metrics on" */
+        ENABLE,
+        /** turn metrics off: "!metrics off" */
+        DISABLE,
+        /** discard the metrics recorded: "!metrics reset" */
+        RESET
+    }
+
+    private static final String DIFFERENTIATE_USAGE = "usage: !d/d must be followed by a variable name";
+    private static final String SIMPLIFY_USAGE = "usage: !simplify var1=val1 var2=val2 ...";
+    private static final String METRICS_USAGE = "usage: !metrics [on|off|reset]";
+
+    private CommandLexer() {
+        throw new AssertionError("noninstantiable");
+    }
+
+    /**
+     * @param input a line starting with DIFFERENTIATE_PREFIX
+     * @return the variable to differentiate by
+     * @throws Main.CommandSyntaxException if input is not !d/d followed by a variable
+     *         name and optional spaces
+     */
+    static String parseDifferentiate(String input) {
+        assert input.startsWith(DIFFERENTIATE_PREFIX);
+        final int start = DIFFERENTIATE_PREFIX.length();
+        final int end = skipLetters(input, start);
+        if (end == start || skipSpaces(input, end) != input.length()) {
+            throw new Main.CommandSyntaxException(DIFFERENTIATE_USAGE);
+        }
+        return input.substring(start, end);
+    }
+
+    /**
+     * Parse the assignments of a simplification command. A variable assigned more
+     * than once takes its last value.
+     * @param input a line starting with SIMPLIFY_PREFIX
+     * @param environment environment to clear and then store the assignments into
+     * @throws Main.CommandSyntaxException if input is not !simplify followed by
+     *         space-separated assignments var=value and optional spaces
+     * @throws NumberFormatException if input is syntactically valid but a value is not
+     *         a number
+     */
+    static void parseSimplify(String input, Environment environment) {
+        assert input.startsWith(SIMPLIFY_PREFIX);
+        environment.clear();
+        // a bad value is only reported if the whole command is syntactically valid
+        NumberFormatException badValue = null;
+        final int length = input.length();
+        int i = SIMPLIFY_PREFIX.length();
+        while (i < length) {
+            if (input.charAt(i) != ' ') {
+                throw new Main.CommandSyntaxException(SIMPLIFY_USAGE);
+            }
+            i = skipSpaces(input, i);
+            if (i == length) {
+                break; // trailing spaces
+            }
+            final int nameStart = i;
+            i = skipLetters(input, i);
+            if (i == nameStart) {
+                throw new Main.CommandSyntaxException(SIMPLIFY_USAGE);
+            }
+            final int nameEnd = i;
+            i = skipSpaces(input, i);
+            if (i == length || input.charAt(i) != '=') {
+                throw new Main.CommandSyntaxException(SIMPLIFY_USAGE);
+            }
+            i = skipSpaces(input, i + 1);
+            final int valueStart = i;
+            while (i < length && input.charAt(i) != ' ') {
+                i++;
+            }
+            if (i == valueStart) {
+                throw new Main.CommandSyntaxException(SIMPLIFY_USAGE);
+            }
+            if (badValue == null) {
+                try {
+                    environment.put(input.substring(nameStart, nameEnd),
+                            Double.parseDouble(input.substring(valueStart, i)));
+                } catch (NumberFormatException nfe) {
+                    badValue = nfe;
+                }
+            }
+        }
+        if (badValue != null) {
+            throw badValue;
+        }
+    }
+
+    /**
+     * @param input a line starting with METRICS_PREFIX
+     * @return the action named by input
+     * @throws Main.CommandSyntaxException if input is not !metrics, optionally followed
+     *         by spaces and on, off or reset, and optional spaces
+     */
+    static MetricsAction parseMetrics(String input) {
+        assert input.startsWith(METRICS_PREFIX);
+        final int start = skipSpaces(input, METRICS_PREFIX.length());
+        if (start == input.length()) {
+            return MetricsAction.DUMP;
+        }
+        final int end = skipLetters(input, start);
+        if (start == METRICS_PREFIX.length() || skipSpaces(input, end) != input.length()) {
+            throw new Main.CommandSyntaxException(METRICS_USAGE);
+        }
+        switch (input.substring(start, end)) {
+        case "on":
+            return MetricsAction.ENABLE;
+        case "off":
+            return MetricsAction.DISABLE;
+        case "reset":
+            return MetricsAction.RESET;
+        default:
+            throw new Main.CommandSyntaxException(METRICS_USAGE);
+        }
+    }
+
+    private static int skipLetters(String input, int i) {
+        while (i < input.length() && isLetter(input.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int skipSpaces(String input, int i) {
+        while (i < input.length() && input.charAt(i) == ' ') {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isLetter(char c) {
+        return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z');
+    }
+}
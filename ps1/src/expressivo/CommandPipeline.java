@@ -0,0 +1,237 @@
+package expressivo;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Execution of a file of commands on several threads, with the same output as
+ * CommandFile.run executing them one at a time.
+ *
+ * <p>Entering an expression replaces the current expression, so the commands
+ * from one expression line up to the next are independent of all others: the
+ * input is split into such sessions, which are executed on a pool of worker
+ * threads. The one dependency between sessions is when a session's expression
+ * fails to parse, leaving the current expression of the previous session in
+ * place; only then does the session wait for the previous one to finish.
+ * A session longer than a maximum number of lines is split into chunks of at
+ * most that many, each continuing from the current expression left by the
+ * chunk before it, so such chunks run one after another.
+ *
+ * <p>The results of the sessions are written in input order: each session's
+ * future result is queued as the session is submitted, and a writer thread
+ * takes them off the queue in order, waiting for each to complete. The queue
+ * is bounded, so that reading blocks when the writer (or the workers) fall
+ * behind, and the number of lines in memory at once stays bounded.
+ *
+ * <p>The !metrics commands read and change the metrics of all threads, so each
+ * is a barrier: it is executed once every command before it has finished, and
+ * no command after it starts until it has finished. Its output is therefore the
+ * same as when executing the commands one at a time.
+ */
+final class CommandPipeline {
+
+    /** Default bound on the number of sessions read but not yet written. */
+    static final int DEFAULT_CAPACITY = 1024;
+    /** Default bound on the number of lines of a session executed as one task. */
+    static final int DEFAULT_SESSION_LINES = 1024;
+
+    private static final long POLL_MILLIS = 100;
+
+    private final int threads;
+    private final int capacity;
+    private final int sessionLines;
+    // Rep invariant:
+    //    threads > 0, capacity > 0, sessionLines > 0
+
+    /**
+     * @param threads number of worker threads, > 0
+     * @param capacity largest number of sessions read but not yet written, > 0
+     * @throws IllegalArgumentException if threads <= 0 or capacity <= 0
+     */
+    CommandPipeline(int threads, int capacity) {
+        this(threads, capacity, DEFAULT_SESSION_LINES);
+    }
+
+    /**
+     * @param threads number of worker threads, > 0
+     * @param capacity largest number of sessions (or chunks of sessions) read but
+     *         not yet written, > 0
+     * @param sessionLines largest number of lines of a session executed as one task, > 0
+     * @throws IllegalArgumentException if threads, capacity or sessionLines is <= 0
+     */
+    CommandPipeline(int threads, int capacity, int sessionLines) {
+        if (threads <= 0 || capacity <= 0 || sessionLines <= 0) {
+            throw new IllegalArgumentException(
+                    "sizes must be positive: " + threads + ", " + capacity + ", " + sessionLines);
+        }
+        this.threads = threads;
+        this.capacity = capacity;
+        this.sessionLines = sessionLines;
+    }
+
+    /**
+     * Execute every nonempty line from a reader as a command, writing the output
+     * of each command on its own line, exactly as CommandFile.run(in, out) does.
+     * @param in lines of commands
+     * @param out writer to append the output of each command to, followed by a newline
+     * @return number of commands executed
+     * @throws IOException if there is an error reading or writing
+     */
+    long run(CommandFile.LineReader in, Writer out) throws IOException {
+        final ExecutorService workers = Executors.newFixedThreadPool(threads);
+        final ExecutorService writerThread = Executors.newSingleThreadExecutor();
+        final BlockingQueue<CompletableFuture<SessionResult>> inFlight = new ArrayBlockingQueue<>(capacity);
+        final CompletableFuture<SessionResult> end = CompletableFuture.completedFuture(null);
+        try {
+            final Future<Long> writer = writerThread.submit(() -> write(inFlight, end, out));
+            CompletableFuture<SessionResult> previous = CompletableFuture.completedFuture(
+                    new SessionResult(new String[0], Optional.empty()));
+            // sessions submitted since the last barrier, some of which may not have
+            // finished; at most capacity + 1 have not, since they are queued or
+            // being written, so pruning the finished keeps this list short
+            final List<CompletableFuture<SessionResult>> unfinished = new ArrayList<>();
+            List<String> lines = new ArrayList<>();
+            for (String line = in.readLine(); line != null; line = in.readLine()) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                final boolean barrier = line.startsWith(CommandLexer.METRICS_PREFIX);
+                if (!lines.isEmpty() && (barrier || !Main.isCommand(line) || lines.size() == sessionLines)) {
+                    previous = submit(lines, previous, workers);
+                    enqueue(previous, inFlight, writer);
+                    unfinished.add(previous);
+                    if (unfinished.size() > 2 * capacity) {
+                        unfinished.removeIf(CompletableFuture::isDone);
+                    }
+                    lines = new ArrayList<>();
+                }
+                if (barrier) {
+                    await(unfinished);
+                    previous = CompletableFuture.completedFuture(execute(Collections.singletonList(line), previous));
+                    enqueue(previous, inFlight, writer);
+                } else {
+                    lines.add(line);
+                }
+            }
+            if (!lines.isEmpty()) {
+                enqueue(submit(lines, previous, workers), inFlight, writer);
+            }
+            enqueue(end, inFlight, writer);
+            return writer.get();
+        } catch (ExecutionException ee) {
+            if (ee.getCause() instanceof IOException) {
+                throw (IOException) ee.getCause();
+            }
+            throw new IllegalStateException("command pipeline failed", ee.getCause());
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted", ie);
+        } finally {
+            workers.shutdownNow();
+            writerThread.shutdownNow();
+        }
+    }
+
+    /*
+     * Start executing a session on the workers.
+     */
+    private static CompletableFuture<SessionResult> submit(List<String> lines,
+            CompletableFuture<SessionResult> previous, ExecutorService workers) {
+        return CompletableFuture.supplyAsync(() -> execute(lines, previous), workers);
+    }
+
+    /*
+     * Wait for every session in unfinished to finish, and clear it.
+     */
+    private static void await(List<CompletableFuture<SessionResult>> unfinished) {
+        try {
+            CompletableFuture.allOf(unfinished.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException ce) {
+            throw new IllegalStateException("command pipeline failed", ce.getCause());
+        }
+        unfinished.clear();
+    }
+
+    /*
+     * Execute a session's lines. If the first is an expression, waits for the
+     * previous session only if it leaves no current expression, because it is
+     * invalid; if the first is a command (in the first session, or in a chunk
+     * continuing a long session or following a barrier), waits for the previous
+     * session and starts from its current expression.
+     * Sessions are submitted in order to workers that start them in order, so the
+     * previous session has started and the wait cannot deadlock.
+     */
+    private static SessionResult execute(List<String> lines, CompletableFuture<SessionResult> previous) {
+        final Main.Session session = new Main.Session();
+        final String[] outputs = new String[lines.size()];
+        int first = 0;
+        if (!Main.isCommand(lines.get(0))) {
+            outputs[0] = session.execute(lines.get(0));
+            first = 1;
+        }
+        if (!session.currentExpression().isPresent()) {
+            session.setCurrentExpression(previous.join().finalExpression);
+        }
+        for (int i = first; i < outputs.length; i++) {
+            outputs[i] = session.execute(lines.get(i));
+        }
+        return new SessionResult(outputs, session.currentExpression());
+    }
+
+    /*
+     * Queue a session's result for the writer, blocking while the queue is full,
+     * unless the writer has stopped.
+     */
+    private static void enqueue(CompletableFuture<SessionResult> result,
+            BlockingQueue<CompletableFuture<SessionResult>> inFlight, Future<Long> writer)
+            throws InterruptedException, ExecutionException {
+        while (!inFlight.offer(result, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+            if (writer.isDone()) {
+                writer.get(); // throws the writer's exception
+                throw new IllegalStateException("writer stopped early");
+            }
+        }
+    }
+
+    /*
+     * Write the outputs of the queued sessions in order, until end is taken.
+     */
+    private static long write(BlockingQueue<CompletableFuture<SessionResult>> inFlight,
+            CompletableFuture<SessionResult> end, Writer out) throws IOException, InterruptedException {
+        long commands = 0;
+        for (CompletableFuture<SessionResult> result = inFlight.take(); result != end; result = inFlight.take()) {
+            for (String output : result.join().outputs) {
+                out.write(output);
+                out.write('\n');
+                commands++;
+            }
+        }
+        return commands;
+    }
+
+    /*
+     * The outputs of a session's commands, and the current expression after them.
+     */
+    private static final class SessionResult {
+        private final String[] outputs;
+        private final Optional<String> finalExpression;
+
+        SessionResult(String[] outputs, Optional<String> finalExpression) {
+            this.outputs = outputs;
+            this.finalExpression = finalExpression;
+        }
+    }
+}
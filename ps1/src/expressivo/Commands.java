@@ -21,8 +21,11 @@ public class Commands {
      * @throws IllegalArgumentException if the expression or variable is invalid
      */
     public static String differentiate(String expression, String variable) {
-        Expression expressionAST = Expression.parse(expression);
-        return expressionAST.differentiate(variable).toString();
+        Expression expressionAST = ParseCache.shared().parse(expression);
+        final long start = Metrics.start(Metrics.Phase.DIFFERENTIATE);
+        final Expression derivative = DerivativeCache.shared().differentiate(expressionAST, variable);
+        Metrics.stop(Metrics.Phase.DIFFERENTIATE, start, expressionAST, derivative);
+        return print(derivative);
     }
     
     /**
@@ -35,11 +38,33 @@ public class Commands {
      *         the expression and the environment with its value, environment.get(v).  If there are no
      *         variables left in this expression after substitution, it must be evaluated to a single number.
      *         Additional simplifications to the expression may be done at the implementor's discretion.
+     *         The result is in polynomial normal form: like terms are combined and products of sums
+     *         expanded, so that inputs equal for all values of their variables give the same result.
+     *         Terms are ordered by decreasing degree, each a coefficient (omitted if 1) times its
+     *         variables in alphabetical order, with any constant term last. If expanding would
+     *         multiply more than 10,000 pairs of terms in one product, as for a product of many
+     *         sums, the result is instead that of Expression.simplify: variables substituted
+     *         and numerical operations simplified, with products of sums left unexpanded.
      * @throws IllegalArgumentException if the expression is invalid
      */
     public static String simplify(String expression, Map<String,Double> environment) {
-        Expression expressionAST = Expression.parse(expression);
-        return expressionAST.simplify(environment).toString();
+        Expression expressionAST = ParseCache.shared().parse(expression);
+        final long start = Metrics.start(Metrics.Phase.SIMPLIFY);
+        final Expression substituted = expressionAST.simplify(environment);
+        final Polynomial normal = Polynomial.of(substituted, Polynomial.MAX_TERMS);
+        final Expression simplified = normal == null ? substituted : normal.toExpression();
+        Metrics.stop(Metrics.Phase.SIMPLIFY, start, expressionAST, simplified);
+        return print(simplified);
+    }
+    
+    /*
+     * expression.toString(), recorded as the TO_STRING phase of Metrics.
+     */
+    private static String print(Expression expression) {
+        final long start = Metrics.start(Metrics.Phase.TO_STRING);
+        final String string = expression.toString();
+        Metrics.stop(Metrics.Phase.TO_STRING, start, expression, null);
+        return string;
     }
     
     /* Copyright (c) 2015-2017 MIT 6.005 course staff, all rights reserved.
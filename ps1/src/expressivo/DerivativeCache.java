@@ -0,0 +1,241 @@
+package expressivo;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded, thread-safe memo of derivatives: for each (expression, variable)
+ * pair differentiated through it, the derivative, for reuse by later calls.
+ *
+ * <p>Every Plus, Times, Sum and Product node met while differentiating is
+ * recorded, so differentiating an expression that shares subexpressions with
+ * one differentiated before only computes the derivatives of the new parts.
+ * Expressions are immutable and equal expressions have equal derivatives, so a
+ * derivative recorded for one expression may be returned for any equal one.
+ *
+ * <p>Keys are held weakly: an entry is dropped once its expression is no longer
+ * reachable from outside the cache. The cache also holds at most a maximum
+ * number of expressions, dropping an arbitrary one to make room for another.
+ *
+ * <p>The cache is divided into segments, each a WeakHashMap with its own lock,
+ * so threads differentiating different expressions rarely contend.
+ */
+public final class DerivativeCache {
+
+    /** Name of the system property giving the maximum size of the shared cache. */
+    public static final String SIZE_PROPERTY = "expressivo.derivativeCache.size";
+    /** Maximum size of the shared cache unless set by SIZE_PROPERTY. */
+    public static final int DEFAULT_MAXIMUM_SIZE = 1 << 16;
+
+    private static final int DEFAULT_SEGMENTS = 16;
+
+    private static final DerivativeCache SHARED =
+            new DerivativeCache(Integer.getInteger(SIZE_PROPERTY, DEFAULT_MAXIMUM_SIZE));
+
+    private final Segment[] segments;
+    private final int maximumSize;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    // Rep invariant:
+    //    segments.length >= 1, and the capacities of the segments sum to maximumSize
+    //    each segment holds at most its capacity expressions
+    //    for every e, v, d with segment.get(e).get(v) == d, d equals
+    //      a derivative of e with respect to v as computed by Expression.differentiate
+    // Abstraction Function:
+    //   represents the memo mapping (e, v) to the derivative recorded for e and v
+    //   in e's segment, with the numbers of lookups that found a derivative (hits)
+    //   and that did not (misses), and of expressions dropped to make room (evictions)
+    // Thread safety argument:
+    //   each segment, and the maps in it, are only accessed while holding the
+    //   segment's lock; the counters are LongAdders; the other fields are final
+    //   and immutable
+
+    // Check that the rep invariant is true
+    // *** Warning: this does nothing unless you turn on assertion checking
+    // by passing -enableassertions to Java
+    private void checkRep() {
+        assert segments.length >= 1;
+        int capacity = 0;
+        for (Segment segment : segments) {
+            capacity += segment.capacity;
+        }
+        assert capacity == maximumSize;
+    }
+
+    /**
+     * Make an empty cache of the default maximum size.
+     */
+    public DerivativeCache() {
+        this(DEFAULT_MAXIMUM_SIZE);
+    }
+
+    /**
+     * Make an empty cache.
+     * @param maximumSize largest number of expressions the cache holds derivatives of, > 0
+     * @throws IllegalArgumentException if maximumSize <= 0
+     */
+    public DerivativeCache(int maximumSize) {
+        this(maximumSize, DEFAULT_SEGMENTS);
+    }
+
+    /**
+     * Make an empty cache.
+     * @param maximumSize largest number of expressions the cache holds derivatives of, > 0
+     * @param segmentCount number of independently locked segments, > 0; at most
+     *         maximumSize are used
+     * @throws IllegalArgumentException if maximumSize <= 0 or segmentCount <= 0
+     */
+    DerivativeCache(int maximumSize, int segmentCount) {
+        if (maximumSize <= 0 || segmentCount <= 0) {
+            throw new IllegalArgumentException("sizes must be positive: " + maximumSize + ", " + segmentCount);
+        }
+        this.maximumSize = maximumSize;
+        this.segments = new Segment[Math.min(segmentCount, maximumSize)];
+        for (int i = 0; i < segments.length; i++) {
+            final int capacity = maximumSize / segments.length + (i < maximumSize % segments.length ? 1 : 0);
+            segments[i] = new Segment(capacity);
+        }
+        checkRep();
+    }
+
+    /**
+     * @return the cache used by Commands.differentiate, whose maximum size is given
+     *         by the system property expressivo.derivativeCache.size (default 65536)
+     */
+    public static DerivativeCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * Differentiate an expression, reusing and recording the derivatives of its
+     * subexpressions.
+     * @param expression expression to differentiate
+     * @param variable variable with respect to which expression is differentiated
+     * @return an expression equal to expression.differentiate(variable)
+     */
+    public Expression differentiate(Expression expression, String variable) {
+        return Differentiation.differentiate(expression, variable, this);
+    }
+
+    /**
+     * @param expression an expression
+     * @param variable a variable
+     * @return the recorded derivative of expression with respect to variable, or null
+     */
+    Expression get(Expression expression, String variable) {
+        final Segment segment = segmentFor(expression);
+        final Expression derivative;
+        synchronized (segment) {
+            final Map<String, Expression> byVariable = segment.get(expression);
+            derivative = byVariable == null ? null : byVariable.get(variable);
+        }
+        (derivative == null ? misses : hits).increment();
+        return derivative;
+    }
+
+    /**
+     * Record a derivative, dropping another expression's derivatives if the
+     * segment of expression is full.
+     * @param expression an expression
+     * @param variable a variable
+     * @param derivative derivative of expression with respect to variable
+     */
+    void put(Expression expression, String variable, Expression derivative) {
+        final Segment segment = segmentFor(expression);
+        synchronized (segment) {
+            Map<String, Expression> byVariable = segment.get(expression);
+            if (byVariable == null) {
+                if (segment.size() >= segment.capacity) {
+                    final Iterator<Expression> victim = segment.keySet().iterator();
+                    if (victim.hasNext()) {
+                        victim.next();
+                        victim.remove();
+                        evictions.increment();
+                    }
+                }
+                byVariable = new HashMap<>(2);
+                segment.put(expression, byVariable);
+            }
+            byVariable.put(variable, derivative);
+        }
+    }
+
+    /**
+     * @return largest number of expressions this cache holds derivatives of
+     */
+    public int maximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * @return number of expressions with at least one recorded derivative
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return number of lookups of a subexpression whose derivative had been recorded
+     */
+    public long hits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return number of lookups of a subexpression whose derivative had not been recorded
+     */
+    public long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return number of expressions whose derivatives were dropped to make room for others
+     */
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Remove every recorded derivative. The counters are not reset.
+     */
+    public void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("DerivativeCache[size=%d/%d, hits=%d, misses=%d, evictions=%d]",
+                size(), maximumSize, hits(), misses(), evictions());
+    }
+
+    private Segment segmentFor(Expression expression) {
+        final int hash = expression.hashCode();
+        return segments[Math.floorMod(hash ^ (hash >>> 16), segments.length)];
+    }
+
+    /*
+     * Derivatives by expression, held weakly, up to capacity expressions.
+     * Guarded by its own lock.
+     */
+    private static final class Segment extends WeakHashMap<Expression, Map<String, Expression>> {
+        private final int capacity;
+
+        Segment(int capacity) {
+            this.capacity = capacity;
+        }
+    }
+}
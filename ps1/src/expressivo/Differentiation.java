@@ -0,0 +1,121 @@
+package expressivo;
+
+import java.util.List;
+
+/**
+ * Symbolic differentiation with respect to one variable, as specified by
+ * Expression.differentiate, computed bottom-up with Traversal.fold.
+ *
+ * <p>The sum and product rules build their results with the smart constructors
+ * of Arithmetic, so zero terms and factors of one are dropped as they arise
+ * instead of accumulating: without this, each derivative of a product of n
+ * factors is n times the size of the last.
+ */
+final class Differentiation implements Fold<Expression> {
+
+    private final String variable;
+    private final boolean simplifying;
+    private final DerivativeCache cache;
+
+    private Differentiation(String variable, boolean simplifying, DerivativeCache cache) {
+        this.variable = variable;
+        this.simplifying = simplifying;
+        this.cache = cache;
+    }
+
+    /**
+     * @param expression expression to differentiate
+     * @param variable variable with respect to which expression is differentiated
+     * @return expression.differentiate(variable), computed without recursion and
+     *         once for each distinct subexpression instance
+     */
+    static Expression differentiate(Expression expression, String variable) {
+        return Traversal.foldShared(expression, new Differentiation(variable, true, null));
+    }
+
+    /**
+     * @param expression expression to differentiate
+     * @param variable variable with respect to which expression is differentiated
+     * @param cache derivatives computed before, which are reused for any subexpression
+     *         of expression they are found for, and to which the derivatives of the
+     *         subexpressions of expression are added
+     * @return expression.differentiate(variable)
+     */
+    static Expression differentiate(Expression expression, String variable, DerivativeCache cache) {
+        return Traversal.foldShared(expression, new Differentiation(variable, true, cache));
+    }
+
+    /**
+     * Differentiate by the textbook sum and product rules alone, keeping every
+     * term they produce; for comparison with differentiate().
+     * @param expression expression to differentiate
+     * @param variable variable with respect to which expression is differentiated
+     * @return derivative of expression with respect to variable, with the same value
+     *         as differentiate(expression, variable)
+     */
+    static Expression differentiateVerbatim(Expression expression, String variable) {
+        return Traversal.fold(expression, new Differentiation(variable, false, null));
+    }
+
+    @Override
+    public Expression cached(Expression node) {
+        return cache == null ? null : cache.get(node, variable);
+    }
+
+    @Override
+    public void computed(Expression node, Expression derivative) {
+        if (cache != null) {
+            cache.put(node, variable, derivative);
+        }
+    }
+
+    private Expression add(Expression left, Expression right) {
+        return simplifying ? Arithmetic.add(left, right) : Expression.plus(left, right);
+    }
+
+    private Expression multiply(Expression left, Expression right) {
+        return simplifying ? Arithmetic.multiply(left, right) : Expression.times(left, right);
+    }
+
+    @Override
+    public Expression number(Number node) {
+        return node.differentiate(variable);
+    }
+
+    @Override
+    public Expression variable(Variable node) {
+        return node.differentiate(variable);
+    }
+
+    @Override
+    public Expression plus(Plus node, Expression leftDerivative, Expression rightDerivative) {
+        return add(leftDerivative, rightDerivative);
+    }
+
+    @Override
+    public Expression times(Times node, Expression leftDerivative, Expression rightDerivative) {
+        return add(multiply(node.left(), rightDerivative), multiply(node.right(), leftDerivative));
+    }
+
+    @Override
+    public Expression sum(Sum node, List<Expression> derivatives) {
+        if (simplifying) {
+            return Arithmetic.addAll(derivatives);
+        }
+        return Expression.sum(derivatives.toArray(new Expression[0]));
+    }
+
+    /*
+     * The derivative of the left-nested product ((a1 * a2) * ...) * an, by the
+     * same rule as times(): d(p * a) = p * da + a * dp, where p is a prefix of node.
+     */
+    @Override
+    public Expression product(Product node, List<Expression> derivatives) {
+        Expression derivative = derivatives.get(0);
+        for (int i = 1; i < node.size(); i++) {
+            derivative = add(multiply(node.prefix(i), derivatives.get(i)),
+                    multiply(node.operand(i), derivative));
+        }
+        return derivative;
+    }
+}
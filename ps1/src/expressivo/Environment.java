@@ -0,0 +1,155 @@
+package expressivo;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A mutable mapping from variable names to values that stores the values as
+ * primitive doubles, for reuse by command after command without allocating a
+ * map, entries or boxed values for each.
+ *
+ * <p>Names are found through an open-addressing hash table of indices into
+ * parallel arrays of names and values. Values are boxed only when read through
+ * the Map interface, as Expression.simplify does once per variable occurrence.
+ * Not thread-safe.
+ */
+final class Environment extends AbstractMap<String, Double> {
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    private String[] names = new String[INITIAL_CAPACITY];
+    private double[] values = new double[INITIAL_CAPACITY];
+    private int size = 0;
+    private int[] table = new int[2 * INITIAL_CAPACITY];
+    // Rep invariant:
+    //    names.length == values.length, table.length == 2 * names.length, a power of 2
+    //    0 <= size <= names.length; names[0..size) are distinct and non-null
+    //    every entry of table is 0 (empty) or i+1 for some i < size, and each such i
+    //      appears once, in the slot reached by linear probing from names[i]'s hash
+    // Abstraction Function:
+    //   represents the mapping from names[i] to values[i] for i < size
+    // Safety from rep exposure:
+    //   the arrays are never returned; entries are immutable copies
+
+    /**
+     * Make an empty environment.
+     */
+    Environment() {
+    }
+
+    /**
+     * Map a variable to a value, replacing any value it had.
+     * @param name variable name
+     * @param value its value
+     */
+    void put(String name, double value) {
+        final int slot = slot(name);
+        if (table[slot] != 0) {
+            values[table[slot] - 1] = value;
+            return;
+        }
+        if (size == names.length) {
+            grow();
+            put(name, value);
+            return;
+        }
+        names[size] = name;
+        values[size] = value;
+        size++;
+        table[slot] = size;
+    }
+
+    @Override
+    public Double put(String name, Double value) {
+        final Double previous = get(name);
+        put(name, value.doubleValue());
+        return previous;
+    }
+
+    @Override
+    public Double get(Object name) {
+        if (!(name instanceof String)) {
+            return null;
+        }
+        final int index = table[slot((String) name)];
+        return index == 0 ? null : values[index - 1];
+    }
+
+    @Override
+    public boolean containsKey(Object name) {
+        return name instanceof String && table[slot((String) name)] != 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Remove every mapping, keeping the storage for reuse.
+     */
+    @Override
+    public void clear() {
+        Arrays.fill(names, 0, size, null);
+        Arrays.fill(table, 0);
+        size = 0;
+    }
+
+    @Override
+    public Set<Entry<String, Double>> entrySet() {
+        return new AbstractSet<Entry<String, Double>>() {
+            @Override
+            public Iterator<Entry<String, Double>> iterator() {
+                return new Iterator<Entry<String, Double>>() {
+                    private int next = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < size;
+                    }
+
+                    @Override
+                    public Entry<String, Double> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        final Entry<String, Double> entry = new SimpleImmutableEntry<>(names[next], values[next]);
+                        next++;
+                        return entry;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /*
+     * The slot of table holding name's index, or the empty slot where it would go.
+     */
+    private int slot(String name) {
+        final int mask = table.length - 1;
+        final int hash = name.hashCode();
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (table[slot] != 0 && !names[table[slot] - 1].equals(name)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        names = Arrays.copyOf(names, 2 * names.length);
+        values = Arrays.copyOf(values, 2 * values.length);
+        table = new int[2 * names.length];
+        for (int i = 0; i < size; i++) {
+            table[slot(names[i])] = i + 1;
+        }
+    }
+}
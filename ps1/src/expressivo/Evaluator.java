@@ -0,0 +1,17 @@
+package expressivo;
+
+/**
+ * A numeric function of a fixed, ordered list of variables, obtained from an
+ * Expression (see Expression.compile).
+ */
+@FunctionalInterface
+public interface Evaluator {
+    
+    /**
+     * Evaluate the expression this evaluator was made from.
+     * @param vars values of the variables, in the order given when this evaluator
+     *         was made; must have at least that many elements
+     * @return value of the expression with each variable replaced by its value
+     */
+    public double eval(double[] vars);
+}
@@ -1,7 +1,7 @@
 package expressivo;
 
 import lib6005.parser.*;
-import java.io.*;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -21,34 +21,92 @@ public interface Expression {
     //            + Variable(name:String)
     //            + Plus(left:Expression, right:Expression)
     //            + Times(left:Expression, right:Expression)
+    //            + Sum(operands:Expression[])
+    //            + Product(operands:Expression[])
+    // where Sum(a1, ..., an) is an alternative, flat representation of the
+    // left-nested Plus(...Plus(Plus(a1, a2), a3)..., an), and likewise Product of Times.
     
     enum Grammar {ROOT, SUM, PRODUCT, PRIMITIVE, NUMBER, VARIABLE, WHITESPACE};
     
     /**
      * Create a number expression.
+     * Structurally-equal expressions made by the factory methods of this interface
+     * are the same instance, for as long as any of them is in use.
      * @param value numerical value of the number expression.
-     * @return new instance of a number expression
+     * @return number expression with that value
      */
     public static Expression number(double value)
     {
-        return new Number(value);
+        return Interner.intern(new Number(value));
     }
     
     /**
      * Create a variable expression.
      * @param name variable name.
-     * @return new instance of a variable expression
+     * @return variable expression with that name, shared as for number()
      */
     public static Expression variable(String name)
     {
-        return new Variable(name);
+        return Interner.intern(new Variable(name));
+    }
+    
+    /**
+     * Create an expression representing the sum of two expressions.
+     * @param left left operand of the sum operation.
+     * @param right right operand of the sum operation.
+     * @return sum expression, shared as for number()
+     */
+    public static Expression plus(Expression left, Expression right)
+    {
+        return Interner.intern(new Plus(left, right));
+    }
+    
+    /**
+     * Create an expression representing the product of two expressions.
+     * @param left left operand of the product operation.
+     * @param right right operand of the product operation.
+     * @return product expression, shared as for number()
+     */
+    public static Expression times(Expression left, Expression right)
+    {
+        return Interner.intern(new Times(left, right));
+    }
+    
+    /**
+     * Create an expression representing the left-nested sum of one or more expressions,
+     * ((operands[0] + operands[1]) + ...) + operands[n-1], stored as a single node.
+     * @param operands operands of the sum, left to right; at least one
+     * @return operands[0] if there is only one operand, otherwise a sum expression,
+     *         shared as for number()
+     */
+    public static Expression sum(Expression... operands)
+    {
+        if (operands.length == 1) {
+            return operands[0];
+        }
+        return Interner.intern(new Sum(operands));
+    }
+    
+    /**
+     * Create an expression representing the left-nested product of one or more expressions,
+     * ((operands[0] * operands[1]) * ...) * operands[n-1], stored as a single node.
+     * @param operands operands of the product, left to right; at least one
+     * @return operands[0] if there is only one operand, otherwise a product expression,
+     *         shared as for number()
+     */
+    public static Expression product(Expression... operands)
+    {
+        if (operands.length == 1) {
+            return operands[0];
+        }
+        return Interner.intern(new Product(operands));
     }
     
     /**
      * Create a new expression representing the sum of two expressions.
      * The result has this expression as the left operand.
      * @param rhs right operand of the sum operation.
-     * @return new instance of a sum expression
+     * @return sum expression, as made by Expression.plus(this, rhs)
      */
     public Expression plus(Expression rhs);
     
@@ -56,7 +114,7 @@ public interface Expression {
      * Create a new expression representing the product of two expressions.
      * The result has this expression as the left operand.
      * @param rhs right operand of the product operation.
-     * @return new instance of a product expression
+     * @return product expression, as made by Expression.times(this, rhs)
      */
     public Expression times(Expression rhs);
     
@@ -67,16 +125,33 @@ public interface Expression {
      * @throws IllegalArgumentException if the expression is invalid
      */
     public static Expression parse(String input) {
+        return parse(input, ExpressionParser.defaultBackend());
+    }
+    
+    /**
+     * Parse an expression with a particular parser implementation.
+     * @param input expression to parse, as defined in the PS1 handout.
+     * @param backend parser implementation to use
+     * @return expression AST for the input, structurally equal whichever backend is used
+     * @throws IllegalArgumentException if the expression is invalid
+     */
+    public static Expression parse(String input, ExpressionParser.Backend backend) {
+        final long start = Metrics.start(Metrics.Phase.PARSE);
+        if (backend == ExpressionParser.Backend.RECURSIVE_DESCENT) {
+            final Expression expression = RecursiveDescentParser.parse(input);
+            Metrics.stop(Metrics.Phase.PARSE, start, null, expression);
+            return expression;
+        }
         try {
-            Parser<Grammar> parser =
-                    GrammarCompiler.compile(new File("src/expressivo/Expression.g"), Grammar.ROOT);
-            ParseTree<Grammar> tree = parser.parse(input);
+            ParseTree<Grammar> tree = ExpressionParser.parser().parse(input);
             
-            return buildAST(tree);
+            final long buildStart = Metrics.start(Metrics.Phase.BUILD_AST);
+            final Expression expression = buildAST(tree);
+            Metrics.stop(Metrics.Phase.BUILD_AST, buildStart);
+            Metrics.stop(Metrics.Phase.PARSE, start, null, expression);
+            return expression;
         } catch (UnableToParseException utpe) {
             System.out.println(utpe.getClass().getName() + ": " + utpe.getMessage());
-        } catch (IOException ioe) {
-            System.out.println(ioe.getClass().getName() + ": " + ioe.getMessage());
         }
         throw new IllegalArgumentException("expression is invalid");
     }
@@ -91,7 +166,9 @@ public interface Expression {
     /**
      * @param thatObject any object
      * @return true if and only if this and thatObject are structurally-equal
-     * Expressions, as defined in the PS1 handout.
+     * Expressions, as defined in the PS1 handout. A sum or product made by
+     * Expression.sum or Expression.product is structurally equal to the
+     * left-nested chain of binary sums or products with the same operands.
      */
     @Override
     public boolean equals(Object thatObject);
@@ -122,12 +199,12 @@ public interface Expression {
             /*
              * A number will be a terminal containing a number.
              */
-            return new Number(Double.parseDouble(p.getContents()));
+            return number(Double.parseDouble(p.getContents()));
         case VARIABLE:
             /*
              * A variable will be a terminal containing a name.
              */
-            return new Variable(p.getContents());
+            return variable(p.getContents());
         case PRIMITIVE:
             /*
              * A primitive will have either a number, a variable or a sum as child (in addition to 
@@ -148,40 +225,14 @@ public interface Expression {
              * Note that we only care about the children that are product. There may also be 
              * some whitespace children which we want to ignore.
              */
-            boolean first = true;
-            Expression result = null;
-            for (ParseTree<Grammar> child : p.childrenByName(Grammar.PRODUCT)){                
-                if (first){
-                    result = buildAST(child);
-                    first = false;
-                } else {
-                    result = new Plus(result, buildAST(child));
-                }
-            }
-            if (first) {
-                throw new RuntimeException("sum must have a non whitespace child:" + p);
-            }
-            return result;
+            return sum(buildChildren(p, Grammar.PRODUCT));
         case PRODUCT:
             /*
              * A product will have one or more children that need to be multiplied together.
              * Note that we only care about the children that are primitive. There may also be 
              * some whitespace children which we want to ignore.
              */
-            first = true;
-            result = null;
-            for (ParseTree<Grammar> child : p.childrenByName(Grammar.PRIMITIVE)){                
-                if (first){
-                    result = buildAST(child);
-                    first = false;
-                } else {
-                    result = new Times(result, buildAST(child));
-                }
-            }
-            if (first) {
-                throw new RuntimeException("product must have a non whitespace child:" + p);
-            }
-            return result;
+            return product(buildChildren(p, Grammar.PRIMITIVE));
         case ROOT:
             /*
              * The root has a single sum child, in addition to having potentially some whitespace.
@@ -200,8 +251,29 @@ public interface Expression {
         throw new RuntimeException("You should never reach here:" + p);
     }
     
+    /**
+     * Build the ASTs of the children of a parse tree node with a given name.
+     * @param p ParseTree<Grammar> that is assumed to have been constructed by the grammar in Expression.g
+     * @param name name of the children to build
+     * @return ASTs of the children of p named name, in order
+     * @throws RuntimeException if p has no such child
+     */
+    private static Expression[] buildChildren(ParseTree<Grammar> p, Grammar name) {
+        final List<ParseTree<Grammar>> children = p.childrenByName(name);
+        if (children.isEmpty()) {
+            throw new RuntimeException(p.getName() + " must have a non whitespace child:" + p);
+        }
+        final Expression[] operands = new Expression[children.size()];
+        for (int i = 0; i < operands.length; i++) {
+            operands[i] = buildAST(children.get(i));
+        }
+        return operands;
+    }
+    
     /**
      * Return the derivative of this expression with respect to variable.
+     * Terms that are zero and factors that are one are dropped, and operations
+     * on two numbers are folded, as the derivative is built.
      * @param variable variable with respect to which this expression is differentiated.
      * @return expression differentiated expression.
      */
@@ -215,6 +287,66 @@ public interface Expression {
      */
     public Expression simplify(final Map<String, Double> environment);
     
+    /**
+     * Compile this expression to JVM bytecode for fast repeated evaluation.
+     * Expressions too large for a single JVM method are bound instead, as by bind().
+     * @param variableOrder distinct names of the variables, in the order their values
+     *         will be passed to Evaluator.eval; must include every variable in this expression
+     * @return evaluator e such that e.eval(values) is the value of
+     *         simplify(environment).getValue() for the environment mapping each
+     *         variableOrder[i] to values[i]
+     * @throws IllegalArgumentException if variableOrder has duplicates or misses a variable
+     *         of this expression
+     */
+    public default Evaluator compile(String... variableOrder) {
+        return BytecodeCompiler.compile(this, variableOrder);
+    }
+    
+    /**
+     * Resolve the variables of this expression to array indices once, for
+     * repeated evaluation without hashing, boxing or allocation.
+     * @param variableOrder distinct names of the variables, in the order their values
+     *         will be passed to Evaluator.eval; must include every variable in this expression
+     * @return evaluator e such that e.eval(values) is the value of
+     *         simplify(environment).getValue() for the environment mapping each
+     *         variableOrder[i] to values[i]; e.eval allocates no memory after its
+     *         first call in each thread, and handles expressions of any depth
+     * @throws IllegalArgumentException if variableOrder has duplicates or misses a variable
+     *         of this expression
+     */
+    public default Evaluator bind(String... variableOrder) {
+        return BoundExpression.bind(this, variableOrder);
+    }
+    
+    /**
+     * Prepare this expression for evaluation over many rows of variable bindings
+     * at once, given as one column of values per variable.
+     * @param variableOrder distinct names of the variables, in the order of the columns
+     *         that will be passed to BatchEvaluator.eval; must include every variable in
+     *         this expression
+     * @return batch evaluator whose result for each row is the value of
+     *         simplify(environment).getValue() for the environment mapping each
+     *         variableOrder[i] to columns[i][row]
+     * @throws IllegalArgumentException if variableOrder has duplicates or misses a variable
+     *         of this expression
+     */
+    public default BatchEvaluator batch(String... variableOrder) {
+        return BatchEvaluator.of(this, variableOrder);
+    }
+    
+    /**
+     * Substitute the variables whose values do not change once, for repeated
+     * simplification as the values of the other variables change.
+     * @param fixed mapping from variables to the numerical values they have in every
+     *         environment this expression will be simplified in
+     * @return handle whose simplify(environment) equals simplify(e), where e maps each
+     *         variable as fixed or environment does, and reuses the work of its last call
+     *         for subexpressions that depend on no variable whose value changed
+     */
+    public default PartialSimplifier specialize(Map<String, Double> fixed) {
+        return new PartialSimplifier(this, fixed);
+    }
+    
     /**
      * @return true if this expression has a value (only true for Number),
      * false otherwise.
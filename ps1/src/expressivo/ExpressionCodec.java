@@ -0,0 +1,473 @@
+package expressivo;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact binary encoding of expressions, which decodes to an expression
+ * equal to the one encoded, with every number bit-for-bit the same, and with
+ * the same Plus, Times, Sum and Product nodes. Decoded nodes are built with the
+ * factory methods of Expression, which intern each kind of node separately, so
+ * a Sum decodes to a Sum even while an equal chain of Plus nodes is live.
+ *
+ * <p>The encoding is, in big-endian order:
+ * <pre>
+ *   VERSION                      one byte, 1
+ *   n, name[0], ..., name[n-1]   table of variable names, each a varint byte
+ *                                length and UTF-8 bytes
+ *   node                         the expression, in prefix order:
+ *     NUMBER value               an IEEE 754 double, 8 bytes
+ *     VARIABLE i                 a varint index into the name table
+ *     PLUS left right, TIMES left right
+ *     SUM k operand*k, PRODUCT k operand*k      k >= 2 a varint
+ *     REF j                      the j-th PLUS, TIMES, SUM or PRODUCT node, counting
+ *                                from 0 in prefix order, which has already been decoded
+ * </pre>
+ * Varints are unsigned LEB128: 7 bits per byte, least significant first, with the
+ * high bit set on every byte but the last.
+ *
+ * <p>A node that occurs more than once in an expression, as the Expression factory
+ * methods and differentiation share subexpressions, is encoded once and then
+ * referred to by REF, so the encoding is proportional to the number of distinct
+ * node instances rather than the size of the tree. Encoding and decoding use an
+ * explicit stack, so they handle expressions of any depth.
+ *
+ * <p>Every name, name byte and operand takes at least one byte, so a decoded count
+ * or length greater than the bytes left in a buffer is rejected before anything
+ * is allocated for it. The length of a DataInput is not known, so arrays for it
+ * are grown as their contents are actually read.
+ */
+public final class ExpressionCodec {
+
+    private static final byte VERSION = 1;
+
+    private static final byte NUMBER = 0;
+    private static final byte VARIABLE = 1;
+    private static final byte PLUS = 2;
+    private static final byte TIMES = 3;
+    private static final byte SUM = 4;
+    private static final byte PRODUCT = 5;
+    private static final byte REF = 6;
+
+    // largest array allocated ahead of reading its contents from a DataInput
+    private static final int MAX_INITIAL_CAPACITY = 1 << 12;
+
+    private ExpressionCodec() {
+        throw new AssertionError("noninstantiable");
+    }
+
+    /**
+     * @param expression expression to encode
+     * @return the encoding of expression
+     */
+    public static byte[] encode(Expression expression) {
+        final ArraySink sink = new ArraySink();
+        try {
+            write(expression, sink);
+        } catch (IOException ioe) {
+            throw new AssertionError("writing to an array cannot fail", ioe);
+        }
+        return Arrays.copyOf(sink.bytes, sink.size);
+    }
+
+    /**
+     * Encode an expression into a buffer, starting at its position and advancing it.
+     * @param expression expression to encode
+     * @param out buffer to write to
+     * @throws java.nio.BufferOverflowException if out has too little space remaining;
+     *         its position is then unspecified
+     */
+    public static void write(Expression expression, ByteBuffer out) {
+        try {
+            write(expression, new Sink() {
+                @Override public void writeByte(int b) { out.put((byte) b); }
+                @Override public void writeDouble(double d) { out.putDouble(d); }
+                @Override public void write(byte[] b) { out.put(b); }
+            });
+        } catch (IOException ioe) {
+            throw new AssertionError("writing to a buffer cannot fail", ioe);
+        }
+    }
+
+    /**
+     * Encode an expression to an output.
+     * @param expression expression to encode
+     * @param out output to write to
+     * @throws IOException if out throws IOException
+     */
+    public static void write(Expression expression, DataOutput out) throws IOException {
+        write(expression, new Sink() {
+            @Override public void writeByte(int b) throws IOException { out.writeByte(b); }
+            @Override public void writeDouble(double d) throws IOException { out.writeDouble(d); }
+            @Override public void write(byte[] b) throws IOException { out.write(b); }
+        });
+    }
+
+    /**
+     * @param bytes an encoding made by encode
+     * @return the expression bytes encodes
+     * @throws IllegalArgumentException if bytes is not exactly one valid encoding
+     */
+    public static Expression decode(byte[] bytes) {
+        final ByteBuffer in = ByteBuffer.wrap(bytes);
+        final Expression expression = read(in);
+        if (in.hasRemaining()) {
+            throw new IllegalArgumentException(in.remaining() + " bytes after the encoded expression");
+        }
+        return expression;
+    }
+
+    /**
+     * Decode an expression from a buffer, starting at its position and advancing it
+     * past the encoding.
+     * @param in buffer to read from
+     * @return the expression encoded at in's position
+     * @throws IllegalArgumentException if in does not start with a valid encoding; its
+     *         position is then unspecified
+     */
+    public static Expression read(ByteBuffer in) {
+        try {
+            return read(new Source() {
+                @Override public byte readByte() { return in.get(); }
+                @Override public double readDouble() { return in.getDouble(); }
+                @Override public void readFully(byte[] b) { in.get(b); }
+                @Override public long remaining() { return in.remaining(); }
+            });
+        } catch (BufferUnderflowException bue) {
+            throw new IllegalArgumentException("encoding is truncated", bue);
+        } catch (IOException ioe) {
+            throw new AssertionError("reading from a buffer cannot fail", ioe);
+        }
+    }
+
+    /**
+     * Decode an expression from an input, reading exactly its encoding.
+     * @param in input to read from
+     * @return the expression encoded at the start of in
+     * @throws IOException if in throws IOException, in particular EOFException if the
+     *         encoding is truncated
+     * @throws IllegalArgumentException if in does not start with a valid encoding
+     */
+    public static Expression read(DataInput in) throws IOException {
+        return read(new Source() {
+            @Override public byte readByte() throws IOException { return in.readByte(); }
+            @Override public double readDouble() throws IOException { return in.readDouble(); }
+            @Override public void readFully(byte[] b) throws IOException { in.readFully(b); }
+            @Override public long remaining() { return Long.MAX_VALUE; }
+        });
+    }
+
+    private static void write(Expression root, Sink out) throws IOException {
+        final Map<String, Integer> variables = variables(root);
+        out.writeByte(VERSION);
+        writeVarint(out, variables.size());
+        for (String name : variables.keySet()) {
+            final byte[] utf8 = name.getBytes(StandardCharsets.UTF_8);
+            writeVarint(out, utf8.length);
+            out.write(utf8);
+        }
+
+        final Map<Expression, Integer> written = new IdentityHashMap<>();
+        final Deque<Expression> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            final Expression node = pending.pop();
+            final int arity = Traversal.arity(node);
+            if (arity == 0) {
+                if (node instanceof Variable) {
+                    out.writeByte(VARIABLE);
+                    writeVarint(out, variables.get(((Variable) node).name()));
+                } else {
+                    out.writeByte(NUMBER);
+                    out.writeDouble(node.getValue());
+                }
+                continue;
+            }
+            final Integer index = written.get(node);
+            if (index != null) {
+                out.writeByte(REF);
+                writeVarint(out, index);
+                continue;
+            }
+            written.put(node, written.size());
+            if (node instanceof Plus || node instanceof Times) {
+                out.writeByte(node instanceof Plus ? PLUS : TIMES);
+            } else {
+                out.writeByte(node instanceof Sum ? SUM : PRODUCT);
+                writeVarint(out, arity);
+            }
+            for (int i = arity - 1; i >= 0; i--) {
+                pending.push(Traversal.operand(node, i));
+            }
+        }
+    }
+
+    /*
+     * The variables of root, in the order they are first met, each mapped to its index.
+     */
+    private static Map<String, Integer> variables(Expression root) {
+        final Map<String, Integer> variables = new LinkedHashMap<>();
+        final Map<Expression, Boolean> visited = new IdentityHashMap<>();
+        final Deque<Expression> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            final Expression node = pending.pop();
+            if (node instanceof Variable) {
+                variables.putIfAbsent(((Variable) node).name(), variables.size());
+            }
+            if (visited.put(node, Boolean.TRUE) == null) {
+                for (int i = Traversal.arity(node) - 1; i >= 0; i--) {
+                    pending.push(Traversal.operand(node, i));
+                }
+            }
+        }
+        return variables;
+    }
+
+    private static Expression read(Source in) throws IOException {
+        final byte version = in.readByte();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("unsupported version " + version);
+        }
+        final int nameCount = readLength(in);
+        final List<String> names = new ArrayList<>(Math.min(nameCount, MAX_INITIAL_CAPACITY));
+        for (int i = 0; i < nameCount; i++) {
+            final String name = new String(readBytes(in, readLength(in)), StandardCharsets.UTF_8);
+            if (!isVariableName(name)) {
+                throw new IllegalArgumentException("invalid variable name " + name);
+            }
+            names.add(name);
+        }
+
+        final List<Expression> nodes = new ArrayList<>();
+        final Deque<Frame> pending = new ArrayDeque<>();
+        while (true) {
+            final byte opcode = in.readByte();
+            Expression value;
+            switch (opcode) {
+            case NUMBER:
+                final double number = in.readDouble();
+                if (!(number >= 0)) {
+                    throw new IllegalArgumentException("invalid number " + number);
+                }
+                value = Expression.number(number);
+                break;
+            case VARIABLE:
+                value = Expression.variable(names.get(readIndex(in, names.size())));
+                break;
+            case REF:
+                value = nodes.get(readIndex(in, nodes.size()));
+                if (value == null) {
+                    throw new IllegalArgumentException("reference to a node that is not decoded yet");
+                }
+                break;
+            case PLUS:
+            case TIMES:
+                pending.push(new Frame(opcode, 2, nodes.size()));
+                nodes.add(null);
+                continue;
+            case SUM:
+            case PRODUCT:
+                final int arity = readLength(in);
+                if (arity < 2) {
+                    throw new IllegalArgumentException("n-ary node with " + arity + " operands");
+                }
+                pending.push(new Frame(opcode, arity, nodes.size()));
+                nodes.add(null);
+                continue;
+            default:
+                throw new IllegalArgumentException("invalid opcode " + opcode);
+            }
+            // give value to its parent, completing every ancestor whose last operand it is
+            while (true) {
+                final Frame parent = pending.peek();
+                if (parent == null) {
+                    return value;
+                }
+                parent.add(value);
+                if (parent.count < parent.arity) {
+                    break;
+                }
+                pending.pop();
+                value = parent.build();
+                nodes.set(parent.index, value);
+            }
+        }
+    }
+
+    // the grammar's variables are [a-zA-Z]+
+    private static boolean isVariableName(String name) {
+        if (name.isEmpty()) {
+            return false;
+        }
+        for (char c : name.toCharArray()) {
+            if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void writeVarint(Sink out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarint(Source in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            final byte b = in.readByte();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("varint longer than 5 bytes");
+    }
+
+    /*
+     * Read a count or length of items that each take at least one more byte.
+     */
+    private static int readLength(Source in) throws IOException {
+        final int length = readVarint(in);
+        if (length < 0 || length > in.remaining()) {
+            throw new IllegalArgumentException("invalid length " + (length & 0xFFFFFFFFL)
+                    + (length < 0 ? "" : " with only " + in.remaining() + " bytes left"));
+        }
+        return length;
+    }
+
+    /*
+     * Read length bytes, allocating no more than have been read plus MAX_INITIAL_CAPACITY.
+     */
+    private static byte[] readBytes(Source in, int length) throws IOException {
+        byte[] bytes = new byte[Math.min(length, MAX_INITIAL_CAPACITY)];
+        in.readFully(bytes);
+        while (bytes.length < length) {
+            final int read = bytes.length;
+            bytes = Arrays.copyOf(bytes, (int) Math.min(length, 2L * read));
+            final byte[] chunk = new byte[bytes.length - read];
+            in.readFully(chunk);
+            System.arraycopy(chunk, 0, bytes, read, chunk.length);
+        }
+        return bytes;
+    }
+
+    private static int readIndex(Source in, int size) throws IOException {
+        final int index = readVarint(in);
+        if (index < 0 || index >= size) {
+            throw new IllegalArgumentException("index " + (index & 0xFFFFFFFFL) + " out of range " + size);
+        }
+        return index;
+    }
+
+    /*
+     * Destination of the bytes of an encoding.
+     */
+    private interface Sink {
+        void writeByte(int b) throws IOException;
+        void writeDouble(double d) throws IOException;
+        void write(byte[] b) throws IOException;
+    }
+
+    /*
+     * Origin of the bytes of an encoding.
+     */
+    private interface Source {
+        byte readByte() throws IOException;
+        double readDouble() throws IOException;
+        void readFully(byte[] b) throws IOException;
+        /** @return number of bytes left, or Long.MAX_VALUE if unknown */
+        long remaining();
+    }
+
+    /*
+     * A growable byte array, in big-endian order like DataOutput.
+     */
+    private static final class ArraySink implements Sink {
+        private byte[] bytes = new byte[64];
+        private int size = 0;
+
+        @Override
+        public void writeByte(int b) {
+            ensure(1);
+            bytes[size++] = (byte) b;
+        }
+
+        @Override
+        public void writeDouble(double d) {
+            ensure(Double.BYTES);
+            final long bits = Double.doubleToRawLongBits(d);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                bytes[size++] = (byte) (bits >>> shift);
+            }
+        }
+
+        @Override
+        public void write(byte[] b) {
+            ensure(b.length);
+            System.arraycopy(b, 0, bytes, size, b.length);
+            size += b.length;
+        }
+
+        private void ensure(int more) {
+            if (size + more > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(2 * bytes.length, size + more));
+            }
+        }
+    }
+
+    /*
+     * A PLUS, TIMES, SUM or PRODUCT node whose operands are being decoded.
+     */
+    private static final class Frame {
+        private final byte opcode;
+        private final int arity;
+        private final int index;
+        private Expression[] operands;
+        private int count = 0;
+
+        Frame(byte opcode, int arity, int index) {
+            this.opcode = opcode;
+            this.arity = arity;
+            this.index = index;
+            this.operands = new Expression[Math.min(arity, MAX_INITIAL_CAPACITY)];
+        }
+
+        // operands grow as they are decoded, since arity is not checked for a DataInput
+        void add(Expression operand) {
+            if (count == operands.length) {
+                operands = Arrays.copyOf(operands, (int) Math.min(arity, 2L * count));
+            }
+            operands[count++] = operand;
+        }
+
+        Expression build() {
+            switch (opcode) {
+            case PLUS:
+                return Expression.plus(operands[0], operands[1]);
+            case TIMES:
+                return Expression.times(operands[0], operands[1]);
+            case SUM:
+                return Expression.sum(operands);
+            default:
+                return Expression.product(operands);
+            }
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package expressivo;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import expressivo.Expression.Grammar;
+import lib6005.parser.GrammarCompiler;
+import lib6005.parser.Parser;
+import lib6005.parser.UnableToParseException;
+
+/**
+ * Process-wide holder for the parser compiled from Expression.g.
+ *
+ * <p>The grammar is read from the classpath (next to this class) and compiled
+ * at most once, the first time it is needed, so parsing no longer depends on
+ * the working directory of the process. If compiling fails, every call throws
+ * IllegalStateException without trying again.
+ *
+ * <p>Expression.parse can also use a hand-written recursive-descent parser
+ * for the same grammar; see Backend.
+ */
+public final class ExpressionParser {
+
+    /** Name of the grammar resource, relative to this class. */
+    static final String GRAMMAR_RESOURCE = "Expression.g";
+
+    /** System property naming the Backend used by Expression.parse(String). */
+    public static final String BACKEND_PROPERTY = "expressivo.parser";
+
+    /**
+     * Implementations of Expression.parse. Both accept the same language and
+     * produce structurally-equal ASTs.
+     */
+    public enum Backend {
+        /** lib6005 parser compiled from Expression.g, followed by Expression.buildAST */
+        GRAMMAR,
+        /** single-pass hand-written parser that builds the AST directly */
+        RECURSIVE_DESCENT;
+
+        /**
+         * @param name name of a backend, in any case
+         * @return the backend with that name
+         * @throws IllegalArgumentException if no backend has that name; the message
+         *         names the system property expressivo.parser and the backends
+         */
+        public static Backend named(String name) {
+            for (Backend backend : values()) {
+                if (backend.name().equalsIgnoreCase(name.trim())) {
+                    return backend;
+                }
+            }
+            throw new IllegalArgumentException("unknown parser backend " + name + " in system property "
+                    + BACKEND_PROPERTY + "; expected one of " + Arrays.toString(values()));
+        }
+    }
+
+    private static final Backend DEFAULT_BACKEND = propertyBackend();
+
+    private static final Object LOCK = new Object();
+    private static volatile Parser<Grammar> parser;
+    private static volatile RuntimeException failure;
+    // Rep invariant:
+    //   at most one of parser and failure is non-null, and once set neither changes
+    // Thread safety argument:
+    //   parser and failure are written only while holding LOCK, so the grammar is
+    //   compiled at most once; both are volatile, so a thread that reads either
+    //   non-null sees it fully built. The compiled Parser is never mutated.
+
+    private ExpressionParser() {
+        throw new AssertionError("noninstantiable");
+    }
+
+    /**
+     * @return the shared parser for the Expression grammar, compiling it on first use
+     * @throws IllegalStateException if the grammar cannot be found or compiled
+     */
+    public static Parser<Grammar> parser() {
+        final Parser<Grammar> compiled = parser;
+        if (compiled != null) {
+            return compiled;
+        }
+        synchronized (LOCK) {
+            if (parser == null && failure == null) {
+                try {
+                    parser = compile();
+                } catch (RuntimeException e) {
+                    failure = e;
+                }
+            }
+            if (failure != null) {
+                // a new exception each time, so the stack trace is the caller's
+                throw new IllegalStateException(failure.getMessage(), failure);
+            }
+            return parser;
+        }
+    }
+
+    /**
+     * @return backend used by Expression.parse(String), as named in any case by the
+     *         system property expressivo.parser when the class is loaded (GRAMMAR by
+     *         default, or if the property names no backend, which is reported on
+     *         standard error)
+     */
+    public static Backend defaultBackend() {
+        return DEFAULT_BACKEND;
+    }
+
+    // never throws, since it runs while initializing the class
+    private static Backend propertyBackend() {
+        final String name = System.getProperty(BACKEND_PROPERTY);
+        if (name == null) {
+            return Backend.GRAMMAR;
+        }
+        try {
+            return Backend.named(name);
+        } catch (IllegalArgumentException iae) {
+            System.err.println(iae.getMessage() + "; using " + Backend.GRAMMAR);
+            return Backend.GRAMMAR;
+        }
+    }
+
+    /**
+     * Prepare the default backend now rather than on the first call to
+     * Expression.parse: compile the grammar if the default backend is GRAMMAR.
+     * Intended to be called once at startup so that the first parse is not slow.
+     * @throws IllegalStateException if the default backend is GRAMMAR and the grammar
+     *         cannot be found or compiled
+     */
+    public static void warmUp() {
+        if (DEFAULT_BACKEND == Backend.GRAMMAR) {
+            parser();
+        }
+    }
+
+    /**
+     * Read and compile the grammar from the classpath, bypassing the shared instance.
+     * @return a newly compiled parser for the Expression grammar
+     * @throws IllegalStateException if the grammar cannot be found or compiled
+     */
+    static Parser<Grammar> compile() {
+        final long start = Metrics.start(Metrics.Phase.GRAMMAR_COMPILE);
+        try {
+            final Parser<Grammar> parser = GrammarCompiler.compile(readGrammar(), Grammar.ROOT);
+            Metrics.stop(Metrics.Phase.GRAMMAR_COMPILE, start);
+            return parser;
+        } catch (UnableToParseException utpe) {
+            throw new IllegalStateException("grammar " + GRAMMAR_RESOURCE + " is invalid", utpe);
+        }
+    }
+
+    private static String readGrammar() {
+        try (InputStream in = ExpressionParser.class.getResourceAsStream(GRAMMAR_RESOURCE)) {
+            if (in == null) {
+                throw new IllegalStateException("grammar " + GRAMMAR_RESOURCE + " not found on classpath");
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package expressivo;
+
+import java.util.Locale;
+
+/**
+ * Fast formatting of numbers with four digits after the decimal point, with
+ * the same result as String.format(Locale.ROOT, "%.4f", value).
+ *
+ * <p>String.format parses its format string and goes through BigDecimal-like
+ * digit arithmetic on every call; here a nonnegative value below FAST_LIMIT is
+ * scaled by 10^4, rounded, and appended as two integers. Formatter rounds the
+ * shortest decimal representation of the value (as printed by Double.toString)
+ * half up, not the exact binary value, so the two can only disagree when the
+ * scaled value is within TIE_WINDOW of a tie. Exact ties, such as multiples of
+ * 1/64, round up; other values near a tie, and the rest (large, negative,
+ * infinite or NaN), are formatted by String.format.
+ */
+final class FixedPoint {
+
+    /** Number of digits after the decimal point. */
+    static final int PLACES = 4;
+
+    private static final double SCALE = 1e4;
+    // below 1e8, an ulp of the value and the error of scaling it are each
+    // less than 2e-4 after scaling, well inside TIE_WINDOW
+    private static final double FAST_LIMIT = 1e8;
+    private static final double TIE_WINDOW = 1e-3;
+
+    private FixedPoint() {
+        throw new AssertionError("noninstantiable");
+    }
+
+    /**
+     * @param value any number
+     * @return value formatted as by String.format(Locale.ROOT, "%.4f", value)
+     */
+    static String format(double value) {
+        return append(new StringBuilder(16), value).toString();
+    }
+
+    /**
+     * Append a number formatted as by String.format(Locale.ROOT, "%.4f", value).
+     * @param out builder to append to
+     * @param value any number
+     * @return out
+     */
+    static StringBuilder append(StringBuilder out, double value) {
+        // the sign bit test excludes -0.0, which is formatted "-0.0000"
+        if (!(value < FAST_LIMIT) || Double.doubleToRawLongBits(value) < 0) {
+            return out.append(String.format(Locale.ROOT, "%.4f", value));
+        }
+        final double scaled = value * SCALE;
+        final double floor = Math.floor(scaled);
+        final double fraction = scaled - floor;
+        final boolean roundUp;
+        if (fraction == 0.5 && Math.fma(value, SCALE, -scaled) == 0) {
+            // value is exactly a tie, so it is its own shortest representation
+            roundUp = true;
+        } else if (Math.abs(fraction - 0.5) < TIE_WINDOW) {
+            return out.append(String.format(Locale.ROOT, "%.4f", value));
+        } else {
+            roundUp = fraction > 0.5;
+        }
+        final long units = (long) floor + (roundUp ? 1 : 0);
+        final long integer = units / 10000;
+        final int decimals = (int) (units % 10000);
+        out.append(integer).append('.');
+        if (decimals < 1000) {
+            out.append('0');
+            if (decimals < 100) {
+                out.append('0');
+                if (decimals < 10) {
+                    out.append('0');
+                }
+            }
+        }
+        return out.append(decimals);
+    }
+}
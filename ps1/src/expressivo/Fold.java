@@ -0,0 +1,74 @@
+package expressivo;
+
+import java.util.List;
+
+/**
+ * A bottom-up computation over an Expression, as performed by Traversal.fold:
+ * the result for a Plus, Times, Sum or Product node is computed from the node
+ * itself and the results already computed for its operands.
+ *
+ * @param <R> type of the result computed for each node
+ */
+interface Fold<R> {
+
+    /**
+     * @param node a number leaf
+     * @return result for node
+     */
+    R number(Number node);
+
+    /**
+     * @param node a variable leaf
+     * @return result for node
+     */
+    R variable(Variable node);
+
+    /**
+     * @param node a sum
+     * @param left result for node.left()
+     * @param right result for node.right()
+     * @return result for node
+     */
+    R plus(Plus node, R left, R right);
+
+    /**
+     * @param node a product
+     * @param left result for node.left()
+     * @param right result for node.right()
+     * @return result for node
+     */
+    R times(Times node, R left, R right);
+
+    /**
+     * @param node an n-ary sum
+     * @param operands results for node's operands, left to right
+     * @return result for node
+     */
+    R sum(Sum node, List<R> operands);
+
+    /**
+     * @param node an n-ary product
+     * @param operands results for node's operands, left to right
+     * @return result for node
+     */
+    R product(Product node, List<R> operands);
+
+    /**
+     * Look up a result computed before, by this fold or an earlier one, so that
+     * the traversal can skip node's operands. Not called for leaves.
+     * @param node a Plus, Times, Sum or Product about to be visited
+     * @return the result for node, or null to compute it from its operands
+     */
+    default R cached(Expression node) {
+        return null;
+    }
+
+    /**
+     * Called with each result computed for a Plus, Times, Sum or Product node,
+     * for folds that keep results beyond one traversal.
+     * @param node the node
+     * @param result the result computed for node
+     */
+    default void computed(Expression node, R result) {
+    }
+}
@@ -0,0 +1,212 @@
+package expressivo;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process-wide hash-consing table for Expression nodes.
+ *
+ * <p>The factory methods of Expression pass every new node through intern(),
+ * so structurally-equal nodes built through them share one instance. The
+ * table holds its nodes weakly: a node that is no longer used anywhere else
+ * can be garbage collected, and its entry is then removed.
+ *
+ * <p>Nodes are matched by representation, not just by Expression.equals: a
+ * Sum is structurally equal to its left-nested chain of Plus nodes, but each
+ * factory method must return its own kind of node, so the two are interned
+ * separately, and likewise a Product and its chain of Times nodes.
+ */
+final class Interner {
+
+    private static final ConcurrentHashMap<Object, Entry> TABLE = new ConcurrentHashMap<>();
+    private static final ReferenceQueue<Expression> CLEARED = new ReferenceQueue<>();
+    private static volatile boolean enabled =
+            Boolean.parseBoolean(System.getProperty("expressivo.intern", "true"));
+    // Rep invariant:
+    //    every key of TABLE is an Entry mapped to itself
+    //    no two entries in TABLE have live referents of the same representation
+    // Abstraction Function:
+    //   represents the set of canonical nodes: the live referents of the entries of TABLE
+    // Thread safety argument:
+    //   TABLE is a ConcurrentHashMap and is only updated with atomic putIfAbsent and
+    //   remove(key, value); two threads interning equal nodes at the same time both
+    //   get the single entry that won putIfAbsent.
+
+    private Interner() {
+        throw new AssertionError("noninstantiable");
+    }
+
+    /**
+     * Find the canonical node structurally equal to a given node.
+     * @param node node to intern
+     * @return the canonical node equal to node, which is node itself if there was
+     *         none; node if interning is disabled
+     */
+    @SuppressWarnings("unchecked")
+    static <T extends Expression> T intern(T node) {
+        if (!enabled) {
+            return node;
+        }
+        expungeClearedEntries();
+
+        final Entry found = TABLE.get(new Probe(node));
+        if (found != null) {
+            final Expression canonical = found.get();
+            if (canonical != null) {
+                return (T) canonical;
+            }
+        }
+        final Entry entry = new Entry(node);
+        while (true) {
+            final Entry existing = TABLE.putIfAbsent(entry, entry);
+            if (existing == null) {
+                return node;
+            }
+            final Expression canonical = existing.get();
+            if (canonical != null) {
+                return (T) canonical;
+            }
+            // cleared but not yet expunged
+            TABLE.remove(existing, existing);
+        }
+    }
+
+    /**
+     * @return number of nodes in the table, including ones that have just been
+     *         collected but not yet removed
+     */
+    static int size() {
+        expungeClearedEntries();
+        return TABLE.size();
+    }
+
+    /**
+     * Turn interning on or off for the whole process. Nodes interned while it was
+     * on stay canonical; nodes created while it is off are not added to the table.
+     * @param on true to intern new nodes
+     */
+    static void setEnabled(boolean on) {
+        enabled = on;
+    }
+
+    /**
+     * @return true iff new nodes are being interned; initially the value of the
+     *         system property expressivo.intern, true by default
+     */
+    static boolean isEnabled() {
+        return enabled;
+    }
+
+    /*
+     * @return a hash of node that agrees with sameRepresentation
+     */
+    private static int hash(Expression node) {
+        return 31 * node.hashCode() + node.getClass().getName().hashCode();
+    }
+
+    /*
+     * @return true iff first and second are structurally equal and made of the
+     *         same classes of nodes in the same places
+     */
+    private static boolean sameRepresentation(Expression first, Expression second) {
+        final Deque<Expression> pending = new ArrayDeque<>();
+        pending.push(first);
+        pending.push(second);
+        while (!pending.isEmpty()) {
+            final Expression b = pending.pop();
+            final Expression a = pending.pop();
+            if (a == b) {
+                continue;
+            }
+            if (a.getClass() != b.getClass()) {
+                return false;
+            }
+            final int arity = Traversal.arity(a);
+            if (arity == 0) {
+                if (!a.equals(b)) {
+                    return false;
+                }
+                continue;
+            }
+            if (arity != Traversal.arity(b) || a.hashCode() != b.hashCode()) {
+                return false;
+            }
+            for (int i = 0; i < arity; i++) {
+                pending.push(Traversal.operand(a, i));
+                pending.push(Traversal.operand(b, i));
+            }
+        }
+        return true;
+    }
+
+    private static void expungeClearedEntries() {
+        Reference<? extends Expression> cleared;
+        while ((cleared = CLEARED.poll()) != null) {
+            TABLE.remove(cleared, cleared);
+        }
+    }
+
+    /*
+     * Weak reference to a canonical node. Equal to itself, and to any other
+     * Entry or Probe whose node has the same representation as its (live) node.
+     */
+    private static final class Entry extends WeakReference<Expression> {
+        private final int hash;
+
+        Entry(Expression node) {
+            super(node, CLEARED);
+            this.hash = hash(node);
+        }
+
+        @Override
+        public boolean equals(Object that) {
+            if (this == that) {
+                return true;
+            }
+            final Expression node = get();
+            if (node == null) {
+                return false;
+            }
+            if (that instanceof Entry) {
+                final Expression thatNode = ((Entry) that).get();
+                return thatNode != null && sameRepresentation(node, thatNode);
+            }
+            return false;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /*
+     * Strong, short-lived lookup key for a node, so that a lookup that hits
+     * does not create a WeakReference.
+     */
+    private static final class Probe {
+        private final Expression node;
+
+        Probe(Expression node) {
+            this.node = node;
+        }
+
+        @Override
+        public boolean equals(Object that) {
+            if (that instanceof Entry) {
+                final Expression thatNode = ((Entry) that).get();
+                return thatNode != null && sameRepresentation(node, thatNode);
+            }
+            return false;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash(node);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package expressivo;
+
+import java.util.Optional;
+
+/**
+ * Chooses the ColumnKernels implementation used by batch evaluation.
+ *
+ * <p>VectorKernels, which uses the incubating Vector API, is compiled from a
+ * separate source root (vector/) with --add-modules jdk.incubator.vector and
+ * loaded reflectively, so the rest of the code does not depend on the module.
+ * It is used when the JVM was started with --add-modules jdk.incubator.vector
+ * and the CPU has SIMD lanes for doubles; otherwise the scalar loops are used.
+ * Set the system property expressivo.kernels to "scalar" or "vector" to choose
+ * explicitly.
+ */
+final class Kernels {
+
+    /** Name of the system property that selects the kernels. */
+    static final String KERNELS_PROPERTY = "expressivo.kernels";
+
+    private static final String VECTOR_KERNELS = "expressivo.VectorKernels";
+
+    private Kernels() {
+        throw new AssertionError("noninstantiable");
+    }
+
+    /*
+     * Holder idiom: the choice is made, and VectorKernels loaded, on first use.
+     */
+    private static final class Holder {
+        static final ColumnKernels PREFERRED = choose(System.getProperty(KERNELS_PROPERTY, "vector"));
+    }
+
+    /**
+     * @return the kernels batch evaluators use: VectorKernels if it is available
+     *         and not disabled by the expressivo.kernels property, else ScalarKernels
+     */
+    static ColumnKernels preferred() {
+        return Holder.PREFERRED;
+    }
+
+    /**
+     * @return the Vector API kernels, or empty if jdk.incubator.vector is not
+     *         available in this JVM or has no SIMD lanes for doubles
+     */
+    static Optional<ColumnKernels> vector() {
+        try {
+            return Optional.of((ColumnKernels) Class.forName(VECTOR_KERNELS)
+                    .getDeclaredConstructor().newInstance());
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return Optional.empty();
+        }
+    }
+
+    private static ColumnKernels choose(String kernels) {
+        if (kernels.equals("scalar")) {
+            return ScalarKernels.INSTANCE;
+        }
+        return vector().orElse(ScalarKernels.INSTANCE);
+    }
+}
@@ -0,0 +1,173 @@
+package expressivo;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A thread-safe histogram of nonnegative long values, such as latencies in
+ * nanoseconds, with buckets of bounded relative width, in the manner of
+ * HdrHistogram.
+ *
+ * <p>Values below 128 have a bucket each. Above that, each power-of-2 range
+ * [2^k, 2^(k+1)) is split into 64 equal buckets, so a value is known to within
+ * 1/64 (about 1.6%) of itself, over the whole range of long, in a fixed array
+ * of a few thousand counters. Recording a value is a few shifts and an atomic
+ * increment, with no allocation.
+ */
+final class LatencyHistogram {
+
+    // values below LINEAR_LIMIT have a bucket each; above, each power of 2 has HALF buckets
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int LINEAR_LIMIT = 1 << SUB_BUCKET_BITS;
+    private static final int HALF = LINEAR_LIMIT / 2;
+    private static final int BUCKETS = LINEAR_LIMIT + (Long.SIZE - 1 - SUB_BUCKET_BITS) * HALF;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong max = new AtomicLong(0);
+    // Rep invariant:
+    //    counts[i] is the number of values recorded with index(value) == i
+    //    count is the sum of counts and total the sum of the values recorded,
+    //    min and max their least and greatest (Long.MAX_VALUE and 0 if none),
+    //      except transiently while a value is being recorded or the histogram reset
+    // Abstraction Function:
+    //   represents the multiset of values recorded since construction or the
+    //   last reset, each known exactly in count, total, min and max and to
+    //   within its bucket [lowest(i), highest(i)] otherwise
+    // Thread safety argument:
+    //   every field is final and an atomic or adder; readers may see a value
+    //   recorded in some fields but not yet in others
+
+    /**
+     * Make an empty histogram.
+     */
+    LatencyHistogram() {
+    }
+
+    /**
+     * Record a value.
+     * @param value value to record; a negative value is recorded as 0
+     */
+    void record(long value) {
+        final long clamped = Math.max(value, 0);
+        counts.incrementAndGet(index(clamped));
+        count.increment();
+        total.add(clamped);
+        if (clamped < min.get()) {
+            min.accumulateAndGet(clamped, Math::min);
+        }
+        if (clamped > max.get()) {
+            max.accumulateAndGet(clamped, Math::max);
+        }
+    }
+
+    /**
+     * @return number of values recorded
+     */
+    long count() {
+        return count.sum();
+    }
+
+    /**
+     * @return least value recorded, or 0 if none
+     */
+    long min() {
+        final long least = min.get();
+        return least == Long.MAX_VALUE ? 0 : least;
+    }
+
+    /**
+     * @return greatest value recorded, or 0 if none
+     */
+    long max() {
+        return max.get();
+    }
+
+    /**
+     * @return mean of the values recorded, or 0 if none
+     */
+    double mean() {
+        final long n = count.sum();
+        return n == 0 ? 0 : (double) total.sum() / n;
+    }
+
+    /**
+     * @param percentile 0 <= percentile <= 100
+     * @return a value v no greater than max() such that at least percentile% of
+     *         the values recorded are in buckets up to v's, and v is within 1/64
+     *         of the least such recorded value; 0 if none recorded
+     * @throws IllegalArgumentException if percentile is not in [0, 100]
+     */
+    long percentile(double percentile) {
+        if (!(percentile >= 0 && percentile <= 100)) {
+            throw new IllegalArgumentException("percentile out of range: " + percentile);
+        }
+        final long[] snapshot = new long[BUCKETS];
+        long n = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            n += snapshot[i];
+        }
+        if (n == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(highest(i), max());
+            }
+        }
+        return max();
+    }
+
+    /**
+     * Remove every value recorded.
+     */
+    void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.reset();
+        total.reset();
+        min.set(Long.MAX_VALUE);
+        max.set(0);
+    }
+
+    /**
+     * @param value a nonnegative value
+     * @return index of the bucket holding value
+     */
+    static int index(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        // shift leaves the SUB_BUCKET_BITS - 1 bits below value's highest bit
+        final int shift = Long.SIZE - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return LINEAR_LIMIT + (shift - 1) * HALF + (int) (value >>> shift) - HALF;
+    }
+
+    /**
+     * @param index 0 <= index < number of buckets
+     * @return least value in the bucket at index
+     */
+    static long lowest(int index) {
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+        final int shift = (index - LINEAR_LIMIT) / HALF + 1;
+        return (long) ((index - LINEAR_LIMIT) % HALF + HALF) << shift;
+    }
+
+    /**
+     * @param index 0 <= index < number of buckets
+     * @return greatest value in the bucket at index
+     */
+    static long highest(int index) {
+        return index == BUCKETS - 1 ? Long.MAX_VALUE : lowest(index + 1) - 1;
+    }
+}
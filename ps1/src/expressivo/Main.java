@@ -3,12 +3,8 @@ package expressivo;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Optional;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * Console interface to the expression system.
@@ -21,83 +17,202 @@ public class Main {
     /**
      * Read expression and command inputs from the console and output results.
      * An empty input terminates the program.
-     * @param args unused
+     * 
+     * <p>With arguments "--batch [file]", run non-interactively instead: execute
+     * every line of file (standard input if omitted or "-") as a command, with no
+     * prompts, writing one line of output per command to standard output.
+     * Empty lines are skipped, and the end of the input terminates the program.
+     * With arguments "--pipeline threads [file]", do the same, executing the
+     * commands that follow different expressions on up to threads threads at once;
+     * the output is the same. Any other arguments, or a number of threads that is
+     * not a positive integer, print a usage message on standard error and exit with
+     * status 2.
+     * 
+     * <p>The metrics of Metrics are dumped by the command "!metrics", which can also
+     * turn them on or off ("!metrics on", "!metrics off") or reset them ("!metrics
+     * reset"). Its output is several lines. They are available through JMX in every
+     * mode once metrics are on at startup (system property expressivo.metrics) or a
+     * !metrics command has been executed; if the MBeans cannot be registered, that
+     * is reported on standard error and the program carries on.
+     * @param args empty, "--batch" optionally followed by a file name, or "--pipeline"
+     *         followed by a number of threads and optionally a file name
      * @throws IOException if there is an error reading the input
      */
     public static void main(String[] args) throws IOException {
+        if (Metrics.isEnabled()) {
+            registerMetricsMBeans();
+        }
+        if (args.length > 0 && args[0].equals(BATCH_OPTION)) {
+            if (args.length > 2) {
+                usage();
+                return;
+            }
+            warmUp();
+            CommandFile.run(args.length > 1 ? args[1] : "-", System.out);
+            return;
+        } else if (args.length > 0 && args[0].equals(PIPELINE_OPTION)) {
+            final int threads = args.length > 1 && args.length <= 3 ? parseThreads(args[1]) : 0;
+            if (threads <= 0) {
+                usage();
+                return;
+            }
+            warmUp();
+            CommandFile.run(args.length > 2 ? args[2] : "-", System.out, threads);
+            return;
+        } else if (args.length > 0) {
+            usage();
+            return;
+        }
         final BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
-        Optional<String> currentExpression = Optional.empty();
+        warmUp();
+        final Session session = new Session();
         
         while (true) {
             System.out.print("> ");
             final String input = in.readLine();
             
-            if (input.isEmpty()) {
+            if (input == null || input.isEmpty()) {
                 return; // exits the program
             }
             
+            System.out.println(session.execute(input));
+        }
+    }
+    
+    private static final String BATCH_OPTION = "--batch";
+    private static final String PIPELINE_OPTION = "--pipeline";
+    
+    // the number of threads given to --pipeline, or 0 if it is not an integer
+    private static int parseThreads(String threads) {
+        try {
+            return Integer.parseInt(threads);
+        } catch (NumberFormatException nfe) {
+            return 0;
+        }
+    }
+    
+    private static void usage() {
+        System.err.println("usage: Main [" + BATCH_OPTION + " [file] | " + PIPELINE_OPTION + " threads [file]]"
+                + "\n  threads is a positive integer; file is standard input if omitted or \"-\"");
+        System.exit(2);
+    }
+    
+    /*
+     * Prepare the parser, or report on standard error why it could not be; each
+     * command that parses an expression then reports the failure itself.
+     */
+    private static void warmUp() {
+        try {
+            ExpressionParser.warmUp();
+        } catch (IllegalStateException ise) {
+            System.err.println("parser is not available: " + ise.getMessage());
+        }
+    }
+    
+    /*
+     * Register the MBeans of Metrics, or report on standard error why they could
+     * not be; metrics still work through !metrics without them.
+     */
+    private static void registerMetricsMBeans() {
+        try {
+            Metrics.registerMBeans();
+        } catch (IllegalStateException | SecurityException e) {
+            System.err.println("metrics are not available through JMX: " + e.getMessage());
+        }
+    }
+ 
+    /**
+     * The state of a sequence of commands: the current expression, set by
+     * entering an expression and by differentiating, and used by the commands.
+     * Not thread-safe.
+     */
+    static final class Session {
+        
+        private Optional<String> currentExpression = Optional.empty();
+        private final Environment environment = new Environment();
+        // Abstraction Function:
+        //   represents a session whose current expression is currentExpression, if any;
+        //   environment is reused by every !simplify command, since Commands.simplify
+        //   does not keep it
+        
+        /**
+         * @return the current expression, if any
+         */
+        Optional<String> currentExpression() {
+            return currentExpression;
+        }
+        
+        /**
+         * Replace the current expression, as if the commands that set it had been
+         * executed in this session.
+         * @param expression new current expression, if any
+         */
+        void setCurrentExpression(Optional<String> expression) {
+            currentExpression = expression;
+        }
+        
+        /**
+         * Execute one command.
+         * @param input an expression, or a !d/d or !simplify command, as described in
+         *         the PS1 handout, or a !metrics command, as described in main
+         * @return the line to output for input: the expression, derivative or simplified
+         *         expression, the metrics dump (several lines), or a message describing
+         *         why input could not be executed
+         */
+        String execute(String input) {
             try {
                 final String output;
                 
-                if (input.startsWith(DIFFERENTIATE_PREFIX)) {
-                    final String variable = parseDifferentiate(input);
+                if (input.startsWith(CommandLexer.DIFFERENTIATE_PREFIX)) {
+                    final String variable = CommandLexer.parseDifferentiate(input);
                     output = Commands.differentiate(currentExpression.get(), variable);
                     currentExpression = Optional.of(output);
-                } else if (input.startsWith(SIMPLIFY_PREFIX)) {
-                    final Map<String,Double> environment = parseSimpify(input);
+                } else if (input.startsWith(CommandLexer.SIMPLIFY_PREFIX)) {
+                    CommandLexer.parseSimplify(input, environment);
                     output = Commands.simplify(currentExpression.get(), environment);
                     // ... but don't change currentExpression
+                } else if (input.startsWith(CommandLexer.METRICS_PREFIX)) {
+                    final CommandLexer.MetricsAction action = CommandLexer.parseMetrics(input);
+                    registerMetricsMBeans();
+                    switch (action) {
+                    case ENABLE:
+                        Metrics.setEnabled(true);
+                        break;
+                    case DISABLE:
+                        Metrics.setEnabled(false);
+                        break;
+                    case RESET:
+                        Metrics.reset();
+                        break;
+                    default:
+                        break;
+                    }
+                    output = Metrics.dump();
                 } else {
-                    final Expression expression = Expression.parse(input);
+                    final Expression expression = ParseCache.shared().parse(input);
                     output = expression.toString();
                     currentExpression = Optional.of(output);
                 }
                 
-                System.out.println(output);
+                return output;
             } catch (NoSuchElementException nse) {
                 // currentExpression was empty
-                System.out.println("must enter an expression before using this command");
+                return "must enter an expression before using this command";
             } catch (RuntimeException re) {
-                System.out.println(re.getClass().getName() + ": " + re.getMessage());
+                return re.getClass().getName() + ": " + re.getMessage();
             }
         }
     }
- 
-    private static final String DIFFERENTIATE_PREFIX = "!d/d";
-    private static final String VARIABLE = "[A-Za-z]+";
-    private static final String DIFFERENTIATE = DIFFERENTIATE_PREFIX + "(" + VARIABLE + ") *";
-
-    private static String parseDifferentiate(final String input) {
-        final Matcher commandMatcher = Pattern.compile(DIFFERENTIATE).matcher(input);
-        if (!commandMatcher.matches()) {
-            throw new CommandSyntaxException("usage: !d/d must be followed by a variable name");
-        }
-
-        final String variable = commandMatcher.group(1);
-        return variable;
-    }
     
-    private static final String SIMPLIFY_PREFIX = "!simplify";
-    private static final String ASSIGNMENT = "(" + VARIABLE + ") *= *([^ ]+)";
-    private static final String SIMPLIFY = SIMPLIFY_PREFIX + "( +" + ASSIGNMENT + ")* *";    
-
-    private static Map<String,Double> parseSimpify(final String input) {
-        final Matcher commandMatcher = Pattern.compile(SIMPLIFY).matcher(input);
-        if (!commandMatcher.matches()) {
-            throw new CommandSyntaxException("usage: !simplify var1=val1 var2=val2 ...");
-        }
-        
-        final Map<String,Double> environment = new HashMap<>();
-        final Matcher argumentMatcher = Pattern.compile(ASSIGNMENT).matcher(input);
-        while (argumentMatcher.find()) {
-            final String variable = argumentMatcher.group(1);
-            final double value = Double.valueOf(argumentMatcher.group(2));
-            environment.put(variable, value);
-        }
-
-        // un-comment the following line to print the environment after each !simplify command
-        //System.out.println(environment);
-        return environment;
+    /**
+     * @param input a line of input
+     * @return true if input is a !d/d, !simplify or !metrics command, which does not
+     *         start from a new current expression; false if it is (or fails to be)
+     *         an expression
+     */
+    static boolean isCommand(String input) {
+        return input.startsWith(CommandLexer.DIFFERENTIATE_PREFIX) || input.startsWith(CommandLexer.SIMPLIFY_PREFIX)
+                || input.startsWith(CommandLexer.METRICS_PREFIX);
     }
     
     public static class CommandSyntaxException extends RuntimeException {
@@ -0,0 +1,400 @@
+package expressivo;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Opt-in, process-wide metrics of the phases of the commands: how long each
+ * takes, how many bytes it allocates and how large the trees it reads and
+ * produces are.
+ *
+ * <p>Metrics are off unless the system property expressivo.metrics is "true"
+ * or they are turned on by setEnabled, by the MetricsMXBean registered by
+ * registerMBeans, or by the !metrics on command of Main. While they are off,
+ * instrumenting a phase costs one read of a volatile boolean at its start and
+ * one comparison at its end, and no memory is allocated for them at all.
+ *
+ * <p>Instrumented code brackets a phase with start and stop:
+ * <pre>
+ *   final long start = Metrics.start(Metrics.Phase.PARSE);
+ *   ... the phase ...
+ *   Metrics.stop(Metrics.Phase.PARSE, start, null, expression);
+ * </pre>
+ * A phase's figures include those of the phases nested in it, such as
+ * BUILD_AST in PARSE. Phases that end by throwing an exception are not recorded.
+ */
+public final class Metrics {
+
+    /** Name of the system property that turns metrics on from startup if "true". */
+    public static final String ENABLED_PROPERTY = "expressivo.metrics";
+    /** JMX name of the MetricsMXBean; each phase's MBean adds a key "phase". */
+    public static final String OBJECT_NAME = "expressivo:type=Metrics";
+
+    /** Value of start when metrics are off, telling stop to record nothing. */
+    static final long NOT_STARTED = Long.MIN_VALUE;
+    /** The trees of one recording of a phase in this many are measured, starting with the first. */
+    static final int NODE_SAMPLE_INTERVAL = 16;
+
+    /**
+     * The instrumented phases of parsing and executing commands.
+     */
+    public enum Phase {
+        /** compiling Expression.g into a parser, once per process */
+        GRAMMAR_COMPILE,
+        /** Expression.parse of a string not found in the ParseCache, including BUILD_AST */
+        PARSE,
+        /** Expression.buildAST of a parse tree from the grammar parser */
+        BUILD_AST,
+        /** differentiating a parsed expression, in Commands.differentiate */
+        DIFFERENTIATE,
+        /** simplifying a parsed expression to polynomial normal form, in Commands.simplify */
+        SIMPLIFY,
+        /** printing the result of Commands.differentiate or Commands.simplify */
+        TO_STRING;
+
+        /**
+         * @return name of this phase in lower case, as used in dumps and JMX names
+         */
+        public String label() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private static volatile boolean enabled = Boolean.getBoolean(ENABLED_PROPERTY);
+
+    private Metrics() {
+        throw new AssertionError("noninstantiable");
+    }
+
+    /**
+     * @return true iff metrics are being recorded
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Start or stop recording metrics. Phases in progress when metrics are
+     * turned on are not recorded.
+     * @param enabled true to record metrics from now on, false to stop
+     */
+    public static void setEnabled(boolean enabled) {
+        Metrics.enabled = enabled;
+    }
+
+    /**
+     * Mark the start of a phase on the current thread.
+     * @param phase phase starting
+     * @return value to pass to stop at the end of the phase
+     */
+    static long start(Phase phase) {
+        if (!enabled) {
+            return NOT_STARTED;
+        }
+        return Recorder.start(phase);
+    }
+
+    /**
+     * Mark the end of a phase on the current thread, recording it if metrics
+     * were on at its start.
+     * @param phase phase ending
+     * @param start result of start(phase) at the start of the phase, on this thread
+     */
+    static void stop(Phase phase, long start) {
+        if (start != NOT_STARTED) {
+            Recorder.stop(phase, start, null, null);
+        }
+    }
+
+    /**
+     * Mark the end of a phase on the current thread, recording it and the sizes
+     * of its trees if metrics were on at its start. Measuring a tree takes time
+     * proportional to its number of nodes, so only a sample of the phase's trees
+     * are measured, one in NODE_SAMPLE_INTERVAL; they are measured after the
+     * phase's time and allocation, and do not count in them.
+     * @param phase phase ending
+     * @param start result of start(phase) at the start of the phase, on this thread
+     * @param input tree the phase read, or null if none
+     * @param output tree the phase produced, or null if none
+     */
+    static void stop(Phase phase, long start, Expression input, Expression output) {
+        if (start != NOT_STARTED) {
+            Recorder.stop(phase, start, input, output);
+        }
+    }
+
+    /**
+     * @param phase a phase
+     * @return the metrics recorded for phase
+     */
+    public static PhaseMetricsMXBean phase(Phase phase) {
+        return Recorder.STATISTICS[phase.ordinal()];
+    }
+
+    /**
+     * Discard every metric recorded so far. Phases recorded concurrently may be
+     * partly discarded.
+     */
+    public static void reset() {
+        for (PhaseStatistics statistics : Recorder.STATISTICS) {
+            statistics.reset();
+        }
+    }
+
+    /**
+     * @return the metrics recorded so far, as lines of text: whether metrics are
+     *         on, then a table of each phase's count, times in microseconds,
+     *         allocation and tree sizes, then the state of the shared caches
+     */
+    public static String dump() {
+        final StringBuilder out = new StringBuilder();
+        out.append("metrics ").append(enabled ? "enabled" : "disabled").append('\n');
+        out.append(String.format(Locale.ROOT, "%-16s %9s %10s %10s %10s %10s %10s %12s %10s %10s\n",
+                "phase", "count", "mean us", "p50 us", "p90 us", "p99 us", "max us",
+                "alloc B/op", "in nodes", "out nodes"));
+        for (Phase phase : Phase.values()) {
+            final PhaseStatistics statistics = Recorder.STATISTICS[phase.ordinal()];
+            out.append(String.format(Locale.ROOT, "%-16s %9d %10.1f %10.1f %10.1f %10.1f %10.1f %12.0f %10.1f %10.1f\n",
+                    phase.label(), statistics.getCount(), statistics.getMeanNanos() / 1e3,
+                    statistics.getMedianNanos() / 1e3, statistics.get90thPercentileNanos() / 1e3,
+                    statistics.get99thPercentileNanos() / 1e3, statistics.getMaxNanos() / 1e3,
+                    statistics.getAllocatedBytesPerOperation(), statistics.getInputNodesPerOperation(),
+                    statistics.getOutputNodesPerOperation()));
+        }
+        out.append(ParseCache.shared()).append('\n');
+        out.append(DerivativeCache.shared());
+        return out.toString();
+    }
+
+    /**
+     * Register a MetricsMXBean named OBJECT_NAME and a PhaseMetricsMXBean for
+     * each phase with the platform MBean server, unless already registered.
+     * @throws IllegalStateException if the MBeans cannot be registered
+     */
+    public static synchronized void registerMBeans() {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            register(server, new ObjectName(OBJECT_NAME), new Control());
+            for (Phase phase : Phase.values()) {
+                register(server, new ObjectName(OBJECT_NAME + ",phase=" + phase.label()), phase(phase));
+            }
+        } catch (JMException jme) {
+            throw new IllegalStateException("cannot register metrics MBeans", jme);
+        }
+    }
+
+    private static void register(MBeanServer server, ObjectName name, Object mbean) throws JMException {
+        if (!server.isRegistered(name)) {
+            server.registerMBean(mbean, name);
+        }
+    }
+
+    /*
+     * The recorded metrics, in a holder class so that they are only allocated
+     * once metrics are first turned on or read.
+     */
+    private static final class Recorder {
+
+        static final PhaseStatistics[] STATISTICS = new PhaseStatistics[Phase.values().length];
+        static {
+            for (int i = 0; i < STATISTICS.length; i++) {
+                STATISTICS[i] = new PhaseStatistics();
+            }
+        }
+
+        // the JVM's measure of allocation by thread, or null if it has none
+        @SuppressWarnings("restriction")
+        private static final com.sun.management.ThreadMXBean THREADS = allocationMeter();
+
+        // for each thread, the bytes it had allocated at the start of each phase
+        private static final ThreadLocal<long[]> ALLOCATED_AT_START =
+                ThreadLocal.withInitial(() -> new long[Phase.values().length]);
+
+        @SuppressWarnings("restriction")
+        private static com.sun.management.ThreadMXBean allocationMeter() {
+            final java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            if (threads instanceof com.sun.management.ThreadMXBean) {
+                final com.sun.management.ThreadMXBean meter = (com.sun.management.ThreadMXBean) threads;
+                if (meter.isThreadAllocatedMemorySupported() && meter.isThreadAllocatedMemoryEnabled()) {
+                    return meter;
+                }
+            }
+            return null;
+        }
+
+        @SuppressWarnings("restriction")
+        private static long allocatedBytes() {
+            return THREADS == null ? 0 : THREADS.getCurrentThreadAllocatedBytes();
+        }
+
+        static long start(Phase phase) {
+            ALLOCATED_AT_START.get()[phase.ordinal()] = allocatedBytes();
+            return System.nanoTime();
+        }
+
+        static void stop(Phase phase, long start, Expression input, Expression output) {
+            final long elapsed = System.nanoTime() - start;
+            final long allocated = allocatedBytes() - ALLOCATED_AT_START.get()[phase.ordinal()];
+            final PhaseStatistics statistics = STATISTICS[phase.ordinal()];
+            statistics.record(elapsed, THREADS == null ? -1 : allocated);
+            if ((input != null || output != null) && statistics.sampleTrees()) {
+                if (input != null) {
+                    statistics.recordInput(Traversal.size(input));
+                }
+                if (output != null) {
+                    statistics.recordOutput(Traversal.size(output));
+                }
+            }
+        }
+    }
+
+    /*
+     * The metrics of one phase.
+     */
+    private static final class PhaseStatistics implements PhaseMetricsMXBean {
+
+        private final LatencyHistogram nanos = new LatencyHistogram();
+        private final LongAdder allocatedBytes = new LongAdder();
+        private volatile boolean allocationMeasured = true;
+        private final LongAdder inputs = new LongAdder();
+        private final LongAdder inputNodes = new LongAdder();
+        private final LongAdder outputs = new LongAdder();
+        private final LongAdder outputNodes = new LongAdder();
+        private final AtomicLong withTrees = new AtomicLong();
+        // Abstraction Function:
+        //   represents the phases recorded since construction or the last reset:
+        //   their times (nanos), the bytes they allocated (allocatedBytes, unless
+        //   allocationMeasured is false), and the number of input (resp. output)
+        //   trees sampled and their total number of nodes, out of withTrees
+        //   recordings with trees
+        // Thread safety argument:
+        //   the fields are final and thread-safe, or volatile
+
+        void record(long elapsedNanos, long allocated) {
+            nanos.record(elapsedNanos);
+            if (allocated < 0) {
+                allocationMeasured = false;
+            } else {
+                allocatedBytes.add(allocated);
+            }
+        }
+
+        boolean sampleTrees() {
+            return withTrees.getAndIncrement() % NODE_SAMPLE_INTERVAL == 0;
+        }
+
+        void recordInput(long nodes) {
+            inputs.increment();
+            inputNodes.add(nodes);
+        }
+
+        void recordOutput(long nodes) {
+            outputs.increment();
+            outputNodes.add(nodes);
+        }
+
+        void reset() {
+            nanos.reset();
+            allocatedBytes.reset();
+            inputs.reset();
+            inputNodes.reset();
+            outputs.reset();
+            outputNodes.reset();
+            withTrees.set(0);
+        }
+
+        @Override
+        public long getCount() {
+            return nanos.count();
+        }
+
+        @Override
+        public double getMeanNanos() {
+            return nanos.mean();
+        }
+
+        @Override
+        public long getMinNanos() {
+            return nanos.min();
+        }
+
+        @Override
+        public long getMedianNanos() {
+            return nanos.percentile(50);
+        }
+
+        @Override
+        public long get90thPercentileNanos() {
+            return nanos.percentile(90);
+        }
+
+        @Override
+        public long get99thPercentileNanos() {
+            return nanos.percentile(99);
+        }
+
+        @Override
+        public long get999thPercentileNanos() {
+            return nanos.percentile(99.9);
+        }
+
+        @Override
+        public long getMaxNanos() {
+            return nanos.max();
+        }
+
+        @Override
+        public double getAllocatedBytesPerOperation() {
+            if (!allocationMeasured) {
+                return -1;
+            }
+            return mean(allocatedBytes.sum(), nanos.count());
+        }
+
+        @Override
+        public double getInputNodesPerOperation() {
+            return mean(inputNodes.sum(), inputs.sum());
+        }
+
+        @Override
+        public double getOutputNodesPerOperation() {
+            return mean(outputNodes.sum(), outputs.sum());
+        }
+
+        private static double mean(long total, long count) {
+            return count == 0 ? 0 : (double) total / count;
+        }
+    }
+
+    /*
+     * The MetricsMXBean, which delegates to the static methods.
+     */
+    private static final class Control implements MetricsMXBean {
+
+        @Override
+        public boolean isEnabled() {
+            return Metrics.isEnabled();
+        }
+
+        @Override
+        public void setEnabled(boolean enabled) {
+            Metrics.setEnabled(enabled);
+        }
+
+        @Override
+        public void reset() {
+            Metrics.reset();
+        }
+
+        @Override
+        public String dump() {
+            return Metrics.dump();
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package expressivo;
+
+/**
+ * Management interface of Metrics, registered by Metrics.registerMBeans under
+ * the name Metrics.OBJECT_NAME.
+ */
+public interface MetricsMXBean {
+
+    /**
+     * @return true iff metrics are being recorded
+     */
+    boolean isEnabled();
+
+    /**
+     * Start or stop recording metrics.
+     * @param enabled true to record metrics from now on, false to stop
+     */
+    void setEnabled(boolean enabled);
+
+    /**
+     * Discard every metric recorded so far.
+     */
+    void reset();
+
+    /**
+     * @return the metrics recorded so far, as text, as by Metrics.dump()
+     */
+    String dump();
+}
@@ -0,0 +1,187 @@
+package expressivo;
+
+import java.util.Arrays;
+
+/**
+ * An immutable product of variables raised to positive integer powers, such as
+ * x^2*y, with no coefficient. Monomials are ordered for printing polynomials in
+ * a canonical form: by decreasing total degree, then by decreasing exponent of
+ * the alphabetically first variable at which they differ (graded lexicographic order).
+ */
+final class Monomial implements Comparable<Monomial> {
+
+    /** The monomial with no variables, whose value is 1. */
+    static final Monomial ONE = new Monomial(new String[0], new int[0]);
+
+    private final String[] variables;
+    private final int[] exponents;
+    private final int degree;
+    // Rep invariant:
+    //    variables.length == exponents.length
+    //    variables is strictly increasing
+    //    every exponents[i] > 0
+    //    degree == sum of exponents
+    // Abstraction Function:
+    //   represents the product over i of variables[i]^exponents[i]
+    // Safety from rep exposure:
+    //   both arrays are private and never returned or shared with clients
+
+    // Check that the rep invariant is true
+    // *** Warning: this does nothing unless you turn on assertion checking
+    // by passing -enableassertions to Java
+    private void checkRep() {
+        assert variables.length == exponents.length;
+        int sum = 0;
+        for (int i = 0; i < variables.length; i++) {
+            assert i == 0 || variables[i - 1].compareTo(variables[i]) < 0;
+            assert exponents[i] > 0;
+            sum += exponents[i];
+        }
+        assert degree == sum;
+    }
+
+    private Monomial(String[] variables, int[] exponents) {
+        this.variables = variables;
+        this.exponents = exponents;
+        int sum = 0;
+        for (int exponent : exponents) {
+            sum += exponent;
+        }
+        this.degree = sum;
+        checkRep();
+    }
+
+    /**
+     * @param variable a variable name
+     * @return the monomial variable^1
+     */
+    static Monomial of(String variable) {
+        return new Monomial(new String[] { variable }, new int[] { 1 });
+    }
+
+    /**
+     * @return total degree of this monomial, the sum of its exponents
+     */
+    int degree() {
+        return degree;
+    }
+
+    /**
+     * @param variable a variable name
+     * @return exponent of variable in this monomial, 0 if it does not occur
+     */
+    int exponent(String variable) {
+        final int index = Arrays.binarySearch(variables, variable);
+        return index < 0 ? 0 : exponents[index];
+    }
+
+    /**
+     * @param that another monomial
+     * @return the product of this and that
+     */
+    Monomial times(Monomial that) {
+        final String[] mergedVariables = new String[this.variables.length + that.variables.length];
+        final int[] mergedExponents = new int[mergedVariables.length];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < this.variables.length || j < that.variables.length) {
+            final int order = i == this.variables.length ? 1
+                    : j == that.variables.length ? -1
+                    : this.variables[i].compareTo(that.variables[j]);
+            if (order < 0) {
+                mergedVariables[k] = this.variables[i];
+                mergedExponents[k++] = this.exponents[i++];
+            } else if (order > 0) {
+                mergedVariables[k] = that.variables[j];
+                mergedExponents[k++] = that.exponents[j++];
+            } else {
+                mergedVariables[k] = this.variables[i];
+                mergedExponents[k++] = this.exponents[i++] + that.exponents[j++];
+            }
+        }
+        return new Monomial(Arrays.copyOf(mergedVariables, k), Arrays.copyOf(mergedExponents, k));
+    }
+
+    /**
+     * @param variable a variable that occurs in this monomial
+     * @return this monomial with the exponent of variable reduced by one, so that
+     *         the derivative of this with respect to variable is
+     *         exponent(variable) * reduce(variable)
+     */
+    Monomial reduce(String variable) {
+        final int index = Arrays.binarySearch(variables, variable);
+        assert index >= 0;
+        if (exponents[index] > 1) {
+            final int[] reduced = exponents.clone();
+            reduced[index]--;
+            return new Monomial(variables, reduced);
+        }
+        final String[] remainingVariables = new String[variables.length - 1];
+        final int[] remainingExponents = new int[variables.length - 1];
+        System.arraycopy(variables, 0, remainingVariables, 0, index);
+        System.arraycopy(variables, index + 1, remainingVariables, index, remainingVariables.length - index);
+        System.arraycopy(exponents, 0, remainingExponents, 0, index);
+        System.arraycopy(exponents, index + 1, remainingExponents, index, remainingExponents.length - index);
+        return new Monomial(remainingVariables, remainingExponents);
+    }
+
+    /**
+     * @param coefficient nonnegative coefficient
+     * @return expression for coefficient times this monomial, as a product of the
+     *         coefficient (omitted if it is 1 and this is not ONE) followed by each
+     *         variable repeated exponent times, in alphabetical order
+     */
+    Expression toExpression(double coefficient) {
+        final Expression[] factors = new Expression[degree + 1];
+        int count = 0;
+        if (coefficient != 1 || degree == 0) {
+            factors[count++] = Expression.number(coefficient);
+        }
+        for (int i = 0; i < variables.length; i++) {
+            final Expression variable = Expression.variable(variables[i]);
+            for (int e = 0; e < exponents[i]; e++) {
+                factors[count++] = variable;
+            }
+        }
+        return Expression.product(Arrays.copyOf(factors, count));
+    }
+
+    @Override
+    public int compareTo(Monomial that) {
+        if (this.degree != that.degree) {
+            return this.degree > that.degree ? -1 : 1;
+        }
+        for (int i = 0, j = 0; i < this.variables.length && j < that.variables.length; i++, j++) {
+            final int order = this.variables[i].compareTo(that.variables[j]);
+            if (order != 0) {
+                // the monomial containing the alphabetically earlier variable comes first
+                return order;
+            }
+            if (this.exponents[i] != that.exponents[j]) {
+                return this.exponents[i] > that.exponents[j] ? -1 : 1;
+            }
+        }
+        // equal degrees and a common prefix imply equal lengths
+        return 0;
+    }
+
+    @Override
+    public boolean equals(Object thatObject) {
+        if (!(thatObject instanceof Monomial)) return false;
+        Monomial thatMonomial = (Monomial) thatObject;
+
+        return Arrays.equals(this.variables, thatMonomial.variables)
+                && Arrays.equals(this.exponents, thatMonomial.exponents);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(variables) + Arrays.hashCode(exponents);
+    }
+
+    @Override
+    public String toString() {
+        return toExpression(1).toString();
+    }
+}
@@ -0,0 +1,187 @@
+package expressivo;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The representation shared by Sum and Product: a flat array of operands instead
+ * of a left-nested chain of Plus (resp. Times) nodes, with the hash of every
+ * prefix of the operands so that prefix(length) is O(1).
+ *
+ * <p>An n-ary node of operands a1, a2, ..., an is the same expression as the
+ * left-nested chain of binary nodes of the same kind over a1, a2, ..., an: it is
+ * equal to that chain, has the same hashCode, and has the same toString.
+ */
+abstract class NaryExpression implements Expression {
+
+    private final Expression[] operands;
+    private final int[] prefixHashes;
+    private final int count;
+    // Rep invariant:
+    //    2 <= count <= operands.length == prefixHashes.length
+    //    operands[0..count) are not null, and operands[0] is not a Plus or Sum
+    //      if this is a Sum, nor a Times or Product if this is a Product
+    //    prefixHashes[0] == operands[0].hashCode() and for 0 < i < count,
+    //      prefixHashes[i] == 31 * (31 + prefixHashes[i-1]) + operands[i].hashCode()
+    // Abstraction Function:
+    //   represents the sum (resp. product) of operands[0..count), left-nested
+    // Safety from rep exposure:
+    //   operands and prefixHashes are never returned; the public constructors of
+    //   Sum and Product copy their argument. Nodes made by prefix() share both
+    //   arrays, which are never mutated.
+
+    // Check that the rep invariant is true
+    // *** Warning: this does nothing unless you turn on assertion checking
+    // by passing -enableassertions to Java
+    // Only the last prefix hash is checked, against the one before it, so that
+    // taking every prefix of a wide node stays linear; the constructor from
+    // operands computes all of them by the same recurrence.
+    private void checkRep() {
+        assert count >= 2 && count <= operands.length && operands.length == prefixHashes.length;
+        assert !(this instanceof Sum ? Traversal.isSum(operands[0]) : Traversal.isProduct(operands[0]));
+        assert prefixHashes[count - 1] == 31 * (31 + prefixHashes[count - 2]) + operands[count - 1].hashCode();
+    }
+
+    /**
+     * Make a node of two or more operands, splicing in the operands of the first
+     * if it is a node of the same kind, since (a + b) + c is the same sum as
+     * a + b + c and (a * b) * c the same product as a * b * c.
+     * @param operands the operands, left to right; at least two; not modified
+     * @param sum true for a Sum, false for a Product
+     * @throws IllegalArgumentException if there are fewer than two operands
+     */
+    NaryExpression(Expression[] operands, boolean sum) {
+        this.operands = flatten(operands, sum);
+        this.prefixHashes = prefixHashes(this.operands);
+        this.count = this.operands.length;
+        checkRep();
+    }
+
+    /**
+     * Make the node of the first count operands of another, sharing its storage.
+     * @param whole a node of the same kind
+     * @param count 2 <= count <= whole.size()
+     */
+    NaryExpression(NaryExpression whole, int count) {
+        this.operands = whole.operands;
+        this.prefixHashes = whole.prefixHashes;
+        this.count = count;
+        checkRep();
+    }
+
+    private static Expression[] flatten(Expression[] operands, boolean sum) {
+        if (operands.length < 2) {
+            throw new IllegalArgumentException("a " + (sum ? "sum" : "product") + " needs at least two operands");
+        }
+        final List<Expression> first = Traversal.spine(operands[0], sum);
+        final Expression[] flattened = new Expression[first.size() + operands.length - 1];
+        first.toArray(flattened);
+        System.arraycopy(operands, 1, flattened, first.size(), operands.length - 1);
+        return flattened;
+    }
+
+    private static int[] prefixHashes(Expression[] operands) {
+        final int[] hashes = new int[operands.length];
+        hashes[0] = operands[0].hashCode();
+        for (int i = 1; i < operands.length; i++) {
+            hashes[i] = 31 * (31 + hashes[i - 1]) + operands[i].hashCode();
+        }
+        return hashes;
+    }
+
+    /**
+     * @param count 2 <= count < size()
+     * @return the node of the first count operands, of the same kind as this
+     */
+    abstract NaryExpression withCount(int count);
+
+    /**
+     * @return number of operands, at least 2
+     */
+    int size() {
+        return this.count;
+    }
+
+    /**
+     * @param index 0 <= index < size()
+     * @return operand at index, counting from the left
+     */
+    Expression operand(int index) {
+        assert index < count;
+        return this.operands[index];
+    }
+
+    /**
+     * @return the operands, left to right
+     */
+    List<Expression> operands() {
+        return Arrays.asList(this.operands).subList(0, this.count);
+    }
+
+    /**
+     * @param length 1 <= length <= size()
+     * @return the node of the first length operands (the first operand itself if
+     *         length is 1), sharing this node's storage
+     */
+    Expression prefix(int length) {
+        assert length >= 1 && length <= count;
+        if (length == 1) {
+            return this.operands[0];
+        }
+        if (length == count) {
+            return this;
+        }
+        return withCount(length);
+    }
+
+    @Override
+    public Expression plus(Expression rhs) {
+        return Expression.plus(this, rhs);
+    }
+
+    @Override
+    public Expression times(Expression rhs) {
+        return Expression.times(this, rhs);
+    }
+
+    @Override
+    public String toString() {
+        return Printer.print(this);
+    }
+
+    @Override
+    public boolean equals(Object thatObject) {
+        if (this == thatObject) return true;
+        if (!(thatObject instanceof Expression)) return false;
+        Expression thatExpression = (Expression) thatObject;
+        if (this.hashCode() != thatExpression.hashCode()) return false;
+
+        return Traversal.equal(this, thatExpression);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.prefixHashes[this.count - 1];
+    }
+
+    @Override
+    public Expression differentiate(String variable) {
+        return Differentiation.differentiate(this, variable);
+    }
+
+    @Override
+    public Expression simplify(Map<String, Double> environment) {
+        return Simplification.simplify(this, environment);
+    }
+
+    @Override
+    public boolean hasValue() {
+        return false;
+    }
+
+    @Override
+    public double getValue() {
+        throw new UnsupportedOperationException();
+    }
+}
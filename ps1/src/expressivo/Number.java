@@ -23,17 +23,21 @@ public class Number implements Expression {
     
     @Override
     public Expression plus(Expression rhs) {
-        return new Plus(this, rhs);
+        return Expression.plus(this, rhs);
     }
 
     @Override
     public Expression times(Expression rhs) {
-        return new Times(this, rhs);
+        return Expression.times(this, rhs);
     }
 
+    /**
+     * @return the value with four digits after the decimal point, as by
+     *         String.format(Locale.ROOT, "%.4f", value)
+     */
     @Override 
     public String toString() {
-        return String.format("%.4f", this.value);
+        return FixedPoint.format(this.value);
     }
     
     @Override
@@ -51,7 +55,7 @@ public class Number implements Expression {
 
     @Override
     public Expression differentiate(String variable) {
-        return new Number(0);
+        return Expression.number(0);
     }
 
     @Override
@@ -0,0 +1,208 @@
+package expressivo;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded, thread-safe cache from input strings to the expressions
+ * Expression.parse makes of them, evicting the least recently used entry when full.
+ *
+ * <p>Commands parses through the shared instance, so a formula string that is
+ * repeated is parsed once while it stays in the cache. Expressions are immutable,
+ * so a cached expression can be returned to any number of callers. Inputs that
+ * fail to parse are not cached.
+ *
+ * <p>The cache is divided into segments, each an access-ordered LinkedHashMap
+ * with its own lock, so threads using different inputs rarely contend; recency
+ * is tracked per segment.
+ */
+public final class ParseCache {
+
+    /** Name of the system property giving the maximum size of the shared cache. */
+    public static final String SIZE_PROPERTY = "expressivo.parseCache.size";
+    /** Maximum size of the shared cache unless set by SIZE_PROPERTY. */
+    public static final int DEFAULT_MAXIMUM_SIZE = 1024;
+
+    private static final int DEFAULT_SEGMENTS = 16;
+
+    private static final ParseCache SHARED =
+            new ParseCache(Integer.getInteger(SIZE_PROPERTY, DEFAULT_MAXIMUM_SIZE));
+
+    private final Segment[] segments;
+    private final int maximumSize;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    // Rep invariant:
+    //    segments.length >= 1, and the capacities of the segments sum to maximumSize
+    //    every value in a segment is Expression.parse of its key
+    // Abstraction Function:
+    //   represents the cache holding the union of the segments' entries, with
+    //   the numbers of lookups that found an entry (hits), that did not (misses),
+    //   and of entries removed to make room (evictions)
+    // Thread safety argument:
+    //   each segment's map is only accessed while holding the segment's lock;
+    //   the counters are LongAdders; the other fields are final and immutable
+
+    // Check that the rep invariant is true
+    // *** Warning: this does nothing unless you turn on assertion checking
+    // by passing -enableassertions to Java
+    private void checkRep() {
+        assert segments.length >= 1;
+        int capacity = 0;
+        for (Segment segment : segments) {
+            capacity += segment.capacity;
+        }
+        assert capacity == maximumSize;
+    }
+
+    /**
+     * Make an empty cache.
+     * @param maximumSize largest number of expressions the cache holds, > 0
+     * @throws IllegalArgumentException if maximumSize <= 0
+     */
+    public ParseCache(int maximumSize) {
+        this(maximumSize, DEFAULT_SEGMENTS);
+    }
+
+    /**
+     * Make an empty cache.
+     * @param maximumSize largest number of expressions the cache holds, > 0
+     * @param segmentCount number of independently locked segments, > 0; at most
+     *         maximumSize are used
+     * @throws IllegalArgumentException if maximumSize <= 0 or segmentCount <= 0
+     */
+    ParseCache(int maximumSize, int segmentCount) {
+        if (maximumSize <= 0 || segmentCount <= 0) {
+            throw new IllegalArgumentException("sizes must be positive: " + maximumSize + ", " + segmentCount);
+        }
+        this.maximumSize = maximumSize;
+        this.segments = new Segment[Math.min(segmentCount, maximumSize)];
+        for (int i = 0; i < segments.length; i++) {
+            final int capacity = maximumSize / segments.length + (i < maximumSize % segments.length ? 1 : 0);
+            segments[i] = new Segment(capacity);
+        }
+        checkRep();
+    }
+
+    /**
+     * @return the cache used by Commands, whose maximum size is given by the
+     *         system property expressivo.parseCache.size (default 1024)
+     */
+    public static ParseCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * Parse an expression, or return the result of parsing the same input before.
+     * @param input expression to parse, as defined in the PS1 handout
+     * @return an expression equal to Expression.parse(input)
+     * @throws IllegalArgumentException if the expression is invalid
+     */
+    public Expression parse(String input) {
+        final Segment segment = segmentFor(input);
+        synchronized (segment) {
+            final Expression cached = segment.get(input);
+            if (cached != null) {
+                hits.increment();
+                return cached;
+            }
+        }
+        misses.increment();
+        // parse outside the lock; if two threads miss on the same input, both parse
+        // it and the second result replaces the first, which is equal
+        final Expression expression = Expression.parse(input);
+        synchronized (segment) {
+            segment.put(input, expression);
+        }
+        return expression;
+    }
+
+    /**
+     * @return largest number of expressions this cache holds
+     */
+    public int maximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * @return number of expressions in this cache
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return number of calls to parse that found their input in the cache
+     */
+    public long hits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return number of calls to parse that did not find their input in the cache
+     */
+    public long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return number of expressions removed from the cache to make room for others
+     */
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Remove every expression from this cache. The counters are not reset.
+     */
+    public void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ParseCache[size=%d/%d, hits=%d, misses=%d, evictions=%d]",
+                size(), maximumSize, hits(), misses(), evictions());
+    }
+
+    private Segment segmentFor(String input) {
+        final int hash = input.hashCode();
+        return segments[Math.floorMod(hash ^ (hash >>> 16), segments.length)];
+    }
+
+    /*
+     * An access-ordered map that evicts its least recently used entry beyond
+     * capacity. Guarded by its own lock.
+     */
+    private final class Segment extends LinkedHashMap<String, Expression> {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Expression> eldest) {
+            if (size() > capacity) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+}
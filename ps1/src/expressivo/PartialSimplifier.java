@@ -0,0 +1,234 @@
+package expressivo;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A handle for simplifying one expression repeatedly in environments that
+ * share a fixed set of bindings and differ in the values of a few others.
+ *
+ * <p>The fixed bindings are substituted once, when the handle is made, leaving
+ * a residual expression in which every subtree that depends on no other variable
+ * is already a number. Each call to simplify then substitutes the changing
+ * bindings into the residual, reusing the result of the last call for every
+ * subtree that depends on none of the variables whose values changed, so the
+ * work per call is proportional to the part of the expression that depends on
+ * the changed variables.
+ *
+ * <p>Substitution is in two steps, but every operation is performed on the
+ * same values in the same order as by Expression.simplify, so the results are
+ * identical.
+ */
+public final class PartialSimplifier {
+
+    private final Map<String, Double> fixed;
+    private final Expression residual;
+    private final Map<String, Integer> indices = new HashMap<>();
+    private final Map<Expression, Node> nodes = new IdentityHashMap<>();
+    private Map<String, Double> previous = null;
+    private long generation = 0;
+    private int recomputed = 0;
+    // Rep invariant:
+    //    residual equals the expression given to the constructor simplified in fixed
+    //    indices maps each variable of residual to a distinct index in [0, indices.size())
+    //    nodes has an entry for each Plus, Times, Sum or Product of residual, whose
+    //      dependencies are the indices of the variables in that subtree
+    //    if previous != null, every node with a result has result equal to its subtree
+    //      simplified in previous
+    //    no key of fixed is a key of previous
+    // Abstraction Function:
+    //   represents the expression residual, simplified in the environments given
+    //   to simplify together with fixed
+    // Safety from rep exposure:
+    //   fixed and previous are copies that are never returned; residual and the
+    //   results are immutable
+    // Thread safety argument:
+    //   the mutable fields are only accessed in synchronized methods or in the
+    //   constructor, before this object is shared
+
+    /**
+     * Substitute the fixed bindings into an expression.
+     * @param expression expression to simplify
+     * @param fixed mapping from variables to the numerical values they have in every
+     *         environment this handle will simplify expression in
+     */
+    public PartialSimplifier(Expression expression, Map<String, Double> fixed) {
+        this.fixed = new HashMap<>(fixed);
+        this.residual = Simplification.simplify(expression, this.fixed);
+        Traversal.foldShared(residual, new Dependencies());
+    }
+
+    /**
+     * @return the expression with the fixed bindings substituted
+     */
+    public Expression residual() {
+        return residual;
+    }
+
+    /**
+     * Simplify the expression in an environment extending the fixed bindings.
+     * @param environment mapping from variables to numerical values; must not map
+     *         any variable of the fixed bindings
+     * @return an expression equal to expression.simplify(e), where e maps each variable
+     *         as fixed or environment does
+     * @throws IllegalArgumentException if environment maps a variable of the fixed bindings
+     */
+    public synchronized Expression simplify(Map<String, Double> environment) {
+        for (String variable : environment.keySet()) {
+            if (fixed.containsKey(variable)) {
+                throw new IllegalArgumentException("variable " + variable + " is fixed");
+            }
+        }
+        final BitSet changed = new BitSet(indices.size());
+        for (Map.Entry<String, Integer> index : indices.entrySet()) {
+            final String variable = index.getKey();
+            if (previous == null || !Objects.equals(previous.get(variable), environment.get(variable))) {
+                changed.set(index.getValue());
+            }
+        }
+        previous = new HashMap<>(environment);
+        generation++;
+        recomputed = 0;
+        return Traversal.fold(residual, new Resimplification(previous, changed));
+    }
+
+    /**
+     * @return number of Plus, Times, Sum and Product nodes of the residual expression
+     *         whose simplification the last call to simplify did not reuse
+     */
+    synchronized int recomputed() {
+        return recomputed;
+    }
+
+    /*
+     * Per-node state: the variables the subtree depends on, and its
+     * simplification in the last environment, if computed.
+     */
+    private static final class Node {
+        private final BitSet dependencies;
+        private Expression result;
+        private long generation;
+
+        Node(BitSet dependencies) {
+            this.dependencies = dependencies;
+        }
+    }
+
+    /*
+     * Computes the variables each node of the residual depends on, recording a
+     * Node for each Plus, Times, Sum and Product.
+     */
+    private final class Dependencies implements Fold<BitSet> {
+
+        @Override
+        public BitSet number(Number node) {
+            return new BitSet();
+        }
+
+        @Override
+        public BitSet variable(Variable node) {
+            final BitSet dependencies = new BitSet();
+            dependencies.set(indices.computeIfAbsent(node.name(), name -> indices.size()));
+            return dependencies;
+        }
+
+        @Override
+        public BitSet plus(Plus node, BitSet left, BitSet right) {
+            return union(List.of(left, right));
+        }
+
+        @Override
+        public BitSet times(Times node, BitSet left, BitSet right) {
+            return union(List.of(left, right));
+        }
+
+        @Override
+        public BitSet sum(Sum node, List<BitSet> operands) {
+            return union(operands);
+        }
+
+        @Override
+        public BitSet product(Product node, List<BitSet> operands) {
+            return union(operands);
+        }
+
+        @Override
+        public void computed(Expression node, BitSet dependencies) {
+            nodes.put(node, new Node(dependencies));
+        }
+
+        private BitSet union(List<BitSet> operands) {
+            final BitSet union = new BitSet();
+            for (BitSet operand : operands) {
+                union.or(operand);
+            }
+            return union;
+        }
+    }
+
+    /*
+     * Simplification of the residual that reuses the result of each node that
+     * depends on no changed variable, or was already simplified in this generation.
+     */
+    private final class Resimplification implements Fold<Expression> {
+        private final Simplification simplification;
+        private final BitSet changed;
+
+        Resimplification(Map<String, Double> environment, BitSet changed) {
+            this.simplification = new Simplification(environment);
+            this.changed = changed;
+        }
+
+        @Override
+        public Expression number(Number node) {
+            return simplification.number(node);
+        }
+
+        @Override
+        public Expression variable(Variable node) {
+            return simplification.variable(node);
+        }
+
+        @Override
+        public Expression plus(Plus node, Expression left, Expression right) {
+            return simplification.plus(node, left, right);
+        }
+
+        @Override
+        public Expression times(Times node, Expression left, Expression right) {
+            return simplification.times(node, left, right);
+        }
+
+        @Override
+        public Expression sum(Sum node, List<Expression> operands) {
+            return simplification.sum(node, operands);
+        }
+
+        @Override
+        public Expression product(Product node, List<Expression> operands) {
+            return simplification.product(node, operands);
+        }
+
+        @Override
+        public Expression cached(Expression node) {
+            final Node state = nodes.get(node);
+            if (state.result != null
+                    && (state.generation == generation || !state.dependencies.intersects(changed))) {
+                return state.result;
+            }
+            return null;
+        }
+
+        @Override
+        public void computed(Expression node, Expression result) {
+            final Node state = nodes.get(node);
+            state.result = result;
+            state.generation = generation;
+            recomputed++;
+        }
+    }
+}
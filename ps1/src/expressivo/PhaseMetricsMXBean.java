@@ -0,0 +1,68 @@
+package expressivo;
+
+/**
+ * Management interface of the metrics of one Metrics.Phase, registered by
+ * Metrics.registerMBeans under the name Metrics.OBJECT_NAME + ",phase=" + the
+ * phase's name in lower case. Times are in nanoseconds, accurate to within 1/64;
+ * every figure is 0 until the phase has been recorded.
+ */
+public interface PhaseMetricsMXBean {
+
+    /**
+     * @return number of times the phase was recorded
+     */
+    long getCount();
+
+    /**
+     * @return mean time of the phase
+     */
+    double getMeanNanos();
+
+    /**
+     * @return least time of the phase
+     */
+    long getMinNanos();
+
+    /**
+     * @return median time of the phase
+     */
+    long getMedianNanos();
+
+    /**
+     * @return 90th percentile time of the phase
+     */
+    long get90thPercentileNanos();
+
+    /**
+     * @return 99th percentile time of the phase
+     */
+    long get99thPercentileNanos();
+
+    /**
+     * @return 99.9th percentile time of the phase
+     */
+    long get999thPercentileNanos();
+
+    /**
+     * @return greatest time of the phase
+     */
+    long getMaxNanos();
+
+    /**
+     * @return mean number of bytes allocated by the recording thread during the
+     *         phase, or -1 if the JVM cannot measure allocation
+     */
+    double getAllocatedBytesPerOperation();
+
+    /**
+     * @return mean number of nodes of the phase's input trees, over a sample of
+     *         them, or 0 if the phase has no input tree
+     */
+    double getInputNodesPerOperation();
+
+    /**
+     * @return mean number of nodes of the phase's output trees, over a sample of
+     *         them, or 0 if the phase has no output tree
+     */
+    double getOutputNodesPerOperation();
+}
@@ -0,0 +1,287 @@
+package expressivo;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * An immutable polynomial in canonical form: a sparse map from monomials to
+ * positive finite coefficients.
+ *
+ * <p>Every Expression denotes a polynomial, and two expressions denote the same
+ * polynomial exactly when they are equal for every assignment of values to their
+ * variables (up to floating-point rounding of the coefficients). So unlike
+ * Expression.equals, equality of polynomials is equality of the functions they
+ * compute: Polynomial.of(x*2 + 3*x) equals Polynomial.of(5*x).
+ */
+final class Polynomial {
+
+    /** The polynomial 0, with no terms. */
+    static final Polynomial ZERO = new Polynomial(new TreeMap<>());
+
+    /**
+     * Default limit on expanding an expression: products of sums multiply out
+     * exponentially, e.g. (a + 1)*(b + 1)*...*(z + 1) has 2^26 terms.
+     */
+    static final int MAX_TERMS = 10_000;
+
+    private final SortedMap<Monomial, Double> terms;
+    // Rep invariant:
+    //    every coefficient in terms is > 0 and finite
+    // Abstraction Function:
+    //   represents the sum over (m, c) in terms of c * m, and 0 if terms is empty
+    // Safety from rep exposure:
+    //   terms is private and never returned except as an unmodifiable view;
+    //   Monomial and Double are immutable
+
+    // Check that the rep invariant is true
+    // *** Warning: this does nothing unless you turn on assertion checking
+    // by passing -enableassertions to Java
+    private void checkRep() {
+        for (double coefficient : terms.values()) {
+            assert coefficient > 0 && Double.isFinite(coefficient);
+        }
+    }
+
+    private Polynomial(SortedMap<Monomial, Double> terms) {
+        this.terms = terms;
+        checkRep();
+    }
+
+    /*
+     * Make a polynomial from a map that may hold zero coefficients; takes ownership of terms.
+     * Throws NotFiniteException if a coefficient is infinite or NaN.
+     */
+    private static Polynomial normalize(Map<Monomial, Double> terms) {
+        final SortedMap<Monomial, Double> nonzero = new TreeMap<>();
+        for (Map.Entry<Monomial, Double> term : terms.entrySet()) {
+            final double coefficient = term.getValue();
+            if (!Double.isFinite(coefficient)) {
+                throw new NotFiniteException();
+            }
+            if (coefficient != 0) {
+                nonzero.put(term.getKey(), coefficient);
+            }
+        }
+        return new Polynomial(nonzero);
+    }
+
+    /**
+     * @param value nonnegative finite number
+     * @return the constant polynomial value
+     * @throws ArithmeticException if value is not finite
+     */
+    static Polynomial constant(double value) {
+        return normalize(Collections.singletonMap(Monomial.ONE, value));
+    }
+
+    /**
+     * @param name variable name
+     * @return the polynomial name
+     */
+    static Polynomial variable(String name) {
+        return normalize(Collections.singletonMap(Monomial.of(name), 1.0));
+    }
+
+    /**
+     * Convert an expression to canonical form by expanding every product of sums.
+     * @param expression any expression
+     * @return the polynomial that expression denotes, or null if one of its
+     *         coefficients, or of a polynomial computed on the way, is not finite
+     */
+    static Polynomial of(Expression expression) {
+        return of(expression, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Convert an expression to canonical form by expanding every product of sums,
+     * unless that is too much work.
+     * @param expression any expression
+     * @param maxTerms greatest number of pairs of terms multiplied by any one product
+     *         while expanding, which also bounds the terms of every polynomial computed
+     *         on the way, > 0
+     * @return the polynomial that expression denotes, or null if expanding it would
+     *         exceed maxTerms, or if one of its coefficients, or of a polynomial
+     *         computed on the way, is not finite (numbers that overflow to infinity
+     *         and are then multiplied by 0 give NaN)
+     */
+    static Polynomial of(Expression expression, int maxTerms) {
+        try {
+            return Traversal.fold(expression, new Conversion(maxTerms));
+        } catch (TooLargeException | NotFiniteException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return unmodifiable view of the terms of this polynomial, from monomial to its
+     *         nonzero coefficient, in canonical order
+     */
+    SortedMap<Monomial, Double> terms() {
+        return Collections.unmodifiableSortedMap(terms);
+    }
+
+    /**
+     * @param that another polynomial
+     * @return the sum of this and that
+     * @throws ArithmeticException if a coefficient of the sum overflows
+     */
+    Polynomial plus(Polynomial that) {
+        final Map<Monomial, Double> sum = new HashMap<>(this.terms);
+        for (Map.Entry<Monomial, Double> term : that.terms.entrySet()) {
+            sum.merge(term.getKey(), term.getValue(), Double::sum);
+        }
+        return normalize(sum);
+    }
+
+    /**
+     * @param that another polynomial
+     * @return the product of this and that
+     * @throws ArithmeticException if a coefficient of the product overflows
+     */
+    Polynomial times(Polynomial that) {
+        final Map<Monomial, Double> product = new HashMap<>();
+        for (Map.Entry<Monomial, Double> left : this.terms.entrySet()) {
+            for (Map.Entry<Monomial, Double> right : that.terms.entrySet()) {
+                product.merge(left.getKey().times(right.getKey()),
+                        left.getValue() * right.getValue(), Double::sum);
+            }
+        }
+        return normalize(product);
+    }
+
+    /**
+     * @param variable variable with respect to which this is differentiated
+     * @return the derivative of this with respect to variable
+     * @throws ArithmeticException if a coefficient of the derivative overflows
+     */
+    Polynomial differentiate(String variable) {
+        final Map<Monomial, Double> derivative = new HashMap<>();
+        for (Map.Entry<Monomial, Double> term : terms.entrySet()) {
+            final int exponent = term.getKey().exponent(variable);
+            if (exponent > 0) {
+                derivative.merge(term.getKey().reduce(variable), exponent * term.getValue(), Double::sum);
+            }
+        }
+        return normalize(derivative);
+    }
+
+    /**
+     * @return an expression denoting this polynomial: the sum, in canonical order, of
+     *         each term as made by Monomial.toExpression; or the number 0 if this is ZERO.
+     *         Equal polynomials give equal expressions.
+     */
+    Expression toExpression() {
+        if (terms.isEmpty()) {
+            return Expression.number(0);
+        }
+        final Expression[] summands = new Expression[terms.size()];
+        int i = 0;
+        for (Map.Entry<Monomial, Double> term : terms.entrySet()) {
+            summands[i++] = term.getKey().toExpression(term.getValue());
+        }
+        return Expression.sum(summands);
+    }
+
+    @Override
+    public boolean equals(Object thatObject) {
+        if (!(thatObject instanceof Polynomial)) return false;
+        Polynomial thatPolynomial = (Polynomial) thatObject;
+
+        return this.terms.equals(thatPolynomial.terms);
+    }
+
+    @Override
+    public int hashCode() {
+        return terms.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return toExpression().toString();
+    }
+
+    /*
+     * Thrown by Conversion to abandon an expansion that exceeds its limit.
+     */
+    private static final class TooLargeException extends RuntimeException {
+        private static final long serialVersionUID = 1;
+    }
+
+    /*
+     * Thrown by normalize for a coefficient that is infinite or NaN, which
+     * no Polynomial holds.
+     */
+    private static final class NotFiniteException extends ArithmeticException {
+        private static final long serialVersionUID = 1;
+    }
+
+    /*
+     * Conversion of an Expression to a Polynomial, bottom-up, giving up on a
+     * product of more than maxTerms pairs of terms or a sum of more than maxTerms terms.
+     */
+    private static final class Conversion implements Fold<Polynomial> {
+        private final int maxTerms;
+
+        Conversion(int maxTerms) {
+            this.maxTerms = maxTerms;
+        }
+
+        @Override
+        public Polynomial number(Number node) {
+            return constant(node.getValue());
+        }
+
+        @Override
+        public Polynomial variable(Variable node) {
+            return Polynomial.variable(node.name());
+        }
+
+        @Override
+        public Polynomial plus(Plus node, Polynomial left, Polynomial right) {
+            return checked(left.plus(right));
+        }
+
+        @Override
+        public Polynomial times(Times node, Polynomial left, Polynomial right) {
+            return multiply(left, right);
+        }
+
+        @Override
+        public Polynomial sum(Sum node, List<Polynomial> operands) {
+            final Map<Monomial, Double> sum = new HashMap<>();
+            for (Polynomial operand : operands) {
+                for (Map.Entry<Monomial, Double> term : operand.terms.entrySet()) {
+                    sum.merge(term.getKey(), term.getValue(), Double::sum);
+                }
+            }
+            return checked(normalize(sum));
+        }
+
+        @Override
+        public Polynomial product(Product node, List<Polynomial> operands) {
+            Polynomial product = operands.get(0);
+            for (int i = 1; i < operands.size(); i++) {
+                product = multiply(product, operands.get(i));
+            }
+            return product;
+        }
+
+        private Polynomial multiply(Polynomial left, Polynomial right) {
+            if ((long) left.terms.size() * right.terms.size() > maxTerms) {
+                throw new TooLargeException();
+            }
+            return left.times(right);
+        }
+
+        private Polynomial checked(Polynomial polynomial) {
+            if (polynomial.terms.size() > maxTerms) {
+                throw new TooLargeException();
+            }
+            return polynomial;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package expressivo;
+
+/**
+ * Renders an Expression in the parsable form specified by Expression.toString:
+ * a Plus as "(left + right)", a Times as "left*right", a Sum or Product as its
+ * left-nested chain of Plus or Times, and leaves by their own toString. A
+ * product that is the right operand of a product is parenthesized, since the
+ * parsers read a*b*c as (a*b)*c.
+ */
+final class Printer implements Walker {
+
+    private final StringBuilder out;
+
+    private Printer(StringBuilder out) {
+        this.out = out;
+    }
+
+    /**
+     * @param expression expression to render
+     * @return expression.toString(), computed without recursion
+     */
+    static String print(Expression expression) {
+        return print(expression, new StringBuilder()).toString();
+    }
+
+    /**
+     * Append the rendering of an expression to a builder, which may be reused
+     * across calls to avoid growing a new one for each.
+     * @param expression expression to render
+     * @param out builder to append expression.toString() to
+     * @return out
+     */
+    static StringBuilder print(Expression expression, StringBuilder out) {
+        Traversal.walk(expression, new Printer(out));
+        return out;
+    }
+
+    /*
+     * Numbers are formatted straight into out rather than through Number.toString.
+     */
+    @Override
+    public void leaf(Expression node) {
+        if (node instanceof Number) {
+            FixedPoint.append(out, node.getValue());
+        } else {
+            out.append(((Variable) node).name());
+        }
+    }
+
+    @Override
+    public void enter(Expression node) {
+        if (Traversal.isSum(node)) {
+            // one parenthesis for each Plus in the left-nested chain
+            for (int i = 1; i < Traversal.arity(node); i++) {
+                out.append('(');
+            }
+        }
+    }
+
+    @Override
+    public void between(Expression node, int index) {
+        if (Traversal.isSum(node)) {
+            if (index > 0) {
+                out.append(')');
+            }
+            out.append(" + ");
+        } else {
+            if (index > 0 && Traversal.isProduct(Traversal.operand(node, index))) {
+                out.append(')');
+            }
+            out.append('*');
+            if (Traversal.isProduct(Traversal.operand(node, index + 1))) {
+                out.append('(');
+            }
+        }
+    }
+
+    @Override
+    public void exit(Expression node) {
+        if (Traversal.isSum(node)) {
+            out.append(')');
+        } else if (Traversal.isProduct(Traversal.operand(node, Traversal.arity(node) - 1))) {
+            out.append(')');
+        }
+    }
+}
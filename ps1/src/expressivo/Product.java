@@ -0,0 +1,31 @@
+package expressivo;
+
+/**
+ * An n-ary product, stored as a flat array of operands instead of a chain of Times nodes.
+ *
+ * <p>A Product of operands a1, a2, ..., an is the same expression as the left-nested
+ * chain of Times nodes ((a1 * a2) * ...) * an, in the same way as Sum is for Plus.
+ */
+public class Product extends NaryExpression {
+
+    // Rep invariant, abstraction function and safety from rep exposure:
+    //   as for NaryExpression, representing the product of the operands
+
+    /**
+     * Make a product of two or more operands. If the first operand is itself a Times or
+     * Product, its operands are spliced in, since (a * b) * c is the same product as a * b * c.
+     * @param operands the operands, left to right; at least two
+     */
+    public Product(Expression... operands) {
+        super(operands, false);
+    }
+
+    private Product(Product whole, int count) {
+        super(whole, count);
+    }
+
+    @Override
+    Product withCount(int count) {
+        return new Product(this, count);
+    }
+}
@@ -0,0 +1,348 @@
+package expressivo;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An Expression flattened to a straight-line list of instructions, each
+ * defining one value from the values of earlier instructions, for evaluators
+ * that process many rows of variable bindings at once.
+ *
+ * <p>Instructions are in the order Expression.simplify performs the operations
+ * they stand for, each Sum or Product becoming a chain of binary additions or
+ * multiplications, so evaluating them gives bit-for-bit the same result.
+ * Operations on two constants are folded when the program is built.
+ *
+ * <p>Common subexpressions are eliminated: the program has one instruction for
+ * each distinct value, however many times the subexpression computing it occurs
+ * in the expression. Derivatives in particular repeat whole operands of
+ * products (d(u*v) = u*dv + v*du), so their programs are much shorter than
+ * their trees. Because IEEE 754 addition and multiplication are commutative,
+ * a + b and b + a are the same value and share one instruction.
+ *
+ * <p>Each ADD or MULTIPLY instruction is assigned a register, a buffer of
+ * intermediate results, which it shares with other instructions whose values
+ * are never needed at the same time.
+ */
+final class Program {
+
+    /** Instruction kinds. */
+    static final byte CONSTANT = 0;
+    static final byte VARIABLE = 1;
+    static final byte ADD = 2;
+    static final byte MULTIPLY = 3;
+
+    private final byte[] kinds;
+    private final int[] left;
+    private final int[] right;
+    private final double[] constants;
+    private final int[] registers;
+    private final int registerCount;
+    private final int result;
+    // Rep invariant:
+    //    kinds, left, right, constants and registers have the same length n >= 1
+    //    for each i < n:
+    //      kinds[i] is CONSTANT, VARIABLE, ADD or MULTIPLY
+    //      if kinds[i] is VARIABLE, left[i] >= 0 is a slot
+    //      if kinds[i] is ADD or MULTIPLY, 0 <= left[i], right[i] < i, not both CONSTANT,
+    //        and 0 <= registers[i] < registerCount
+    //      otherwise registers[i] == -1
+    //    0 <= result < n
+    //    no register is reassigned while the value it holds has a later use
+    // Abstraction Function:
+    //   represents the expression defined by instruction result, where instruction i is
+    //     constants[i]                          if kinds[i] is CONSTANT
+    //     the variable in slot left[i]          if kinds[i] is VARIABLE
+    //     instruction left[i] + (resp. *) instruction right[i] if kinds[i] is ADD (resp. MULTIPLY)
+    // Safety from rep exposure:
+    //   all fields are private arrays that are never returned; accessors return elements
+
+    // Check that the rep invariant is true
+    // *** Warning: this does nothing unless you turn on assertion checking
+    // by passing -enableassertions to Java
+    private void checkRep() {
+        final int n = kinds.length;
+        assert n >= 1 && left.length == n && right.length == n && constants.length == n && registers.length == n;
+        assert result >= 0 && result < n;
+        for (int i = 0; i < n; i++) {
+            if (kinds[i] == ADD || kinds[i] == MULTIPLY) {
+                assert left[i] < i && right[i] < i;
+                assert kinds[left[i]] != CONSTANT || kinds[right[i]] != CONSTANT;
+                assert registers[i] >= 0 && registers[i] < registerCount;
+            } else {
+                assert registers[i] == -1;
+            }
+        }
+    }
+
+    private Program(byte[] kinds, int[] left, int[] right, double[] constants, int result) {
+        this.kinds = kinds;
+        this.left = left;
+        this.right = right;
+        this.constants = constants;
+        this.result = result;
+        this.registers = new int[kinds.length];
+        this.registerCount = allocateRegisters(kinds, left, right, registers);
+        checkRep();
+    }
+
+    /**
+     * Flatten an expression.
+     * @param expression expression to flatten
+     * @param slots maps each variable of expression to its slot
+     * @return program computing expression
+     * @throws IllegalArgumentException if a variable of expression is not in slots
+     */
+    static Program of(Expression expression, Map<String, Integer> slots) {
+        return of(expression, slots, true);
+    }
+
+    /**
+     * Flatten an expression, optionally without eliminating common subexpressions.
+     * @param expression expression to flatten
+     * @param slots maps each variable of expression to its slot
+     * @param shared true to eliminate common subexpressions, false for one instruction
+     *         per node of the expression tree (apart from folded constants)
+     * @return program computing expression
+     * @throws IllegalArgumentException if a variable of expression is not in slots
+     */
+    static Program of(Expression expression, Map<String, Integer> slots, boolean shared) {
+        final Builder builder = new Builder(slots, shared);
+        return builder.build(shared
+                ? Traversal.foldShared(expression, builder)
+                : Traversal.fold(expression, builder));
+    }
+
+    /**
+     * @return number of instructions, at least 1
+     */
+    int size() {
+        return kinds.length;
+    }
+
+    /**
+     * @return index of the instruction defining the value of the program
+     */
+    int result() {
+        return result;
+    }
+
+    /**
+     * @param i instruction index
+     * @return kind of instruction i: CONSTANT, VARIABLE, ADD or MULTIPLY
+     */
+    byte kind(int i) {
+        return kinds[i];
+    }
+
+    /**
+     * @param i index of an ADD or MULTIPLY instruction
+     * @return index of its left operand
+     */
+    int left(int i) {
+        return left[i];
+    }
+
+    /**
+     * @param i index of an ADD or MULTIPLY instruction
+     * @return index of its right operand
+     */
+    int right(int i) {
+        return right[i];
+    }
+
+    /**
+     * @param i index of a VARIABLE instruction
+     * @return slot of the variable
+     */
+    int slot(int i) {
+        return left[i];
+    }
+
+    /**
+     * @param i index of a CONSTANT instruction
+     * @return its value
+     */
+    double constant(int i) {
+        return constants[i];
+    }
+
+    /**
+     * @param i index of an ADD or MULTIPLY instruction
+     * @return register holding its value, in [0, registerCount())
+     */
+    int register(int i) {
+        return registers[i];
+    }
+
+    /**
+     * @return number of registers used by the ADD and MULTIPLY instructions
+     */
+    int registerCount() {
+        return registerCount;
+    }
+
+    /*
+     * Assign registers to the ADD and MULTIPLY instructions, reusing a register
+     * once the last instruction that reads its value has been reached.
+     * Returns the number of registers used.
+     */
+    private static int allocateRegisters(byte[] kinds, int[] left, int[] right, int[] registers) {
+        final int n = kinds.length;
+        final int[] lastUse = new int[n];
+        Arrays.fill(lastUse, -1);
+        for (int i = 0; i < n; i++) {
+            if (kinds[i] == ADD || kinds[i] == MULTIPLY) {
+                lastUse[left[i]] = i;
+                lastUse[right[i]] = i;
+            }
+        }
+        final int[] free = new int[n];
+        int freeCount = 0;
+        int registerCount = 0;
+        for (int i = 0; i < n; i++) {
+            if (kinds[i] != ADD && kinds[i] != MULTIPLY) {
+                registers[i] = -1;
+                continue;
+            }
+            // operands whose last use is here release their registers first, so the
+            // result may overwrite an operand in place
+            if (lastUse[left[i]] == i && registers[left[i]] >= 0) {
+                free[freeCount++] = registers[left[i]];
+            }
+            if (right[i] != left[i] && lastUse[right[i]] == i && registers[right[i]] >= 0) {
+                free[freeCount++] = registers[right[i]];
+            }
+            registers[i] = freeCount > 0 ? free[--freeCount] : registerCount++;
+        }
+        return registerCount;
+    }
+
+    /*
+     * Emits instructions bottom-up; the fold's result for a node is the index of
+     * the instruction defining its value. If shared, an instruction equal to one
+     * already emitted is not emitted again (value numbering): the earlier index is
+     * returned instead.
+     */
+    private static final class Builder implements Fold<Integer> {
+        private final Map<String, Integer> slots;
+        private final Map<Long, Integer> emitted;
+        private final Map<Long, Integer> emittedConstants;
+        private byte[] kinds = new byte[16];
+        private int[] left = new int[16];
+        private int[] right = new int[16];
+        private double[] constants = new double[16];
+        private int size = 0;
+
+        Builder(Map<String, Integer> slots, boolean shared) {
+            this.slots = slots;
+            this.emitted = shared ? new HashMap<>() : null;
+            this.emittedConstants = shared ? new HashMap<>() : null;
+        }
+
+        Program build(int result) {
+            return new Program(Arrays.copyOf(kinds, size), Arrays.copyOf(left, size),
+                    Arrays.copyOf(right, size), Arrays.copyOf(constants, size), result);
+        }
+
+        private int emit(byte kind, int leftOperand, int rightOperand, double constant) {
+            if (emitted == null) {
+                return append(kind, leftOperand, rightOperand, constant);
+            }
+            final Map<Long, Integer> table = kind == CONSTANT ? emittedConstants : emitted;
+            final Long key;
+            if (kind == CONSTANT) {
+                key = Double.doubleToRawLongBits(constant);
+            } else if (kind == VARIABLE) {
+                key = ((long) VARIABLE << 62) | leftOperand;
+            } else {
+                // operands in canonical order, since both operations commute
+                key = ((long) kind << 62) | ((long) Math.min(leftOperand, rightOperand) << 31)
+                        | Math.max(leftOperand, rightOperand);
+            }
+            final Integer existing = table.get(key);
+            if (existing != null) {
+                return existing;
+            }
+            final int index = append(kind, leftOperand, rightOperand, constant);
+            table.put(key, index);
+            return index;
+        }
+
+        private int append(byte kind, int leftOperand, int rightOperand, double constant) {
+            if (size == kinds.length) {
+                kinds = Arrays.copyOf(kinds, size * 2);
+                left = Arrays.copyOf(left, size * 2);
+                right = Arrays.copyOf(right, size * 2);
+                constants = Arrays.copyOf(constants, size * 2);
+            }
+            kinds[size] = kind;
+            left[size] = leftOperand;
+            right[size] = rightOperand;
+            constants[size] = constant;
+            return size++;
+        }
+
+        private int constant(double value) {
+            return emit(CONSTANT, -1, -1, value);
+        }
+
+        private int add(int leftOperand, int rightOperand) {
+            if (kinds[leftOperand] == CONSTANT && kinds[rightOperand] == CONSTANT) {
+                return constant(constants[leftOperand] + constants[rightOperand]);
+            }
+            return emit(ADD, leftOperand, rightOperand, 0);
+        }
+
+        private int multiply(int leftOperand, int rightOperand) {
+            if (kinds[leftOperand] == CONSTANT && kinds[rightOperand] == CONSTANT) {
+                return constant(constants[leftOperand] * constants[rightOperand]);
+            }
+            return emit(MULTIPLY, leftOperand, rightOperand, 0);
+        }
+
+        @Override
+        public Integer number(Number node) {
+            return constant(node.getValue());
+        }
+
+        @Override
+        public Integer variable(Variable node) {
+            final Integer slot = slots.get(node.name());
+            if (slot == null) {
+                throw new IllegalArgumentException("variable " + node.name() + " is not in the variable order");
+            }
+            return emit(VARIABLE, slot, -1, 0);
+        }
+
+        @Override
+        public Integer plus(Plus node, Integer leftResult, Integer rightResult) {
+            return add(leftResult, rightResult);
+        }
+
+        @Override
+        public Integer times(Times node, Integer leftResult, Integer rightResult) {
+            return multiply(leftResult, rightResult);
+        }
+
+        @Override
+        public Integer sum(Sum node, List<Integer> operands) {
+            int result = operands.get(0);
+            for (int i = 1; i < operands.size(); i++) {
+                result = add(result, operands.get(i));
+            }
+            return result;
+        }
+
+        @Override
+        public Integer product(Product node, List<Integer> operands) {
+            int result = operands.get(0);
+            for (int i = 1; i < operands.size(); i++) {
+                result = multiply(result, operands.get(i));
+            }
+            return result;
+        }
+    }
+}
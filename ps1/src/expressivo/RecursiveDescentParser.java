@@ -0,0 +1,175 @@
+package expressivo;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Hand-written parser for the grammar in Expression.g.
+ *
+ * <p>Tokenizes and parses in a single left-to-right pass, building Number,
+ * Variable, Sum and Product nodes directly with no intermediate parse tree,
+ * exactly as Expression.buildAST does:
+ *
+ *   sum       ::= product ('+' product)*
+ *   product   ::= primitive ('*' primitive)*
+ *   primitive ::= number | variable | '(' sum ')'
+ *   number    ::= [0-9]+ | [0-9]* '.' [0-9]+
+ *   variable  ::= [a-zA-Z]+
+ *
+ * with spaces allowed between any two tokens.
+ *
+ * <p>The rules for sum and product loop rather than recurse, and the sum inside
+ * each pair of parentheses is kept on an explicit stack of groups rather than
+ * the call stack, so input nested to any depth is parsed.
+ */
+final class RecursiveDescentParser {
+
+    private final CharSequence input;
+    private int position;
+    // Rep invariant:
+    //    input != null and 0 <= position <= input.length()
+    // Abstraction Function:
+    //   represents the state of parsing input, where input[0..position) has been consumed
+
+    private void checkRep() {
+        assert input != null && position >= 0 && position <= input.length();
+    }
+
+    private RecursiveDescentParser(CharSequence input) {
+        this.input = input;
+        this.position = 0;
+        checkRep();
+    }
+
+    /**
+     * Parse an expression.
+     * @param input expression to parse, as defined in the PS1 handout.
+     * @return expression AST for the input, structurally equal to the one built
+     *         by Expression.buildAST from the grammar-based parse of input
+     * @throws IllegalArgumentException if the expression is invalid
+     */
+    static Expression parse(CharSequence input) {
+        final RecursiveDescentParser parser = new RecursiveDescentParser(input);
+        final Expression result = parser.sum();
+        parser.skipWhitespace();
+        if (!parser.atEnd()) {
+            throw parser.error("unexpected '" + parser.peek() + "'");
+        }
+        return result;
+    }
+
+    /*
+     * Parse a sum, and every sum in parentheses within it, with groups holding
+     * the partly parsed sums enclosing the current one.
+     */
+    private Expression sum() {
+        final Deque<Group> enclosing = new ArrayDeque<>();
+        Group group = new Group();
+        while (true) {
+            // primitive
+            if (accept('(')) {
+                enclosing.push(group);
+                group = new Group();
+                continue;
+            }
+            Expression operand = !atEnd() && isLetter(peek()) ? variable() : number();
+            // the operators and closing parentheses after it, up to the next primitive
+            while (true) {
+                group.products.add(operand);
+                if (accept('*')) {
+                    break;
+                }
+                group.sums.add(Expression.product(group.products.toArray(new Expression[0])));
+                group.products.clear();
+                if (accept('+')) {
+                    break;
+                }
+                operand = Expression.sum(group.sums.toArray(new Expression[0]));
+                if (enclosing.isEmpty()) {
+                    return operand;
+                }
+                if (!accept(')')) {
+                    throw error("expected ')'");
+                }
+                group = enclosing.pop();
+            }
+        }
+    }
+
+    /*
+     * The operands parsed so far of a sum, and of its product being parsed.
+     */
+    private static final class Group {
+        private final List<Expression> sums = new ArrayList<>();
+        private final List<Expression> products = new ArrayList<>();
+    }
+
+    private Expression variable() {
+        final int start = position;
+        while (!atEnd() && isLetter(peek())) {
+            position++;
+        }
+        return Expression.variable(input.subSequence(start, position).toString());
+    }
+
+    private Expression number() {
+        final int start = position;
+        skipDigits();
+        if (!atEnd() && peek() == '.') {
+            position++;
+            final int fractionStart = position;
+            skipDigits();
+            if (position == fractionStart) {
+                throw error("expected digits after '.'");
+            }
+        }
+        if (position == start) {
+            throw error(atEnd() ? "unexpected end of input" : "unexpected '" + peek() + "'");
+        }
+        return Expression.number(Double.parseDouble(input.subSequence(start, position).toString()));
+    }
+
+    /*
+     * Skip whitespace, then consume c if it is the next character.
+     * Returns true iff c was consumed.
+     */
+    private boolean accept(char c) {
+        skipWhitespace();
+        if (!atEnd() && peek() == c) {
+            position++;
+            skipWhitespace();
+            return true;
+        }
+        return false;
+    }
+
+    private void skipWhitespace() {
+        while (!atEnd() && peek() == ' ') {
+            position++;
+        }
+    }
+
+    private void skipDigits() {
+        while (!atEnd() && peek() >= '0' && peek() <= '9') {
+            position++;
+        }
+    }
+
+    private boolean atEnd() {
+        return position >= input.length();
+    }
+
+    private char peek() {
+        return input.charAt(position);
+    }
+
+    private static boolean isLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException("expression is invalid at position " + position + ": " + message);
+    }
+}
@@ -0,0 +1,42 @@
+package expressivo;
+
+/**
+ * ColumnKernels as plain counted loops, which HotSpot's C2 compiler unrolls
+ * and vectorizes with whatever SIMD instructions the CPU has.
+ */
+final class ScalarKernels implements ColumnKernels {
+
+    /** The only instance; the class is stateless. */
+    static final ScalarKernels INSTANCE = new ScalarKernels();
+
+    private ScalarKernels() {
+    }
+
+    @Override
+    public void add(double[] x, int xOffset, double[] y, int yOffset, double[] out, int length) {
+        for (int k = 0; k < length; k++) {
+            out[k] = x[xOffset + k] + y[yOffset + k];
+        }
+    }
+
+    @Override
+    public void add(double[] x, int xOffset, double c, double[] out, int length) {
+        for (int k = 0; k < length; k++) {
+            out[k] = x[xOffset + k] + c;
+        }
+    }
+
+    @Override
+    public void multiply(double[] x, int xOffset, double[] y, int yOffset, double[] out, int length) {
+        for (int k = 0; k < length; k++) {
+            out[k] = x[xOffset + k] * y[yOffset + k];
+        }
+    }
+
+    @Override
+    public void multiply(double[] x, int xOffset, double c, double[] out, int length) {
+        for (int k = 0; k < length; k++) {
+            out[k] = x[xOffset + k] * c;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package expressivo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Substitution of variable values and folding of numeric operations, as
+ * specified by Expression.simplify, computed bottom-up with Traversal.fold.
+ *
+ * <p>A product of numbers that would be NaN, which no Number can hold, is left
+ * unfolded: numbers that overflow to infinity and are then multiplied by 0.
+ */
+final class Simplification implements Fold<Expression> {
+
+    private final Map<String, Double> environment;
+
+    /**
+     * @param environment mapping from variables to numerical values
+     */
+    Simplification(Map<String, Double> environment) {
+        this.environment = environment;
+    }
+
+    /**
+     * @param expression expression to simplify
+     * @param environment mapping from variables to numerical values
+     * @return expression.simplify(environment), computed without recursion
+     */
+    static Expression simplify(Expression expression, Map<String, Double> environment) {
+        return Traversal.fold(expression, new Simplification(environment));
+    }
+
+    @Override
+    public Expression number(Number node) {
+        return node.simplify(environment);
+    }
+
+    @Override
+    public Expression variable(Variable node) {
+        return node.simplify(environment);
+    }
+
+    @Override
+    public Expression plus(Plus node, Expression left, Expression right) {
+        if (left.hasValue() && right.hasValue()) {
+            return Expression.number(left.getValue() + right.getValue());
+        } else {
+            return Expression.plus(left, right);
+        }
+    }
+
+    @Override
+    public Expression times(Times node, Expression left, Expression right) {
+        if (left.hasValue() && right.hasValue() && !Double.isNaN(left.getValue() * right.getValue())) {
+            return Expression.number(left.getValue() * right.getValue());
+        } else {
+            return Expression.times(left, right);
+        }
+    }
+
+    /*
+     * As for the left-nested chain of plus(): the leading operands that simplify to
+     * numbers are added up, and the rest are kept as they are.
+     */
+    @Override
+    public Expression sum(Sum node, List<Expression> operands) {
+        final List<Expression> result = new ArrayList<>();
+        int i = 0;
+        if (operands.get(0).hasValue()) {
+            double value = operands.get(0).getValue();
+            i++;
+            while (i < operands.size() && operands.get(i).hasValue()) {
+                value += operands.get(i).getValue();
+                i++;
+            }
+            result.add(Expression.number(value));
+        }
+        result.addAll(operands.subList(i, operands.size()));
+        return Expression.sum(result.toArray(new Expression[0]));
+    }
+
+    /*
+     * As for the left-nested chain of times(): the leading operands that simplify to
+     * numbers are multiplied together, and the rest are kept as they are.
+     */
+    @Override
+    public Expression product(Product node, List<Expression> operands) {
+        final List<Expression> result = new ArrayList<>();
+        int i = 0;
+        if (operands.get(0).hasValue()) {
+            double value = operands.get(0).getValue();
+            i++;
+            while (i < operands.size() && operands.get(i).hasValue()) {
+                value *= operands.get(i).getValue();
+                i++;
+            }
+            if (Double.isNaN(value)) {
+                return Expression.product(operands.toArray(new Expression[0]));
+            }
+            result.add(Expression.number(value));
+        }
+        result.addAll(operands.subList(i, operands.size()));
+        return Expression.product(result.toArray(new Expression[0]));
+    }
+}
@@ -0,0 +1,34 @@
+package expressivo;
+
+/**
+ * An n-ary sum, stored as a flat array of operands instead of a chain of Plus nodes.
+ *
+ * <p>A Sum of operands a1, a2, ..., an is the same expression as the left-nested
+ * chain of Plus nodes ((a1 + a2) + ...) + an: it is equal to that chain and to any
+ * other Sum or Plus with the same left-nested operands, has the same hashCode, and
+ * has the same toString. Only right operands keep their own grouping, so
+ * a + (b + c) remains distinct from (a + b) + c.
+ */
+public class Sum extends NaryExpression {
+
+    // Rep invariant, abstraction function and safety from rep exposure:
+    //   as for NaryExpression, representing the sum of the operands
+
+    /**
+     * Make a sum of two or more operands. If the first operand is itself a Plus or
+     * Sum, its operands are spliced in, since (a + b) + c is the same sum as a + b + c.
+     * @param operands the operands, left to right; at least two
+     */
+    public Sum(Expression... operands) {
+        super(operands, true);
+    }
+
+    private Sum(Sum whole, int count) {
+        super(whole, count);
+    }
+
+    @Override
+    Sum withCount(int count) {
+        return new Sum(this, count);
+    }
+}
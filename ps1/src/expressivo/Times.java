@@ -6,8 +6,10 @@ public class Times implements Expression {
     
     private final Expression left;
     private final Expression right;
+    private final int hashCode;
     // Rep invariant:
     //    left != null and right != null
+    //    hashCode == 31 * (31 + left.hashCode()) + right.hashCode()
     // Abstraction Function:
     //   represent the left and right operands of a product
     
@@ -16,64 +18,69 @@ public class Times implements Expression {
     // by passing -enableassertions to Java
     private void checkRep() {
         assert left != null && right != null;
+        assert hashCode == 31 * (31 + left.hashCode()) + right.hashCode();
     }
 
     public Times(Expression left, Expression right) {
         this.left = left;
         this.right = right;
+        // children are immutable and memoize their own hash, so this is O(1)
+        this.hashCode = 31 * (31 + left.hashCode()) + right.hashCode();
         checkRep();
     }
+    
+    /**
+     * @return left operand of this product
+     */
+    Expression left() {
+        return this.left;
+    }
+    
+    /**
+     * @return right operand of this product
+     */
+    Expression right() {
+        return this.right;
+    }
 
     @Override
     public Expression plus(Expression rhs) {
-        return new Plus(this, rhs);
+        return Expression.plus(this, rhs);
     }
 
     @Override
     public Expression times(Expression rhs) {
-        return new Times(this, rhs);
+        return Expression.times(this, rhs);
     }
 
     @Override 
     public String toString() {
-        return this.left.toString() + "*" + this.right.toString();
+        return Printer.print(this);
     }
     
     @Override
     public boolean equals(Object thatObject) {
-        if (!(thatObject instanceof Times)) return false;
-        Times thatTimes = (Times) thatObject;
+        if (this == thatObject) return true;
+        if (!(thatObject instanceof Expression)) return false;
+        Expression thatExpression = (Expression) thatObject;
+        if (this.hashCode != thatExpression.hashCode()) return false;
         
-        return this.left.equals(thatTimes.left) && this.right.equals(thatTimes.right);
+        return Traversal.equal(this, thatExpression);
     }
     
     @Override
     public int hashCode() {
-        int hashCode = 1;
-        hashCode = 31 * hashCode + this.left.hashCode();
-        hashCode = 31 * hashCode + this.right.hashCode();
-        
-        return hashCode;
+        return this.hashCode;
     }
 
     @Override
     public Expression differentiate(String variable) {
-        Expression leftDerivative = this.left.differentiate(variable);
-        Expression rightDerivative = this.right.differentiate(variable);
-        
-        return new Plus(new Times(this.left, rightDerivative), new Times(this.right, leftDerivative));
+        return Differentiation.differentiate(this, variable);
     }
 
     @Override
     public Expression simplify(Map<String, Double> environment) {
-        Expression leftSimplified = this.left.simplify(environment);
-        Expression rightSimplified = this.right.simplify(environment);
-        
-        if (leftSimplified.hasValue() && rightSimplified.hasValue()) {
-            return new Number(leftSimplified.getValue() * rightSimplified.getValue());
-        } else {
-            return new Times(leftSimplified, rightSimplified);
-        }
+        return Simplification.simplify(this, environment);
     }
 
     @Override
@@ -0,0 +1,386 @@
+package expressivo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stack-safe traversals of Expression trees.
+ *
+ * <p>The parsers build sums and products left-nested, so an expression with n
+ * terms is a tree of depth n. Every traversal here keeps its pending work on an
+ * explicit heap-allocated stack rather than the Java call stack, so it handles
+ * trees of any depth without raising -Xss.
+ */
+final class Traversal {
+
+    // phases of a node on a NodeStack; a phase >= 0 is "between operands phase and phase+1"
+    private static final int ENTER = -1;
+    private static final int EXIT = -2;
+
+    private Traversal() {
+        throw new AssertionError("noninstantiable");
+    }
+
+    /**
+     * Compute a result bottom-up over an expression. A node for which
+     * fold.cached returns a result is not visited further.
+     * @param root expression to fold
+     * @param fold computation to apply at each node
+     * @return fold's result for root
+     */
+    static <R> R fold(Expression root, Fold<R> fold) {
+        return fold(root, fold, null);
+    }
+
+    /**
+     * Compute a result bottom-up over an expression, once for each distinct node
+     * instance: a subexpression shared by several parents, as built by the factory
+     * methods of Expression, is folded once and its result reused. The work is
+     * proportional to the number of node instances, not the size of the tree.
+     * @param root expression to fold
+     * @param fold computation to apply at each node
+     * @return fold's result for root
+     */
+    static <R> R foldShared(Expression root, Fold<R> fold) {
+        return fold(root, fold, new IdentityHashMap<>());
+    }
+
+    /*
+     * Fold, recording the result for each node in done if it is not null and
+     * reusing a recorded result instead of visiting the node again.
+     */
+    private static <R> R fold(Expression root, Fold<R> fold, Map<Expression, R> done) {
+        final NodeStack pending = new NodeStack();
+        final ResultStack<R> results = new ResultStack<>();
+        pending.push(root, ENTER);
+        while (!pending.isEmpty()) {
+            final int phase = pending.topPhase();
+            final Expression node = pending.pop();
+            final int arity = arity(node);
+            if (phase == ENTER && done != null && done.containsKey(node)) {
+                results.push(done.get(node));
+                continue;
+            }
+            final R result;
+            if (arity == 0) {
+                result = node instanceof Variable
+                        ? fold.variable((Variable) node)
+                        : fold.number((Number) node);
+            } else if (phase == ENTER) {
+                final R cached = fold.cached(node);
+                if (cached != null) {
+                    results.push(cached);
+                    if (done != null) {
+                        done.put(node, cached);
+                    }
+                    continue;
+                }
+                pending.push(node, EXIT);
+                for (int i = arity - 1; i >= 0; i--) {
+                    pending.push(operand(node, i), ENTER);
+                }
+                continue;
+            } else if (node instanceof Plus) {
+                final R right = results.pop();
+                final R left = results.pop();
+                result = fold.plus((Plus) node, left, right);
+            } else if (node instanceof Times) {
+                final R right = results.pop();
+                final R left = results.pop();
+                result = fold.times((Times) node, left, right);
+            } else if (node instanceof Sum) {
+                result = fold.sum((Sum) node, results.pop(arity));
+            } else {
+                result = fold.product((Product) node, results.pop(arity));
+            }
+            if (arity > 0) {
+                fold.computed(node, result);
+            }
+            results.push(result);
+            if (done != null) {
+                done.put(node, result);
+            }
+        }
+        return results.pop();
+    }
+
+    /**
+     * Visit every node of an expression depth-first, in order.
+     * @param root expression to visit
+     * @param walker receives the events described in Walker
+     */
+    static void walk(Expression root, Walker walker) {
+        final NodeStack pending = new NodeStack();
+        pending.push(root, ENTER);
+        while (!pending.isEmpty()) {
+            final int phase = pending.topPhase();
+            final Expression node = pending.pop();
+            final int arity = arity(node);
+            if (arity == 0) {
+                walker.leaf(node);
+            } else if (phase == ENTER) {
+                walker.enter(node);
+                pending.push(node, EXIT);
+                for (int i = arity - 1; i > 0; i--) {
+                    pending.push(operand(node, i), ENTER);
+                    pending.push(node, i - 1);
+                }
+                pending.push(operand(node, 0), ENTER);
+            } else if (phase == EXIT) {
+                walker.exit(node);
+            } else {
+                walker.between(node, phase);
+            }
+        }
+    }
+
+    /**
+     * Structural equality, as specified by Expression.equals. In particular a Sum
+     * (resp. Product) is equal to the left-nested chain of Plus (resp. Times) with
+     * the same operands.
+     * @param first an expression
+     * @param second an expression
+     * @return true iff first and second are structurally equal
+     */
+    static boolean equal(Expression first, Expression second) {
+        final NodeStack pending = new NodeStack();
+        pending.push(first, ENTER);
+        pending.push(second, ENTER);
+        while (!pending.isEmpty()) {
+            final Expression b = pending.pop();
+            final Expression a = pending.pop();
+            if (a == b) {
+                continue;
+            }
+            if (arity(a) == 0) {
+                if (!a.equals(b)) {
+                    return false;
+                }
+                continue;
+            }
+            final boolean sum = isSum(a);
+            if ((sum ? !isSum(b) : !isProduct(b)) || a.hashCode() != b.hashCode()) {
+                return false;
+            }
+            if (a.getClass() == b.getClass() && arity(a) == arity(b)) {
+                // same representation: operands correspond one to one
+                for (int i = 0; i < arity(a); i++) {
+                    pending.push(operand(a, i), ENTER);
+                    pending.push(operand(b, i), ENTER);
+                }
+            } else {
+                final List<Expression> aOperands = spine(a, sum);
+                final List<Expression> bOperands = spine(b, sum);
+                if (aOperands.size() != bOperands.size()) {
+                    return false;
+                }
+                for (int i = 0; i < aOperands.size(); i++) {
+                    pending.push(aOperands.get(i), ENTER);
+                    pending.push(bOperands.get(i), ENTER);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param node any expression
+     * @return true iff node is a Plus or Sum
+     */
+    static boolean isSum(Expression node) {
+        return node instanceof Plus || node instanceof Sum;
+    }
+
+    /**
+     * @param node any expression
+     * @return true iff node is a Times or Product
+     */
+    static boolean isProduct(Expression node) {
+        return node instanceof Times || node instanceof Product;
+    }
+
+    /**
+     * @param node any expression
+     * @return number of operands of node: 2 for Plus and Times, size() for Sum
+     *         and Product, 0 for leaves
+     */
+    static int arity(Expression node) {
+        if (node instanceof Plus || node instanceof Times) {
+            return 2;
+        } else if (node instanceof Sum) {
+            return ((Sum) node).size();
+        } else if (node instanceof Product) {
+            return ((Product) node).size();
+        } else {
+            return 0;
+        }
+    }
+
+    /**
+     * @param root any expression
+     * @return number of nodes of root viewed as a tree, counting a shared
+     *         subexpression once per use; computed once per node instance
+     */
+    static long size(Expression root) {
+        return foldShared(root, new Size());
+    }
+
+    /**
+     * @param node a Plus, Times, Sum or Product
+     * @param index 0 <= index < arity(node)
+     * @return operand of node at index, counting from the left
+     */
+    static Expression operand(Expression node, int index) {
+        if (node instanceof Plus) {
+            return index == 0 ? ((Plus) node).left() : ((Plus) node).right();
+        } else if (node instanceof Times) {
+            return index == 0 ? ((Times) node).left() : ((Times) node).right();
+        } else if (node instanceof Sum) {
+            return ((Sum) node).operand(index);
+        } else {
+            return ((Product) node).operand(index);
+        }
+    }
+
+    /**
+     * Operands of the left-nested chain of sums (or products) at node: e.g.
+     * [a, b, c, d] for ((a + b) + c) + d, for Sum(a, b, c) + d, and for Sum(a, b, c, d);
+     * [a, b + c] for a + (b + c); and [node] if node is not a sum.
+     * @param node any expression
+     * @param sum true to follow Plus and Sum, false to follow Times and Product
+     * @return operands of the chain at node, left to right; none is a sum
+     *         (resp. product) except possibly as a right operand
+     */
+    static List<Expression> spine(Expression node, boolean sum) {
+        final List<Expression> rights = new ArrayList<>();
+        Expression current = node;
+        while (current instanceof Plus && sum || current instanceof Times && !sum) {
+            rights.add(operand(current, 1));
+            current = operand(current, 0);
+        }
+        final List<Expression> operands;
+        if (current instanceof Sum && sum) {
+            operands = new ArrayList<>(((Sum) current).operands());
+        } else if (current instanceof Product && !sum) {
+            operands = new ArrayList<>(((Product) current).operands());
+        } else {
+            operands = new ArrayList<>();
+            operands.add(current);
+        }
+        Collections.reverse(rights);
+        operands.addAll(rights);
+        return operands;
+    }
+
+    /*
+     * Growable stack of (node, phase) pairs.
+     */
+    private static final class NodeStack {
+        private Expression[] nodes = new Expression[16];
+        private int[] phases = new int[16];
+        private int size = 0;
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void push(Expression node, int phase) {
+            if (size == nodes.length) {
+                nodes = Arrays.copyOf(nodes, size * 2);
+                phases = Arrays.copyOf(phases, size * 2);
+            }
+            nodes[size] = node;
+            phases[size] = phase;
+            size++;
+        }
+
+        int topPhase() {
+            return phases[size - 1];
+        }
+
+        Expression pop() {
+            final Expression node = nodes[--size];
+            nodes[size] = null;
+            return node;
+        }
+    }
+
+    /*
+     * Growable stack of fold results.
+     */
+    private static final class ResultStack<R> {
+        private Object[] results = new Object[16];
+        private int size = 0;
+
+        void push(R result) {
+            if (size == results.length) {
+                results = Arrays.copyOf(results, size * 2);
+            }
+            results[size++] = result;
+        }
+
+        @SuppressWarnings("unchecked")
+        R pop() {
+            final R result = (R) results[--size];
+            results[size] = null;
+            return result;
+        }
+
+        /* Pop the top count results, returning them in the order they were pushed. */
+        @SuppressWarnings("unchecked")
+        List<R> pop(int count) {
+            final Object[] popped = Arrays.copyOfRange(results, size - count, size);
+            Arrays.fill(results, size - count, size, null);
+            size -= count;
+            return (List<R>) Arrays.asList(popped);
+        }
+    }
+
+    /*
+     * Number of nodes in the tree at each node.
+     */
+    private static final class Size implements Fold<Long> {
+
+        @Override
+        public Long number(Number node) {
+            return 1L;
+        }
+
+        @Override
+        public Long variable(Variable node) {
+            return 1L;
+        }
+
+        @Override
+        public Long plus(Plus node, Long left, Long right) {
+            return 1 + left + right;
+        }
+
+        @Override
+        public Long times(Times node, Long left, Long right) {
+            return 1 + left + right;
+        }
+
+        @Override
+        public Long sum(Sum node, List<Long> operands) {
+            return 1 + total(operands);
+        }
+
+        @Override
+        public Long product(Product node, List<Long> operands) {
+            return 1 + total(operands);
+        }
+
+        private static long total(List<Long> operands) {
+            long total = 0;
+            for (long operand : operands) {
+                total += operand;
+            }
+            return total;
+        }
+    }
+}
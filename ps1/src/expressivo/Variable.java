@@ -24,15 +24,22 @@ public class Variable implements Expression {
         this.name = name;
         checkRep();
     }
+    
+    /**
+     * @return name of this variable
+     */
+    String name() {
+        return this.name;
+    }
 
     @Override
     public Expression plus(Expression rhs) {
-        return new Plus(this, rhs);
+        return Expression.plus(this, rhs);
     }
 
     @Override
     public Expression times(Expression rhs) {
-        return new Times(this, rhs);
+        return Expression.times(this, rhs);
     }
 
     @Override 
@@ -56,16 +63,16 @@ public class Variable implements Expression {
     @Override
     public Expression differentiate(String variable) {
         if (this.name.equals(variable)) {
-            return new Number(1);
+            return Expression.number(1);
         } else {
-            return new Number(0);
+            return Expression.number(0);
         }
     }
 
     @Override
     public Expression simplify(final Map<String, Double> environment) {
         if (environment.containsKey(this.name)) {
-            return new Number(environment.get(this.name));
+            return Expression.number(environment.get(this.name));
         } else {
             return this;
         }
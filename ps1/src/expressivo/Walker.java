@@ -0,0 +1,37 @@
+package expressivo;
+
+/**
+ * A depth-first, in-order visit of an Expression, as performed by Traversal.walk.
+ * For a Plus, Times, Sum or Product node with operands a0, ..., an the events are
+ *   enter(node), [events for a0], between(node, 0), [events for a1], between(node, 1),
+ *   ..., between(node, n-1), [events for an], exit(node)
+ * where a Plus or Times has the two operands left() and right(); for a leaf the
+ * only event is leaf(node).
+ */
+interface Walker {
+
+    /**
+     * Visit a Number or Variable.
+     * @param node a leaf
+     */
+    void leaf(Expression node);
+
+    /**
+     * Start visiting an operator node, before its first operand.
+     * @param node a sum or product
+     */
+    void enter(Expression node);
+
+    /**
+     * Continue visiting an operator node, between two of its operands.
+     * @param node a sum or product
+     * @param index index of the operand just visited, from 0 for the first
+     */
+    void between(Expression node, int index);
+
+    /**
+     * Finish visiting an operator node, after its last operand.
+     * @param node a sum or product
+     */
+    void exit(Expression node);
+}
@@ -0,0 +1,175 @@
+package expressivo;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+/**
+ * Tests for Expression.batch.
+ */
+public class BatchEvaluatorTest {
+
+    // Testing strategy:
+    //   expression: number, variable, sum, product, constant subexpressions,
+    //     nested mix, flat Sum and Product
+    //   rows: 0, 1, less than a block, several blocks with a partial last block
+    //   eval range: whole array, a subrange (other rows unchanged)
+    //   evalParallel: chunk size 1, not a multiple of a block, larger than the rows;
+    //     pool of 1 thread, several threads; chunk size 0
+    //   kernels: scalar, vector (if the JVM has jdk.incubator.vector); operand
+    //     offsets 0 and not, lengths multiple of the SIMD width and not
+    //   columns: too few, too short
+    //   results must equal simplify(environment).getValue() for each row exactly
+
+    private static final String[] EXPRESSIONS = {
+        "0", "2.5", "x", "x + y", "x * y", "2*3 + x", "x*x*x + x*y + z + 1",
+        "(x + 2)*(y + 3.75)*(z + 0.125) + x*y*z", "3 + (4 + (x*(5 + y)))",
+    };
+    private static final String[] ORDER = { "x", "y", "z" };
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    @Test
+    public void testBatchMatchesSimplify() {
+        for (int rows : new int[] { 0, 1, 7, 3 * BatchEvaluator.BLOCK_ROWS + 5 }) {
+            double[][] columns = randomColumns(rows, new Random(rows));
+            for (String input : EXPRESSIONS) {
+                Expression e = Expression.parse(input);
+                double[] results = new double[rows];
+                e.batch(ORDER).eval(columns, results);
+                for (int row = 0; row < rows; row++) {
+                    assertEquals(input, simplified(e, columns, row), results[row], 0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testRange() {
+        Expression e = Expression.parse("x*y + z");
+        double[][] columns = randomColumns(2000, new Random(6005));
+        double[] results = new double[2000];
+        results[0] = -1;
+        results[1999] = -1;
+        e.batch(ORDER).eval(columns, results, 1, 1999);
+        assertEquals(-1, results[0], 0);
+        assertEquals(-1, results[1999], 0);
+        for (int row = 1; row < 1999; row++) {
+            assertEquals(simplified(e, columns, row), results[row], 0);
+        }
+    }
+
+    @Test
+    public void testParallelMatchesSequential() {
+        final int rows = 10 * BatchEvaluator.BLOCK_ROWS + 17;
+        double[][] columns = randomColumns(rows, new Random(6005));
+        BatchEvaluator evaluator = Expression.parse(EXPRESSIONS[7]).batch(ORDER);
+        double[] expected = new double[rows];
+        evaluator.eval(columns, expected);
+        for (int threads : new int[] { 1, 4 }) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                for (int chunkRows : new int[] { 1, 3000, rows + 1 }) {
+                    double[] results = new double[rows];
+                    evaluator.evalParallel(columns, results, pool, chunkRows);
+                    assertArrayEquals(expected, results, 0);
+                }
+            } finally {
+                pool.shutdown();
+            }
+        }
+        double[] results = new double[rows];
+        evaluator.evalParallel(columns, results);
+        assertArrayEquals(expected, results, 0);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testParallelChunkSizeZero() {
+        Expression.parse("x").batch("x").evalParallel(new double[][] { new double[4] }, new double[4],
+                ForkJoinPool.commonPool(), 0);
+    }
+
+    @Test
+    public void testVectorKernelsMatchScalar() {
+        Optional<ColumnKernels> vector = Kernels.vector();
+        if (!vector.isPresent()) {
+            // run with --add-modules jdk.incubator.vector to test the vector kernels
+            assertSame(ScalarKernels.INSTANCE, Kernels.preferred());
+            return;
+        }
+        final Random random = new Random(6005);
+        double[] x = new double[1100];
+        double[] y = new double[1100];
+        for (int k = 0; k < x.length; k++) {
+            x[k] = random.nextDouble() * 1e3;
+            y[k] = random.nextDouble();
+        }
+        for (int length : new int[] { 0, 1, 3, 8, 1023, 1024 }) {
+            for (int offset : new int[] { 0, 5 }) {
+                double[] expected = new double[length];
+                double[] actual = new double[length];
+                ScalarKernels.INSTANCE.add(x, offset, y, offset + 1, expected, length);
+                vector.get().add(x, offset, y, offset + 1, actual, length);
+                assertArrayEquals(expected, actual, 0);
+                ScalarKernels.INSTANCE.add(x, offset, 0.1, expected, length);
+                vector.get().add(x, offset, 0.1, actual, length);
+                assertArrayEquals(expected, actual, 0);
+                ScalarKernels.INSTANCE.multiply(x, offset, y, offset + 1, expected, length);
+                vector.get().multiply(x, offset, y, offset + 1, actual, length);
+                assertArrayEquals(expected, actual, 0);
+                ScalarKernels.INSTANCE.multiply(x, offset, 0.1, expected, length);
+                vector.get().multiply(x, offset, 0.1, actual, length);
+                assertArrayEquals(expected, actual, 0);
+            }
+        }
+
+        final int rows = 3 * BatchEvaluator.BLOCK_ROWS + 5;
+        double[][] columns = randomColumns(rows, random);
+        for (String input : EXPRESSIONS) {
+            Program program = Program.of(Expression.parse(input), BytecodeCompiler.slots(ORDER));
+            double[] expected = new double[rows];
+            double[] actual = new double[rows];
+            new BatchEvaluator(program, ORDER.length, ScalarKernels.INSTANCE).eval(columns, expected);
+            new BatchEvaluator(program, ORDER.length, vector.get()).eval(columns, actual);
+            assertArrayEquals(input, expected, actual, 0);
+        }
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testTooFewColumns() {
+        Expression.parse("x + y").batch("x", "y").eval(new double[][] { new double[4] }, new double[4]);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testShortColumn() {
+        Expression.parse("x + y").batch("x", "y").eval(new double[][] { new double[4], new double[3] },
+                new double[4]);
+    }
+
+    private static double[][] randomColumns(int rows, Random random) {
+        double[][] columns = new double[ORDER.length][rows];
+        for (int row = 0; row < rows; row++) {
+            columns[0][row] = random.nextDouble() * 100;
+            columns[1][row] = random.nextInt(50) / 4.0;
+            columns[2][row] = random.nextDouble() * 1e6;
+        }
+        return columns;
+    }
+
+    private static double simplified(Expression e, double[][] columns, int row) {
+        Map<String, Double> environment = new HashMap<>();
+        for (int i = 0; i < ORDER.length; i++) {
+            environment.put(ORDER[i], columns[i][row]);
+        }
+        return e.simplify(environment).getValue();
+    }
+}
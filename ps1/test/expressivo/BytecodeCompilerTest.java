@@ -0,0 +1,186 @@
+package expressivo;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for Expression.compile and Expression.bind.
+ */
+public class BytecodeCompilerTest {
+
+    // Testing strategy:
+    //   expression: number (0, 1, other), variable, sum, product, nested mix,
+    //     many distinct constants, many variables (slot >5, >127)
+    //   variableOrder: exact variables, extra variables, different order,
+    //     missing variable, duplicate variable
+    //   expression too large for one JVM method; deep right-nested expression
+    //   common subexpressions: repeated subtrees, commuted operands, higher derivatives
+    //     of products; shared program shorter than unshared, same results
+    //   compiled and bound results must equal simplify(environment).getValue() exactly
+
+    private static final String[] EXPRESSIONS = {
+        "0", "1", "2.5", "x", "x + y", "x * y", "x*x*x + x*y + z + 1",
+        "(x + 2)*(y + 3.75)*(z + 0.125) + x*y*z", "3 + (4 + (x*(5 + y)))",
+    };
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    @Test
+    public void testCompiledMatchesSimplify() {
+        final String[] order = { "x", "y", "z", "unused" };
+        final Random random = new Random(6005);
+        for (String input : EXPRESSIONS) {
+            Evaluator evaluator = Expression.parse(input).compile(order);
+            for (int trial = 0; trial < 20; trial++) {
+                double[] values = new double[order.length];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = random.nextDouble() * 100;
+                }
+                assertEquals(input, simplified(Expression.parse(input), order, values),
+                        evaluator.eval(values), 0);
+            }
+        }
+    }
+
+    @Test
+    public void testBoundMatchesSimplify() {
+        final String[] order = { "z", "y", "x" };
+        final Random random = new Random(6005);
+        for (String input : EXPRESSIONS) {
+            Evaluator evaluator = Expression.parse(input).bind(order);
+            for (int trial = 0; trial < 20; trial++) {
+                double[] values = { random.nextDouble(), random.nextDouble() * 10, random.nextDouble() * 1e6 };
+                assertEquals(input, simplified(Expression.parse(input), order, values),
+                        evaluator.eval(values), 0);
+            }
+        }
+    }
+    
+    @Test
+    public void testTooLargeToCompile() {
+        final int count = 1 << 14;
+        final String[] order = { "x" };
+        final double[] values = { 0.75 };
+        Expression[] terms = new Expression[count];
+        for (int i = 0; i < count; i++) {
+            terms[i] = Expression.variable("x").times(Expression.number(i + 0.5));
+        }
+        // balanced sum, so that the recursive simplify used as the reference does not overflow
+        for (int width = count; width > 1; width /= 2) {
+            for (int i = 0; i < width / 2; i++) {
+                terms[i] = terms[2 * i].plus(terms[2 * i + 1]);
+            }
+        }
+        Expression e = terms[0];
+        assertEquals(simplified(e, order, values), e.compile(order).eval(values), 0);
+    }
+    
+    @Test
+    public void testDeepExpression() {
+        final int depth = 100_000;
+        final String[] order = { "x" };
+        final double[] values = { 0.5 };
+        final Expression x = Expression.variable("x");
+        Expression e = x;
+        double expected = 0.5;
+        for (int i = 0; i < depth; i++) {
+            if (i % 3 == 0) {
+                e = Expression.plus(x, e);
+                expected = 0.5 + expected;
+            } else if (i % 3 == 1) {
+                e = Expression.times(Expression.number(0.75), e);
+                expected = 0.75 * expected;
+            } else {
+                e = Expression.sum(x, e, Expression.number(0.25));
+                expected = 0.5 + expected + 0.25;
+            }
+        }
+        assertEquals(expected, e.bind(order).eval(values), 0);
+        assertEquals(expected, e.compile(order).eval(values), 0);
+    }
+    
+    @Test
+    public void testCommonSubexpressions() {
+        final String[] order = { "x", "y" };
+        Map<String, Integer> slots = BytecodeCompiler.slots(order);
+        Expression repeated = Expression.parse("(x + y)*(x + y) + (y + x)*2");
+        // x, y, x + y, (x + y)*(x + y), 2, (x + y)*2, sum
+        assertEquals(7, Program.of(repeated, slots).size());
+
+        Expression e = Expression.parse("(x + 1)*(x*y + 2)*(x + y + 3)*(y + 4)");
+        for (int n = 0; n < 3; n++) {
+            e = e.differentiate("x");
+        }
+        assertTrue(Program.of(e, slots).size() < Program.of(e, slots, false).size());
+        final Random random = new Random(6005);
+        Evaluator compiled = e.compile(order);
+        for (int trial = 0; trial < 20; trial++) {
+            double[] values = { random.nextDouble() * 10, random.nextDouble() * 10 };
+            assertEquals(simplified(e, order, values), compiled.eval(values), 0);
+        }
+    }
+
+    @Test
+    public void testVariableOrder() {
+        Expression e = Expression.parse("x + 2*y");
+        assertEquals(7.0, e.compile("x", "y").eval(new double[] { 1, 3 }), 0);
+        assertEquals(5.0, e.compile("y", "x").eval(new double[] { 1, 3 }), 0);
+    }
+
+    @Test
+    public void testManyVariablesAndConstants() {
+        final int count = 300;
+        String[] order = new String[count];
+        double[] values = new double[count];
+        Expression e = Expression.number(0.5);
+        for (int i = 0; i < count; i++) {
+            order[i] = name(i);
+            values[i] = i;
+            e = e.plus(Expression.variable(order[i]).times(Expression.number(i + 0.25)));
+        }
+        assertEquals(simplified(e, order, values), e.compile(order).eval(values), 0);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testMissingVariable() {
+        Expression.parse("x + y").compile("x");
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testBindMissingVariable() {
+        Expression.parse("x * y").bind("y");
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testDuplicateVariable() {
+        Expression.parse("x + y").compile("x", "y", "x");
+    }
+
+    private static double simplified(Expression e, String[] order, double[] values) {
+        Map<String, Double> environment = new HashMap<>();
+        for (int i = 0; i < order.length; i++) {
+            environment.put(order[i], values[i]);
+        }
+        return e.simplify(environment).getValue();
+    }
+
+    /*
+     * Distinct letters-only variable name for i >= 0.
+     */
+    private static String name(int i) {
+        StringBuilder name = new StringBuilder();
+        do {
+            name.append((char) ('a' + i % 26));
+            i /= 26;
+        } while (i > 0);
+        return name.toString();
+    }
+}
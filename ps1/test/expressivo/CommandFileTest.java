@@ -0,0 +1,87 @@
+package expressivo;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests for CommandFile and Main.Session.
+ */
+public class CommandFileTest {
+
+    // Testing strategy:
+    //   LineReader: buffer larger than the input, smaller than a line (grows);
+    //     line terminators "\n", "\r\n", none at the end; empty lines; empty input;
+    //     non-ASCII characters split across reads
+    //   run: command before any expression, expression, !d/d, !simplify, invalid
+    //     input; empty lines skipped; output equals executing each line in a Session
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    @Test
+    public void testLineReader() throws IOException {
+        final String input = "x + 1\r\n\nlong line \u00e9\u00e9\u00e9 of many bytes\n!d/d x\nlast";
+        for (int bufferSize : new int[] { 1, 3, 1024 }) {
+            assertEquals(Arrays.asList("x + 1", "", "long line \u00e9\u00e9\u00e9 of many bytes", "!d/d x", "last"),
+                    lines(input, bufferSize));
+        }
+        assertEquals(Arrays.asList(), lines("", 4));
+        assertEquals(Arrays.asList("x"), lines("x\n", 4));
+    }
+
+    @Test
+    public void testRun() throws IOException {
+        final String[] commands = {
+            "!d/dx", "x*x + y", "", "!d/dx", "!simplify x=2 y=3", "x +", "!d/d 1", "!simplify",
+        };
+        final StringWriter out = new StringWriter();
+        final long executed = CommandFile.run(reader(String.join("\n", commands), 16), out);
+        assertEquals(commands.length - 1, executed);
+
+        final Main.Session session = new Main.Session();
+        final StringBuilder expected = new StringBuilder();
+        for (String command : commands) {
+            if (!command.isEmpty()) {
+                expected.append(session.execute(command)).append('\n');
+            }
+        }
+        assertEquals(expected.toString(), out.toString());
+        final String[] output = out.toString().split("\n");
+        assertEquals("must enter an expression before using this command", output[0]);
+        assertEquals(Commands.differentiate("x*x + y", "x"), output[2]);
+        final HashMap<String, Double> environment = new HashMap<>();
+        environment.put("x", 2.0);
+        environment.put("y", 3.0);
+        assertEquals(Commands.simplify(output[2], environment), output[3]);
+        assertTrue(output[4].startsWith(IllegalArgumentException.class.getName()));
+        assertTrue(output[5].startsWith(Main.CommandSyntaxException.class.getName()));
+    }
+
+    private static CommandFile.LineReader reader(String input, int bufferSize) {
+        return new CommandFile.LineReader(
+                Channels.newChannel(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8))), bufferSize);
+    }
+
+    private static List<String> lines(String input, int bufferSize) throws IOException {
+        final List<String> lines = new ArrayList<>();
+        try (CommandFile.LineReader in = reader(input, bufferSize)) {
+            for (String line = in.readLine(); line != null; line = in.readLine()) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,172 @@
+package expressivo;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+/**
+ * Tests for CommandLexer and Environment.
+ */
+public class CommandLexerTest {
+
+    // Testing strategy:
+    //   parseDifferentiate: valid with and without trailing spaces; no variable,
+    //     non-letter, space before the variable
+    //   parseSimplify: no assignments, one, many; spaces around "=", trailing spaces;
+    //     repeated variable; missing space, name, "=" or value; bad value, bad value
+    //     followed by a syntax error; random inputs agree with the regular expressions
+    //   parseMetrics: no argument, each argument, trailing spaces; unknown argument,
+    //     missing space, extra word
+    //   Environment: empty, put new and existing names, grow beyond initial capacity,
+    //     clear and reuse; equals a HashMap with the same entries
+
+    private static final Pattern DIFFERENTIATE = Pattern.compile("!d/d([A-Za-z]+) *");
+    private static final Pattern ASSIGNMENT = Pattern.compile("([A-Za-z]+) *= *([^ ]+)");
+    private static final Pattern SIMPLIFY = Pattern.compile("!simplify( +" + ASSIGNMENT.pattern() + ")* *");
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    @Test
+    public void testParseDifferentiate() {
+        assertEquals("x", CommandLexer.parseDifferentiate("!d/dx"));
+        assertEquals("foo", CommandLexer.parseDifferentiate("!d/dfoo  "));
+        for (String invalid : new String[] { "!d/d", "!d/d1", "!d/d x", "!d/dx1", "!d/dx y" }) {
+            try {
+                CommandLexer.parseDifferentiate(invalid);
+                fail("expected CommandSyntaxException for " + invalid);
+            } catch (Main.CommandSyntaxException cse) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testParseMetrics() {
+        assertEquals(CommandLexer.MetricsAction.DUMP, CommandLexer.parseMetrics("!metrics"));
+        assertEquals(CommandLexer.MetricsAction.DUMP, CommandLexer.parseMetrics("!metrics  "));
+        assertEquals(CommandLexer.MetricsAction.ENABLE, CommandLexer.parseMetrics("!metrics on"));
+        assertEquals(CommandLexer.MetricsAction.DISABLE, CommandLexer.parseMetrics("!metrics  off "));
+        assertEquals(CommandLexer.MetricsAction.RESET, CommandLexer.parseMetrics("!metrics reset"));
+        for (String invalid : new String[] { "!metricsx", "!metricson", "!metrics yes", "!metrics on off", "!metrics 1" }) {
+            try {
+                CommandLexer.parseMetrics(invalid);
+                fail("expected CommandSyntaxException for " + invalid);
+            } catch (Main.CommandSyntaxException cse) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testParseSimplify() {
+        Environment environment = new Environment();
+        CommandLexer.parseSimplify("!simplify", environment);
+        assertTrue(environment.isEmpty());
+        CommandLexer.parseSimplify("!simplify x=1 y = 2.5  x=3 ", environment);
+        Map<String, Double> expected = new HashMap<>();
+        expected.put("x", 3.0);
+        expected.put("y", 2.5);
+        assertEquals(expected, environment);
+    }
+
+    @Test
+    public void testAgreesWithRegularExpressions() {
+        final String[] pieces = { " ", "  ", "x", "y", "ab", "=", "1", "2.5", "e", "1e3", "-", "!", "\t" };
+        final Random random = new Random(6005);
+        final Environment environment = new Environment();
+        for (int trial = 0; trial < 20000; trial++) {
+            final StringBuilder input = new StringBuilder(random.nextBoolean() ? "!simplify" : "!d/d");
+            for (int n = random.nextInt(10); n > 0; n--) {
+                input.append(pieces[random.nextInt(pieces.length)]);
+            }
+            final String command = input.toString();
+            assertEquals(command, expected(command), actual(command, environment));
+        }
+    }
+
+    @Test
+    public void testBadValueReportedAfterSyntax() {
+        try {
+            CommandLexer.parseSimplify("!simplify x=a y", new Environment());
+            fail("expected CommandSyntaxException");
+        } catch (Main.CommandSyntaxException cse) {
+            // expected
+        }
+        try {
+            CommandLexer.parseSimplify("!simplify x=a y=1", new Environment());
+            fail("expected NumberFormatException");
+        } catch (NumberFormatException nfe) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testEnvironment() {
+        Environment environment = new Environment();
+        Map<String, Double> expected = new HashMap<>();
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < 50; i++) {
+                environment.put("v" + i, (double) i + round);
+                expected.put("v" + i, (double) i + round);
+            }
+            environment.put("v7", 0.5);
+            expected.put("v7", 0.5);
+            assertEquals(expected, environment);
+            assertEquals(expected.hashCode(), environment.hashCode());
+            assertEquals(Double.valueOf(0.5), environment.get("v7"));
+            assertNull(environment.get("w"));
+            assertFalse(environment.containsKey("w"));
+            assertFalse(environment.containsKey(7));
+            environment.clear();
+            expected.clear();
+            assertEquals(0, environment.size());
+            assertNull(environment.get("v7"));
+        }
+    }
+
+    /*
+     * Outcome of parsing command with the regular expressions Main used before CommandLexer.
+     */
+    private static String expected(String command) {
+        if (command.startsWith("!d/d")) {
+            final Matcher matcher = DIFFERENTIATE.matcher(command);
+            return matcher.matches() ? matcher.group(1) : "syntax error";
+        }
+        if (!SIMPLIFY.matcher(command).matches()) {
+            return "syntax error";
+        }
+        final Map<String, Double> environment = new HashMap<>();
+        final Matcher matcher = ASSIGNMENT.matcher(command);
+        try {
+            while (matcher.find()) {
+                environment.put(matcher.group(1), Double.valueOf(matcher.group(2)));
+            }
+        } catch (NumberFormatException nfe) {
+            return "bad value";
+        }
+        return environment.toString();
+    }
+
+    private static String actual(String command, Environment environment) {
+        try {
+            if (command.startsWith("!d/d")) {
+                return CommandLexer.parseDifferentiate(command);
+            }
+            CommandLexer.parseSimplify(command, environment);
+            return new HashMap<>(environment).toString();
+        } catch (Main.CommandSyntaxException cse) {
+            return "syntax error";
+        } catch (NumberFormatException nfe) {
+            return "bad value";
+        }
+    }
+}
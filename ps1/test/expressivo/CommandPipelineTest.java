@@ -0,0 +1,138 @@
+package expressivo;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for CommandPipeline.
+ */
+public class CommandPipelineTest {
+
+    // Testing strategy:
+    //   input: empty, commands before the first expression, one session, many
+    //     sessions; invalid expression starting a session (current expression
+    //     carries over from the previous session), several invalid in a row
+    //   threads: 1, several; capacity: 1, larger than the number of sessions
+    //   sessionLines: 1, less than a session's length, more than every session's
+    //   !metrics commands: none, several (each waits for the commands before it,
+    //     and the commands after it wait for it)
+    //   output must equal CommandFile.run executing the same input serially
+    //   constructor: threads 0
+
+    private static final String[] LINES = {
+        "x*x + y", "x*y*z", "3 + x", "x +", "(", "!d/dx", "!d/dy", "!d/d 1",
+        "!simplify x=2", "!simplify x=1 y=2 z=3", "!simplify",
+    };
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    @Test
+    public void testFixedScripts() throws IOException {
+        for (String script : new String[] {
+            "", "!d/dx\n!simplify x=1\n", "x*x\n!d/dx\n!d/dx\n",
+            "x*x\n!d/dx\nx +\n!d/dx\n(\n!simplify x=3\ny*y\n!d/dy\n",
+        }) {
+            for (int threads : new int[] { 1, 3 }) {
+                for (int capacity : new int[] { 1, 100 }) {
+                    assertEquals(script, serial(script), pipelined(script, threads, capacity));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testRandomScripts() throws IOException {
+        final Random random = new Random(6005);
+        for (int trial = 0; trial < 20; trial++) {
+            final StringBuilder script = new StringBuilder();
+            for (int i = 0; i < 200; i++) {
+                script.append(LINES[random.nextInt(LINES.length)]).append('\n');
+            }
+            assertEquals(serial(script.toString()), pipelined(script.toString(), 4, 1 + random.nextInt(8)));
+        }
+    }
+
+    @Test
+    public void testLongSessions() throws IOException {
+        final Random random = new Random(6005);
+        final StringBuilder script = new StringBuilder();
+        for (int session = 0; session < 10; session++) {
+            script.append(LINES[random.nextInt(4)]).append('\n');
+            for (int i = 0; i < random.nextInt(30); i++) {
+                script.append(LINES[5 + random.nextInt(LINES.length - 5)]).append('\n');
+            }
+        }
+        final String expected = serial(script.toString());
+        for (int sessionLines : new int[] { 1, 7, 1000 }) {
+            assertEquals(expected, pipelined(script.toString(), 3, 2, sessionLines));
+        }
+    }
+
+    @Test
+    public void testMetricsCommandsAreBarriers() throws IOException {
+        final StringBuilder script = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            script.append("x*x*y + ").append(i).append("\n!d/dx\n!d/dy\n");
+        }
+        script.append("!metrics on\n!metrics reset\n");
+        for (int i = 0; i < 20; i++) {
+            script.append("x*y + ").append(i).append("\n!d/dx\n!simplify x=1\n");
+        }
+        script.append("!metrics off\n");
+        for (int i = 0; i < 20; i++) {
+            script.append("y*y + ").append(i).append("\n!d/dy\n");
+        }
+        try {
+            for (int sessionLines : new int[] { 1, 1000 }) {
+                pipelined(script.toString(), 4, 2, sessionLines);
+                assertEquals(20, Metrics.phase(Metrics.Phase.DIFFERENTIATE).getCount());
+                assertEquals(20, Metrics.phase(Metrics.Phase.SIMPLIFY).getCount());
+            }
+        } finally {
+            Metrics.setEnabled(false);
+        }
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testZeroThreads() {
+        new CommandPipeline(0, 1);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testZeroSessionLines() {
+        new CommandPipeline(1, 1, 0);
+    }
+
+    private static String serial(String script) throws IOException {
+        final StringWriter out = new StringWriter();
+        CommandFile.run(reader(script), out);
+        return out.toString();
+    }
+
+    private static String pipelined(String script, int threads, int capacity) throws IOException {
+        return pipelined(script, threads, capacity, CommandPipeline.DEFAULT_SESSION_LINES);
+    }
+
+    private static String pipelined(String script, int threads, int capacity, int sessionLines)
+            throws IOException {
+        final StringWriter out = new StringWriter();
+        new CommandPipeline(threads, capacity, sessionLines).run(reader(script), out);
+        return out.toString();
+    }
+
+    private static CommandFile.LineReader reader(String script) {
+        return new CommandFile.LineReader(
+                Channels.newChannel(new ByteArrayInputStream(script.getBytes(StandardCharsets.UTF_8))), 64);
+    }
+}
@@ -23,13 +23,13 @@ public class CommandsTest {
     @Test
     public void testDifferentiate1() {
         String s = Commands.differentiate("x + y", "x");
-        assertEquals(s, "(1.0000 + 0.0000)");
+        assertEquals(s, "1.0000");
     }
     
     @Test
     public void testDifferentiate2() {
         String s = Commands.differentiate("x + y", "y");
-        assertEquals(s, "(0.0000 + 1.0000)");
+        assertEquals(s, "1.0000");
     }
     
     @Test
@@ -47,7 +47,7 @@ public class CommandsTest {
     @Test
     public void testDifferentiate5() {
         String s = Commands.differentiate("x*x*x", "x");
-        assertEquals(s, "(x*x*1.0000 + x*(x*1.0000 + x*1.0000))");
+        assertEquals(s, "(x*x + x*(x + x))");
     }
     
     @Test
@@ -56,7 +56,7 @@ public class CommandsTest {
         environment.put("x", 10.0);
         String s = Commands.simplify("x*x*x + x*y + z + 1", environment);
         
-        assertEquals(s, "(((1000.0000 + 10.0000*y) + z) + 1.0000)");
+        assertEquals(s, "((10.0000*y + z) + 1001.0000)");
     }
     
     @Test
@@ -66,7 +66,7 @@ public class CommandsTest {
         environment.put("y", 2.0);
         String s = Commands.simplify("x*x*x + x*y + z + 1", environment);
         
-        assertEquals(s, "((1020.0000 + z) + 1.0000)");
+        assertEquals(s, "(z + 1021.0000)");
     }
     
     @Test
@@ -79,4 +79,45 @@ public class CommandsTest {
         
         assertEquals(s, "1028.0000");
     }
+    
+    @Test
+    public void testSimplifyCombinesLikeTerms() {
+        Map<String, Double> environment = new HashMap<>();
+        assertEquals("5.0000*x", Commands.simplify("x*2 + 3*x", environment));
+        assertEquals(Commands.simplify("(x + y)*(x + y)", environment),
+                Commands.simplify("y*y + x*y*2 + x*x", environment));
+        assertEquals("0.0000", Commands.simplify("0*x*y", environment));
+    }
+    
+    @Test
+    public void testSimplifyProductOfManySums() {
+        // expands to 2^30 terms, so it is simplified without expanding
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 30; i++) {
+            String name = i < 26 ? String.valueOf((char) ('a' + i)) : "z" + (char) ('a' + i - 26);
+            input.append(i > 0 ? "*" : "").append("(").append(name).append(" + 1)");
+        }
+        Map<String, Double> environment = new HashMap<>();
+        environment.put("a", 2.0);
+        String s = Commands.simplify(input.toString(), environment);
+        assertEquals(Expression.parse(input.toString()).simplify(environment).toString(), s);
+        assertTrue(s.startsWith("3.0000*"));
+        
+        environment.put("b", 1.0);
+        assertEquals("(6.0000*c + 6.0000)", Commands.simplify("(a + 1)*(b + 1)*(c + 1)", environment));
+    }
+    
+    @Test
+    public void testSimplifyOverflow() {
+        // a number too large for a double is infinity, and infinity times 0 is NaN
+        StringBuilder nines = new StringBuilder();
+        for (int i = 0; i < 400; i++) {
+            nines.append('9');
+        }
+        Map<String, Double> environment = new HashMap<>();
+        assertEquals("Infinity*0.0000", Commands.simplify(nines + "*0", environment));
+        assertEquals("(Infinity*0.0000*x + x)", Commands.simplify(nines + "*0*x + x", environment));
+        environment.put("x", 0.0);
+        assertEquals("Infinity*0.0000", Commands.simplify(nines + "*x", environment));
+    }
 }
@@ -0,0 +1,133 @@
+package expressivo;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Tests for DerivativeCache.
+ */
+public class DerivativeCacheTest {
+
+    // Testing strategy:
+    //   differentiate: leaf, sum, product, nested mix, flat Sum and Product
+    //   reuse: same expression again (hit at the root), different expression
+    //     sharing a subexpression (hit below the root), same expression with
+    //     respect to another variable (miss)
+    //   results must equal Expression.differentiate
+    //   maximum size: below, reached (evictions, results still equal); several threads
+    //   clear
+
+    private static final String[] EXPRESSIONS = {
+        "x", "3", "x + y", "x * y", "x*x*x + x*y + z + 1",
+        "(x + 2)*(y + 3.75)*(z + 0.125) + x*y*z", "3 + (4 + (x*(5 + y)))",
+    };
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    @Test
+    public void testMatchesDifferentiate() {
+        DerivativeCache cache = new DerivativeCache();
+        for (String input : EXPRESSIONS) {
+            Expression e = Expression.parse(input);
+            for (String variable : new String[] { "x", "y" }) {
+                assertEquals(input, e.differentiate(variable), cache.differentiate(e, variable));
+                assertEquals(input, e.differentiate(variable), cache.differentiate(e, variable));
+            }
+        }
+        for (Expression e : new Expression[] {
+                new Sum(Expression.parse("x*x"), Expression.parse("y"), Expression.parse("x")),
+                new Product(Expression.parse("x"), Expression.parse("x + y"), Expression.parse("x")) }) {
+            assertEquals(e.differentiate("x"), cache.differentiate(e, "x"));
+            assertEquals(e.differentiate("x"), cache.differentiate(e, "x"));
+        }
+    }
+
+    @Test
+    public void testRepeatHitsAtRoot() {
+        DerivativeCache cache = new DerivativeCache();
+        Expression e = Expression.parse("x*x*y + x");
+        Expression first = cache.differentiate(e, "x");
+        long misses = cache.misses();
+        assertEquals(0, cache.hits());
+        assertTrue(misses > 0);
+        assertSame(first, cache.differentiate(e, "x"));
+        assertEquals(1, cache.hits());
+        assertEquals(misses, cache.misses());
+    }
+
+    @Test
+    public void testSharedSubexpressionReused() {
+        DerivativeCache cache = new DerivativeCache();
+        Expression shared = Expression.parse("(x + 1)*(x + 2)");
+        cache.differentiate(shared, "x");
+        long misses = cache.misses();
+        cache.differentiate(Expression.plus(shared, Expression.parse("y")), "x");
+        assertEquals(1, cache.hits());
+        assertEquals(misses + 1, cache.misses());
+        cache.differentiate(shared, "y");
+        assertEquals(1, cache.hits());
+    }
+
+    @Test
+    public void testMaximumSize() {
+        DerivativeCache cache = new DerivativeCache(4, 2);
+        Expression e = Expression.parse("(x + 2)*(y + 3.75)*(z + 0.125) + x*y*z + 3*x*x");
+        assertEquals(e.differentiate("x"), cache.differentiate(e, "x"));
+        assertTrue(cache.size() <= 4);
+        assertTrue(cache.evictions() > 0);
+        assertEquals(e.differentiate("y"), cache.differentiate(e, "y"));
+        assertTrue(cache.size() <= 4);
+        
+        DerivativeCache large = new DerivativeCache(1000);
+        large.differentiate(e, "x");
+        assertEquals(0, large.evictions());
+        assertEquals(1000, large.maximumSize());
+    }
+
+    @Test
+    public void testConcurrentDifferentiate() throws InterruptedException {
+        final DerivativeCache cache = new DerivativeCache(64);
+        final Expression[] expressions = new Expression[EXPRESSIONS.length];
+        for (int i = 0; i < EXPRESSIONS.length; i++) {
+            expressions[i] = Expression.parse(EXPRESSIONS[i]);
+        }
+        final boolean[] agree = new boolean[4];
+        final Thread[] threads = new Thread[agree.length];
+        for (int t = 0; t < threads.length; t++) {
+            final int thread = t;
+            threads[t] = new Thread(() -> {
+                boolean ok = true;
+                for (int round = 0; round < 200; round++) {
+                    for (Expression e : expressions) {
+                        ok &= e.differentiate("x").equals(cache.differentiate(e, "x"));
+                    }
+                }
+                agree[thread] = ok;
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (boolean ok : agree) {
+            assertTrue(ok);
+        }
+        assertTrue(cache.size() <= 64);
+    }
+
+    @Test
+    public void testClear() {
+        DerivativeCache cache = new DerivativeCache();
+        Expression e = Expression.parse("x*y");
+        cache.differentiate(e, "x");
+        assertTrue(cache.size() > 0);
+        cache.clear();
+        assertEquals(0, cache.size());
+        cache.differentiate(e, "x");
+        assertEquals(0, cache.hits());
+    }
+}
@@ -0,0 +1,174 @@
+package expressivo;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Tests for ExpressionCodec.
+ */
+public class ExpressionCodecTest {
+
+    // Testing strategy:
+    //   expression: number (integer, fraction not exact in 4 digits, tiny, huge), variable,
+    //     Plus, Times, Sum, Product, shared subexpressions, deep left-nested chain,
+    //     many variables (varint indices of 2 bytes)
+    //   encode/decode, write/read ByteBuffer (at a nonzero position), DataOutput/DataInput
+    //   decoded expression: equal, same node classes, numbers bit-for-bit equal,
+    //     also while an equal expression of other node classes is live
+    //   malformed: empty, truncated, bad version, bad opcode, reference ahead,
+    //     n-ary node with 1 operand, trailing bytes, negative number, name count,
+    //     name length or arity far beyond the input (from a buffer and a stream),
+    //     non-ASCII variable name
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        for (Expression e : samples()) {
+            assertRoundTrip(e, ExpressionCodec.decode(ExpressionCodec.encode(e)));
+
+            final ByteBuffer buffer = ByteBuffer.allocate(ExpressionCodec.encode(e).length + 3);
+            buffer.position(3);
+            ExpressionCodec.write(e, buffer);
+            assertFalse(buffer.hasRemaining());
+            buffer.position(3);
+            assertRoundTrip(e, ExpressionCodec.read(buffer));
+
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ExpressionCodec.write(e, new DataOutputStream(bytes));
+            assertArrayEquals(ExpressionCodec.encode(e), bytes.toByteArray());
+            assertRoundTrip(e, ExpressionCodec.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))));
+        }
+    }
+
+    @Test
+    public void testDecodeKeepsNodeClasses() {
+        final Expression x = Expression.variable("x");
+        final Expression y = Expression.variable("y");
+        final Expression z = Expression.variable("z");
+        // built with the constructors, so that no equal node of the same classes is interned
+        final Expression sum = new Sum(x, y, z);
+        final Expression product = new Product(x, y, z);
+        final Expression plusChain = Expression.plus(Expression.plus(x, y), z);
+        final Expression timesChain = Expression.times(Expression.times(x, y), z);
+        assertEquals(plusChain, sum);
+        assertEquals(timesChain, product);
+
+        assertRoundTrip(sum, ExpressionCodec.decode(ExpressionCodec.encode(sum)));
+        assertRoundTrip(product, ExpressionCodec.decode(ExpressionCodec.encode(product)));
+        assertRoundTrip(new Plus(new Plus(x, y), z),
+                ExpressionCodec.decode(ExpressionCodec.encode(new Plus(new Plus(x, y), z))));
+        assertTrue(ExpressionCodec.decode(ExpressionCodec.encode(sum)) instanceof Sum);
+        assertTrue(ExpressionCodec.decode(ExpressionCodec.encode(plusChain)) instanceof Plus);
+    }
+
+    @Test
+    public void testSharedSubexpressionsEncodedOnce() {
+        Expression e = Expression.parse("x*x*x*x*x*x*y");
+        for (int i = 0; i < 4; i++) {
+            e = e.differentiate("x");
+        }
+        final byte[] encoded = ExpressionCodec.encode(e);
+        assertTrue(encoded.length < e.toString().length() / 4);
+        assertEquals(e, ExpressionCodec.decode(encoded));
+    }
+
+    @Test
+    public void testMalformed() throws IOException {
+        final byte[] valid = ExpressionCodec.encode(Expression.parse("x*y + 2"));
+        for (byte[] malformed : new byte[][] {
+            {}, Arrays.copyOf(valid, valid.length - 1), { 2, 0, 0, 0, 0, 0, 0, 0, 0, 0 },
+            { 1, 0, 9 }, { 1, 0, 6, 0 }, { 1, 0, 4, 1, 0, 0, 0, 0, 0, 0, 0, 0, 0 },
+            { 1, 0, 0, (byte) 0xBF, (byte) 0xF0, 0, 0, 0, 0, 0, 0 }, { 1, 1, 1, 'x', 1, 1 },
+            Arrays.copyOf(valid, valid.length + 1),
+            { 1, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 7 },
+            { 1, 1, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 7, 'x' },
+            { 1, 0, 4, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 7, 0 },
+            { 1, 1, 2, (byte) 0xC3, (byte) 0xA9, 1, 0 },
+        }) {
+            try {
+                ExpressionCodec.decode(malformed);
+                fail("expected IllegalArgumentException for " + Arrays.toString(malformed));
+            } catch (IllegalArgumentException iae) {
+                // expected
+            }
+        }
+        for (byte[] truncated : new byte[][] {
+            Arrays.copyOf(valid, 5),
+            { 1, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 7 },
+            { 1, 1, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 7, 'x' },
+            { 1, 0, 4, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 7, 0, 0, 0, 0, 0, 0, 0, 0, 0 },
+        }) {
+            try {
+                ExpressionCodec.read(new DataInputStream(new ByteArrayInputStream(truncated)));
+                fail("expected EOFException for " + Arrays.toString(truncated));
+            } catch (EOFException eofe) {
+                // expected
+            }
+        }
+    }
+
+    private static Expression[] samples() {
+        final Expression x = Expression.variable("x");
+        final Expression y = Expression.variable("y");
+        Expression chain = x;
+        for (int i = 0; i < 100000; i++) {
+            chain = Expression.plus(chain, Expression.number(i));
+        }
+        final Expression[] many = new Expression[300];
+        for (int i = 0; i < many.length; i++) {
+            many[i] = Expression.variable("v" + (char) ('a' + i / 26) + (char) ('a' + i % 26));
+        }
+        return new Expression[] {
+            Expression.number(3), Expression.number(0.1 + 0.2), Expression.number(Double.MIN_VALUE),
+            Expression.number(1e300), x,
+            Expression.plus(x, y), Expression.times(x, Expression.number(2)),
+            Expression.sum(x, y, Expression.number(1)), Expression.product(y, x, y),
+            Expression.parse("(x + 2)*(y + 3.75)*(z + 0.125) + x*y*z").differentiate("x"),
+            chain, Expression.sum(many),
+        };
+    }
+
+    private static void assertRoundTrip(Expression expected, Expression actual) {
+        assertEquals(expected, actual);
+        assertEquals(expected.toString(), actual.toString());
+        final Shape shape = new Shape();
+        assertEquals(shape.of(expected), shape.of(actual));
+    }
+
+    /*
+     * Node classes and number bits in prefix order, which equals() does not distinguish.
+     */
+    private static final class Shape {
+        String of(Expression e) {
+            final StringBuilder shape = new StringBuilder();
+            Traversal.walk(e, new Walker() {
+                @Override public void leaf(Expression node) {
+                    shape.append(node instanceof Number ? Double.doubleToRawLongBits(node.getValue()) : node)
+                            .append(' ');
+                }
+                @Override public void enter(Expression node) {
+                    shape.append(node.getClass().getSimpleName()).append('(');
+                }
+                @Override public void between(Expression node, int index) { }
+                @Override public void exit(Expression node) {
+                    shape.append(')');
+                }
+            });
+            return shape.toString();
+        }
+    }
+}
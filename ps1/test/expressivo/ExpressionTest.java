@@ -57,7 +57,24 @@ public class ExpressionTest {
         Expression e2 = x.times(y).plus(z).plus(n);
         assertTrue(e2.equals(Expression.parse(e2.toString())));
     }
-    
+
+    @Test
+    public void testStringExpressionRightNestedProduct() {
+        Expression x = Expression.variable("x");
+        Expression y = Expression.variable("y");
+        Expression z = Expression.variable("z");
+
+        Expression e1 = x.times(y.times(z));
+        assertEquals("x*(y*z)", e1.toString());
+        assertTrue(e1.equals(Expression.parse(e1.toString())));
+
+        Expression e2 = new Product(x, new Product(y, z), x.times(z));
+        assertTrue(e2.equals(Expression.parse(e2.toString())));
+
+        Expression e3 = x.times(y).times(z.times(x.plus(y)));
+        assertTrue(e3.equals(Expression.parse(e3.toString())));
+    }
+
     @Test
     public void testEqualsExpressionNumber() {
         Expression e1 = Expression.number(1.0);
@@ -109,6 +126,173 @@ public class ExpressionTest {
         assertNotEquals(e1.hashCode(), e2.hashCode());
     }
 
+    @Test
+    public void testFactoriesShareEqualNodes() {
+        assertSame(Expression.number(1.5), Expression.number(1.5));
+        assertSame(Expression.variable("x"), Expression.variable("x"));
+        assertSame(Expression.variable("x").plus(Expression.number(2)),
+                Expression.plus(Expression.variable("x"), Expression.number(2)));
+        assertSame(Expression.parse("x*y + 1"), Expression.parse("(x*y)+1"));
+        assertNotSame(Expression.parse("x*y"), Expression.parse("y*x"));
+    }
+    
+    @Test
+    public void testFactoriesKeepTheirRepresentation() {
+        Expression x = Expression.variable("x");
+        Expression y = Expression.variable("y");
+        Expression z = Expression.variable("z");
+        Expression plus = Expression.plus(Expression.plus(x, y), z);
+        Expression sum = Expression.sum(x, y, z);
+        assertEquals(plus, sum);
+        assertTrue(plus instanceof Plus);
+        assertTrue(sum instanceof Sum);
+        assertTrue(Expression.plus(Expression.plus(x, y), z) instanceof Plus);
+        assertTrue(Expression.product(x, y, z) instanceof Product);
+        assertTrue(Expression.times(Expression.times(x, y), z) instanceof Times);
+        
+        Expression nested = Expression.plus(sum, x);
+        Expression chain = Expression.plus(plus, x);
+        assertNotSame(nested, chain);
+        assertTrue(((Plus) nested).left() instanceof Sum);
+        assertTrue(((Plus) chain).left() instanceof Plus);
+    }
+    
+    @Test
+    public void testDifferentiateSharesLeaves() {
+        Expression e1 = Expression.parse("x*y + x*z");
+        Expression de1 = e1.differentiate("x");
+        assertSame(Expression.parse("y + z"), de1);
+    }
+    
+    @Test
+    public void testDifferentiateDropsIdentities() {
+        Expression e = Expression.parse("x*x*x*x");
+        for (int i = 0; i < 3; i++) {
+            e = e.differentiate("x");
+        }
+        assertFalse(e.toString().contains("0.0000"));
+        assertFalse(e.toString().contains("1.0000"));
+        assertEquals(Expression.number(24), e.differentiate("x"));
+        assertEquals(Expression.number(0), e.differentiate("x").differentiate("x"));
+        assertEquals(Expression.number(0), Expression.parse("y*z + 3").differentiate("x"));
+    }
+    
+    @Test
+    public void testDeepExpressionStackSafe() {
+        final int terms = 100000;
+        Expression interned = Expression.variable("x");
+        Expression copy = new Variable("x");
+        for (int i = 1; i < terms; i++) {
+            interned = interned.plus(Expression.variable("x").times(Expression.number(2)));
+            copy = new Plus(copy, new Times(new Variable("x"), new Number(2)));
+        }
+        
+        assertTrue(interned.equals(copy));
+        assertTrue(copy.equals(interned));
+        assertEquals(interned.hashCode(), copy.hashCode());
+        String expected = "(".repeat(terms - 1) + "x" + " + x*2.0000)".repeat(terms - 1);
+        assertEquals(expected, copy.toString());
+        
+        Map<String, Double> environment = new HashMap<>();
+        environment.put("x", 1.0);
+        assertEquals(1.0 + 2.0 * (terms - 1), copy.simplify(environment).getValue(), 0);
+        assertEquals(1.0 + 2.0 * (terms - 1),
+                copy.differentiate("x").simplify(environment).getValue(), 0);
+    }
+    
+    @Test
+    public void testSumEqualsLeftNestedPlus() {
+        Expression x = new Variable("x");
+        Expression y = new Variable("y");
+        Expression z = new Variable("z");
+        Expression binary = new Plus(new Plus(x, y), z);
+        Expression nary = new Sum(x, y, z);
+        Expression spliced = new Sum(new Sum(x, y), z);
+        Expression mixed = new Plus(new Sum(x, y), z);
+        
+        for (Expression e : new Expression[] { nary, spliced, mixed }) {
+            assertTrue(binary.equals(e));
+            assertTrue(e.equals(binary));
+            assertEquals(binary.hashCode(), e.hashCode());
+            assertEquals(binary.toString(), e.toString());
+        }
+        assertFalse(nary.equals(new Plus(x, new Plus(y, z))));
+        assertFalse(nary.equals(new Sum(x, new Sum(y, z))));
+        assertFalse(nary.equals(new Sum(x, y)));
+        assertFalse(nary.equals(new Product(x, y, z)));
+    }
+    
+    @Test
+    public void testProductEqualsLeftNestedTimes() {
+        Expression x = new Variable("x");
+        Expression two = new Number(2);
+        Expression binary = new Times(new Times(new Times(x, two), x), x);
+        Expression nary = new Product(x, two, x, x);
+        
+        assertTrue(binary.equals(nary));
+        assertTrue(nary.equals(binary));
+        assertEquals(binary.hashCode(), nary.hashCode());
+        assertEquals(binary.toString(), nary.toString());
+        assertEquals(binary.differentiate("x"), nary.differentiate("x"));
+        assertEquals(binary.differentiate("x").toString(), nary.differentiate("x").toString());
+        
+        Map<String, Double> environment = new HashMap<>();
+        environment.put("x", 3.0);
+        assertEquals(binary.simplify(environment), nary.simplify(environment));
+        assertEquals(binary.simplify(new HashMap<>()), nary.simplify(new HashMap<>()));
+    }
+    
+    @Test
+    public void testParseBuildsFlatNodes() {
+        Expression e = Expression.parse("x*y*z + 2 + w");
+        assertTrue(e instanceof Sum);
+        assertEquals(3, ((Sum) e).size());
+        Expression product = ((Sum) e).operand(0);
+        assertTrue(product instanceof Product);
+        assertEquals(3, ((Product) product).size());
+        assertEquals("((x*y*z + 2.0000) + w)", e.toString());
+    }
+    
+    @Test
+    public void testWideNodePrefixes() {
+        Expression[] operands = new Expression[100000];
+        for (int i = 0; i < operands.length; i++) {
+            operands[i] = Expression.variable(i % 2 == 0 ? "x" : "y");
+        }
+        for (NaryExpression node : new NaryExpression[] { new Sum(operands), new Product(operands) }) {
+            assertSame(operands[0], node.prefix(1));
+            assertSame(node, node.prefix(node.size()));
+            for (int length = 2; length < node.size(); length++) {
+                NaryExpression prefix = (NaryExpression) node.prefix(length);
+                assertEquals(node.getClass(), prefix.getClass());
+                assertEquals(length, prefix.size());
+            }
+        }
+        Expression chain = Expression.times(Expression.times(operands[0], operands[1]), operands[2]);
+        assertEquals(chain, new Product(operands).prefix(3));
+        assertEquals(chain.hashCode(), new Product(operands).prefix(3).hashCode());
+    }
+    
+    @Test
+    public void testParserCompiledOnce() {
+        ExpressionParser.warmUp();
+        assertSame(ExpressionParser.parser(), ExpressionParser.parser());
+    }
+    
+    @Test
+    public void testBackendNamed() {
+        assertEquals(ExpressionParser.Backend.RECURSIVE_DESCENT,
+                ExpressionParser.Backend.named("recursive_descent"));
+        assertEquals(ExpressionParser.Backend.GRAMMAR, ExpressionParser.Backend.named(" Grammar "));
+        try {
+            ExpressionParser.Backend.named("recursive-descent");
+            fail("accepted an unknown backend");
+        } catch (IllegalArgumentException iae) {
+            assertTrue(iae.getMessage(), iae.getMessage().contains(ExpressionParser.BACKEND_PROPERTY));
+            assertTrue(iae.getMessage(), iae.getMessage().contains("RECURSIVE_DESCENT"));
+        }
+    }
+    
     @Test
     public void testParseExpressionParens() {
         Expression e1 = Expression.parse("(1+2)+(x+y)");
@@ -166,7 +350,7 @@ public class ExpressionTest {
     @Test
     public void testDifferentiate1() {
         Expression e1 = Expression.parse("x + y");
-        Expression de1 = Expression.parse("1 + 0");
+        Expression de1 = Expression.parse("1");
         
         assertTrue(de1.equals(e1.differentiate("x")));
     }
@@ -174,7 +358,7 @@ public class ExpressionTest {
     @Test
     public void testDifferentiate2() {
         Expression e1 = Expression.parse("x + y");
-        Expression de1 = Expression.parse("0 + 1");
+        Expression de1 = Expression.parse("1");
         
         assertTrue(de1.equals(e1.differentiate("y")));
     }
@@ -198,7 +382,7 @@ public class ExpressionTest {
     @Test
     public void testDifferentiate5() {
         Expression e1 = Expression.parse("x*x*x + x*y + z + 1");
-        Expression de1 = Expression.parse("x*x*1 + x*(x*1+x*1) + (x*0 + y*1) + 0 + 0");
+        Expression de1 = Expression.parse("x*x + x*(x+x) + y");
         
         assertTrue(de1.equals(e1.differentiate("x")));
     }
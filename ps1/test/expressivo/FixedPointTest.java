@@ -0,0 +1,67 @@
+package expressivo;
+
+import static org.junit.Assert.*;
+
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for FixedPoint.
+ */
+public class FixedPointTest {
+
+    // Testing strategy:
+    //   value: 0, -0.0, integers, fractions with fewer and more than 4 decimals,
+    //     exact and inexact ties at the 5th decimal (0.00005, 0.00015, 2.00025, 1/64),
+    //     values rounding up to the next integer (0.99996), just below and above
+    //     the fast-path limit, huge, Double.MIN_VALUE, infinity, NaN, negative
+    //   random values of several magnitudes
+    //   append: to an empty and a nonempty builder
+    //   results must equal String.format(Locale.ROOT, "%.4f", value)
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    @Test
+    public void testEdgeCases() {
+        for (double value : new double[] {
+            0, -0.0, 1, 42, 0.5, 1 / 64.0, 3 / 32.0, 0.1 + 0.2, 1.23445, 0.12345, 0.00005, 0.00015, 2.00025, 1.00005,
+            100.00005, 0.99996, 9999.99995, 99999999.99994, 1e8 - 1e-7, 1e8, 1e8 + 0.00005, 1e15,
+            1e300, Double.MIN_VALUE, Double.MAX_VALUE, Double.POSITIVE_INFINITY, Double.NaN, -2.5,
+        }) {
+            assertEquals(String.valueOf(value), expected(value), FixedPoint.format(value));
+        }
+    }
+
+    @Test
+    public void testRandomValues() {
+        final Random random = new Random(6005);
+        for (int i = 0; i < 200000; i++) {
+            final double value;
+            switch (i % 5) {
+            case 0: value = random.nextDouble(); break;
+            case 1: value = random.nextInt(1000000) / 1e5; break; // many near-ties at the 5th decimal
+            case 2: value = random.nextDouble() * Math.pow(10, random.nextInt(12)); break;
+            case 3: value = random.nextInt(1 << 20) / 64.0; break; // exact ties
+            default: value = Double.longBitsToDouble(random.nextLong() & Long.MAX_VALUE); break;
+            }
+            assertEquals(String.valueOf(value), expected(value), FixedPoint.format(value));
+        }
+    }
+
+    @Test
+    public void testAppend() {
+        StringBuilder out = new StringBuilder("x = ");
+        assertSame(out, FixedPoint.append(out, 2.5));
+        assertEquals("x = 2.5000", out.toString());
+        assertEquals("3.0000", new Number(3).toString());
+    }
+
+    private static String expected(double value) {
+        return String.format(Locale.ROOT, "%.4f", value);
+    }
+}
@@ -0,0 +1,98 @@
+package expressivo;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for LatencyHistogram.
+ */
+public class LatencyHistogramTest {
+
+    // Testing strategy:
+    //   index/lowest/highest: values below, at and above the linear limit, powers of 2
+    //     and their neighbours, Long.MAX_VALUE; buckets are contiguous and narrow
+    //   record: none, one value, many; negative value
+    //   percentile: 0, 50, 100, out of range; within 1/64 of the exact percentile
+    //     of random values of several magnitudes
+    //   reset
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    @Test
+    public void testBuckets() {
+        final int last = LatencyHistogram.index(Long.MAX_VALUE);
+        assertEquals(0, LatencyHistogram.lowest(0));
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.highest(last));
+        for (int i = 0; i < last; i++) {
+            assertEquals(LatencyHistogram.highest(i) + 1, LatencyHistogram.lowest(i + 1));
+            assertEquals(i, LatencyHistogram.index(LatencyHistogram.lowest(i)));
+            assertEquals(i, LatencyHistogram.index(LatencyHistogram.highest(i)));
+            final long width = LatencyHistogram.highest(i) - LatencyHistogram.lowest(i);
+            assertTrue(i + ": " + width, width <= LatencyHistogram.lowest(i) / 64);
+        }
+        for (long value : new long[] { 0, 1, 127, 128, 129, 255, 256, 1000, 1L << 40, (1L << 40) - 1, Long.MAX_VALUE }) {
+            final int index = LatencyHistogram.index(value);
+            assertTrue(LatencyHistogram.lowest(index) <= value && value <= LatencyHistogram.highest(index));
+        }
+    }
+
+    @Test
+    public void testEmpty() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.count());
+        assertEquals(0, histogram.min());
+        assertEquals(0, histogram.max());
+        assertEquals(0, histogram.mean(), 0);
+        assertEquals(0, histogram.percentile(50));
+    }
+
+    @Test
+    public void testRecordAndReset() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1000);
+        histogram.record(3000);
+        histogram.record(-5);
+        assertEquals(3, histogram.count());
+        assertEquals(0, histogram.min());
+        assertEquals(3000, histogram.max());
+        assertEquals(4000 / 3.0, histogram.mean(), 1e-9);
+        assertEquals(0, histogram.percentile(0));
+        assertEquals(3000, histogram.percentile(100));
+        histogram.reset();
+        assertEquals(0, histogram.count());
+        assertEquals(0, histogram.max());
+        assertEquals(0, histogram.percentile(100));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testPercentileOutOfRange() {
+        new LatencyHistogram().percentile(100.5);
+    }
+
+    @Test
+    public void testPercentilesOfRandomValues() {
+        Random random = new Random(6005);
+        LatencyHistogram histogram = new LatencyHistogram();
+        long[] values = new long[10000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) Math.exp(random.nextDouble() * 30);
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+        for (double percentile : new double[] { 0, 1, 25, 50, 90, 99, 99.9, 100 }) {
+            final long exact = values[(int) Math.max(0, Math.ceil(percentile / 100 * values.length) - 1)];
+            final long approximate = histogram.percentile(percentile);
+            assertTrue(percentile + ": " + exact + " vs " + approximate,
+                    approximate >= exact && approximate - exact <= exact / 64);
+        }
+        assertEquals(values[values.length - 1], histogram.max());
+        assertEquals(values[0], histogram.min());
+    }
+}
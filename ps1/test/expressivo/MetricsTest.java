@@ -0,0 +1,206 @@
+package expressivo;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Optional;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+/**
+ * Tests for Metrics, Traversal.size and the !metrics command of Main.
+ */
+public class MetricsTest {
+
+    // Testing strategy:
+    //   enabled: off (nothing recorded), on, turned on between start and stop
+    //   phases: parse, differentiate, simplify, to_string through Commands;
+    //     time, allocation, input and output node counts
+    //   reset, dump
+    //   MBeans: registered once, twice; read attributes, set Enabled, invoke dump
+    //   !metrics: dump, on, off, reset, invalid; current expression unchanged
+    //   Traversal.size: leaf, tree, shared subexpression, Sum
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    @Test
+    public void testSize() {
+        assertEquals(1, Traversal.size(Expression.parse("x")));
+        assertEquals(5, Traversal.size(Expression.parse("x*x + 2")));
+        Expression shared = Expression.parse("x + y");
+        assertEquals(7, Traversal.size(Expression.times(shared, shared)));
+        assertEquals(4, Traversal.size(new Sum(Expression.parse("x"), Expression.parse("y"), Expression.parse("z"))));
+    }
+
+    @Test
+    public void testDisabledRecordsNothing() {
+        Metrics.setEnabled(false);
+        Metrics.reset();
+        assertEquals(Metrics.NOT_STARTED, Metrics.start(Metrics.Phase.DIFFERENTIATE));
+        Commands.differentiate("x*x + y", "x");
+        Commands.simplify("x*x + y", Collections.singletonMap("x", 2.0));
+        for (Metrics.Phase phase : Metrics.Phase.values()) {
+            assertEquals(phase.label(), 0, Metrics.phase(phase).getCount());
+        }
+    }
+
+    @Test
+    public void testEnabledBetweenStartAndStop() {
+        try {
+            Metrics.setEnabled(false);
+            Metrics.reset();
+            final long start = Metrics.start(Metrics.Phase.SIMPLIFY);
+            Metrics.setEnabled(true);
+            Metrics.stop(Metrics.Phase.SIMPLIFY, start);
+            assertEquals(0, Metrics.phase(Metrics.Phase.SIMPLIFY).getCount());
+        } finally {
+            Metrics.setEnabled(false);
+        }
+    }
+
+    @Test
+    public void testCommandsRecordPhases() {
+        try {
+            Metrics.setEnabled(true);
+            Metrics.reset();
+            Commands.differentiate("x*x + y", "x");
+            PhaseMetricsMXBean differentiate = Metrics.phase(Metrics.Phase.DIFFERENTIATE);
+            assertEquals(1, differentiate.getCount());
+            assertEquals(5, differentiate.getInputNodesPerOperation(), 0);
+            assertTrue(differentiate.getOutputNodesPerOperation() >= 1);
+            assertTrue(differentiate.getMaxNanos() > 0);
+            assertTrue(differentiate.getMinNanos() <= differentiate.getMedianNanos());
+            assertTrue(differentiate.getMedianNanos() <= differentiate.getMaxNanos());
+            assertTrue(differentiate.getAllocatedBytesPerOperation() >= 0
+                    || differentiate.getAllocatedBytesPerOperation() == -1);
+            PhaseMetricsMXBean toString = Metrics.phase(Metrics.Phase.TO_STRING);
+            assertEquals(1, toString.getCount());
+            assertEquals(differentiate.getOutputNodesPerOperation(), toString.getInputNodesPerOperation(), 0);
+            assertEquals(0, toString.getOutputNodesPerOperation(), 0);
+
+            Commands.simplify("x*x + y", Collections.singletonMap("x", 2.0));
+            PhaseMetricsMXBean simplify = Metrics.phase(Metrics.Phase.SIMPLIFY);
+            assertEquals(1, simplify.getCount());
+            assertEquals(5, simplify.getInputNodesPerOperation(), 0);
+            assertEquals(3, simplify.getOutputNodesPerOperation(), 0);
+            assertEquals(2, toString.getCount());
+
+            Expression.parse("x + 1 + y*0.5", ExpressionParser.Backend.RECURSIVE_DESCENT);
+            PhaseMetricsMXBean parse = Metrics.phase(Metrics.Phase.PARSE);
+            assertEquals(1, parse.getCount());
+            assertEquals(6, parse.getOutputNodesPerOperation(), 0);
+
+            Metrics.reset();
+            assertEquals(0, differentiate.getCount());
+            assertEquals(0, differentiate.getInputNodesPerOperation(), 0);
+            assertEquals(0, differentiate.getMaxNanos());
+        } finally {
+            Metrics.setEnabled(false);
+        }
+    }
+
+    @Test
+    public void testFailedPhaseNotRecorded() {
+        try {
+            Metrics.setEnabled(true);
+            Metrics.reset();
+            try {
+                Expression.parse("x +", ExpressionParser.Backend.RECURSIVE_DESCENT);
+                fail("expected IllegalArgumentException");
+            } catch (IllegalArgumentException iae) {
+                // expected
+            }
+            assertEquals(0, Metrics.phase(Metrics.Phase.PARSE).getCount());
+        } finally {
+            Metrics.setEnabled(false);
+        }
+    }
+
+    @Test
+    public void testDump() {
+        try {
+            Metrics.setEnabled(true);
+            Metrics.reset();
+            Commands.differentiate("x*y", "x");
+            String dump = Metrics.dump();
+            assertTrue(dump, dump.startsWith("metrics enabled\n"));
+            for (Metrics.Phase phase : Metrics.Phase.values()) {
+                assertTrue(dump, dump.contains("\n" + phase.label() + " "));
+            }
+            assertTrue(dump, dump.contains("ParseCache["));
+            assertTrue(dump, dump.contains("DerivativeCache"));
+        } finally {
+            Metrics.setEnabled(false);
+        }
+    }
+
+    @Test
+    public void testMBeans() throws Exception {
+        try {
+            Metrics.registerMBeans();
+            Metrics.registerMBeans();
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName control = new ObjectName(Metrics.OBJECT_NAME);
+            server.setAttribute(control, new javax.management.Attribute("Enabled", true));
+            assertTrue(Metrics.isEnabled());
+            server.invoke(control, "reset", new Object[0], new String[0]);
+            Commands.differentiate("x*y", "x");
+            ObjectName differentiate = new ObjectName(Metrics.OBJECT_NAME + ",phase=differentiate");
+            assertEquals(1L, server.getAttribute(differentiate, "Count"));
+            assertEquals(3.0, server.getAttribute(differentiate, "InputNodesPerOperation"));
+            assertTrue((Long) server.getAttribute(differentiate, "99thPercentileNanos") > 0);
+            assertEquals(Metrics.dump().substring(0, 16), ((String) server.invoke(control, "dump",
+                    new Object[0], new String[0])).substring(0, 16));
+            server.setAttribute(control, new javax.management.Attribute("Enabled", false));
+            assertFalse(Metrics.isEnabled());
+        } finally {
+            Metrics.setEnabled(false);
+        }
+    }
+
+    @Test
+    public void testMetricsCommand() {
+        try {
+            Main.Session session = new Main.Session();
+            session.execute("x * y");
+            String dump = session.execute("!metrics on");
+            assertTrue(dump, dump.startsWith("metrics enabled\n"));
+            assertTrue(Metrics.isEnabled());
+            session.execute("!metrics reset");
+            final String derivative = session.execute("!d/dx");
+            assertEquals(1, Metrics.phase(Metrics.Phase.DIFFERENTIATE).getCount());
+            assertTrue(session.execute("!metrics").contains("\ndifferentiate "));
+            assertTrue(session.execute("!metrics off").startsWith("metrics disabled\n"));
+            assertFalse(Metrics.isEnabled());
+            assertTrue(session.execute("!metrics bogus").contains("usage: !metrics"));
+            assertEquals(Optional.of(derivative), session.currentExpression());
+            assertTrue(Main.isCommand("!metrics"));
+        } finally {
+            Metrics.setEnabled(false);
+        }
+    }
+
+    @Test
+    public void testMetricsCommandRegistersMBeans() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName control = new ObjectName(Metrics.OBJECT_NAME);
+        if (server.isRegistered(control)) {
+            server.unregisterMBean(control);
+        }
+        assertFalse(server.isRegistered(control));
+        try {
+            String dump = new Main.Session().execute("!metrics");
+            assertTrue(dump, dump.contains("\ndifferentiate "));
+            assertTrue(server.isRegistered(control));
+        } finally {
+            Metrics.setEnabled(false);
+        }
+    }
+}
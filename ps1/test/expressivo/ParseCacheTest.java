@@ -0,0 +1,81 @@
+package expressivo;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Tests for ParseCache.
+ */
+public class ParseCacheTest {
+
+    // Testing strategy:
+    //   parse: first use (miss), repeated use (hit), invalid input (not cached)
+    //   eviction: cache not full, full with one segment (least recently used is
+    //     evicted), full with several segments (size stays within maximum)
+    //   constructor: maximum size 0
+    //   clear
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    @Test
+    public void testHitsAndMisses() {
+        ParseCache cache = new ParseCache(10);
+        Expression first = cache.parse("x + 1");
+        assertEquals(Expression.parse("x + 1"), first);
+        assertSame(first, cache.parse("x + 1"));
+        cache.parse("x*y");
+        assertEquals(1, cache.hits());
+        assertEquals(2, cache.misses());
+        assertEquals(0, cache.evictions());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testInvalidInputNotCached() {
+        ParseCache cache = new ParseCache(10);
+        for (int i = 0; i < 2; i++) {
+            try {
+                cache.parse("x +");
+                fail("expected IllegalArgumentException");
+            } catch (IllegalArgumentException iae) {
+                // expected
+            }
+        }
+        assertEquals(0, cache.size());
+        assertEquals(2, cache.misses());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        ParseCache cache = new ParseCache(2, 1);
+        Expression x = cache.parse("x");
+        cache.parse("y");
+        cache.parse("x");
+        cache.parse("z");
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.evictions());
+        assertSame(x, cache.parse("x"));
+        assertEquals(2, cache.hits());
+    }
+
+    @Test
+    public void testSizeBoundedAcrossSegments() {
+        ParseCache cache = new ParseCache(20);
+        for (int i = 0; i < 100; i++) {
+            cache.parse("x + " + i);
+        }
+        assertTrue(cache.size() <= 20);
+        assertEquals(100 - cache.size(), cache.evictions());
+        cache.clear();
+        assertEquals(0, cache.size());
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testZeroSize() {
+        new ParseCache(0);
+    }
+}
@@ -0,0 +1,110 @@
+package expressivo;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for PartialSimplifier.
+ */
+public class PartialSimplifierTest {
+
+    // Testing strategy:
+    //   fixed bindings: none, some variables, a variable not in the expression
+    //   environment: empty, binds some changing variables, binds all of them;
+    //     same as last call, one variable changed, a variable newly unbound
+    //   expression: number, variable, Plus, Times, Sum, Product, shared subexpressions
+    //   results must equal Expression.simplify in the combined environment
+    //   reuse: subtrees that depend only on unchanged variables are not recomputed
+    //   environment binding a fixed variable
+
+    private static final String[] EXPRESSIONS = {
+        "2.5", "x", "a", "x + a", "a*b*x + b", "x*x*x + a*y + z + 1",
+        "(x + 2)*(y + a)*(z + 0.125) + x*y*z + a*b", "3 + (4 + (x*(a + y)))",
+        "(a*b + 1)*(a*b + 1)*x + (a*b + 1)",
+    };
+    private static final String[] CHANGING = { "x", "y", "z" };
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    @Test
+    public void testMatchesSimplify() {
+        final Random random = new Random(6005);
+        for (String input : EXPRESSIONS) {
+            Expression e = Expression.parse(input);
+            for (Map<String, Double> fixed : fixedBindings()) {
+                PartialSimplifier partial = e.specialize(fixed);
+                assertEquals(input, e.simplify(fixed), partial.residual());
+                Map<String, Double> environment = new HashMap<>();
+                for (int update = 0; update < 20; update++) {
+                    String variable = CHANGING[random.nextInt(CHANGING.length)];
+                    if (random.nextInt(5) == 0) {
+                        environment.remove(variable);
+                    } else {
+                        environment.put(variable, (double) random.nextInt(8));
+                    }
+                    Map<String, Double> combined = new HashMap<>(fixed);
+                    combined.putAll(environment);
+                    assertEquals(input + " " + combined, e.simplify(combined), partial.simplify(environment));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testReusesUnchangedSubtrees() {
+        Expression e = Expression.parse("x*x*x + (y + 1)*(y + 2)");
+        PartialSimplifier partial = e.specialize(new HashMap<>());
+        Map<String, Double> environment = new HashMap<>();
+        environment.put("x", 1.0);
+        environment.put("y", 2.0);
+        assertEquals(Expression.number(13), partial.simplify(environment));
+        int all = partial.recomputed();
+        assertTrue(all > 3);
+
+        partial.simplify(environment);
+        assertEquals(0, partial.recomputed());
+
+        environment.put("x", 2.0);
+        assertEquals(Expression.number(20), partial.simplify(environment));
+        // the product of x's and the root; (y + 1)*(y + 2) and its operands are reused
+        assertTrue(partial.recomputed() < all - 2);
+
+        environment.remove("y");
+        assertEquals(e.simplify(environment), partial.simplify(environment));
+    }
+
+    @Test
+    public void testFixedSubtreesFolded() {
+        Expression e = Expression.parse("(a*b + 1)*x + (a + b)*y");
+        Map<String, Double> fixed = new HashMap<>();
+        fixed.put("a", 2.0);
+        fixed.put("b", 3.0);
+        assertEquals(Expression.parse("7*x + 5*y"), e.specialize(fixed).residual());
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testEnvironmentBindsFixedVariable() {
+        Map<String, Double> fixed = new HashMap<>();
+        fixed.put("a", 2.0);
+        Expression.parse("a + x").specialize(fixed).simplify(fixed);
+    }
+
+    private static Iterable<Map<String, Double>> fixedBindings() {
+        Map<String, Double> none = new HashMap<>();
+        Map<String, Double> some = new HashMap<>();
+        some.put("a", 1.5);
+        some.put("b", 2.0);
+        Map<String, Double> every = new HashMap<>(some);
+        every.put("w", 4.0);
+        return Arrays.asList(none, some, every);
+    }
+}
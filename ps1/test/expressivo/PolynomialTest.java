@@ -0,0 +1,112 @@
+package expressivo;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for Polynomial and Monomial.
+ */
+public class PolynomialTest {
+
+    // Testing strategy:
+    //   of(): number (0, nonzero), variable, sum, product, product of sums,
+    //     like terms in different orders, repeated variables
+    //   of() with a term limit: product and sum within, at and beyond the limit
+    //   of() with a coefficient that is infinite, or overflows while expanding
+    //   plus, times, differentiate: zero polynomial, constants, several variables
+    //   toExpression: zero, constant, coefficient 1 and other, canonical term order
+    //   toExpression must have the value of the input for random assignments
+
+    private static final String[] EXPRESSIONS = {
+        "0", "2.5", "x", "x*2 + 3*x", "x*x*x + x*y + z + 1",
+        "(x + 2)*(y + 3.75)*(z + 0.125) + x*y*z", "(x + y)*(x + y)*(x + y)",
+    };
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    @Test
+    public void testEqualForEqualFunctions() {
+        assertEquals(Polynomial.of(Expression.parse("5*x")), Polynomial.of(Expression.parse("x*2 + 3*x")));
+        assertEquals(Polynomial.of(Expression.parse("x*x + 2*x*y + y*y")),
+                Polynomial.of(Expression.parse("(y + x)*(x + y)")));
+        assertEquals(Polynomial.ZERO, Polynomial.of(Expression.parse("0*x + 0")));
+        assertNotEquals(Polynomial.of(Expression.parse("x*y")), Polynomial.of(Expression.parse("x + y")));
+    }
+
+    @Test
+    public void testTermLimit() {
+        Expression cube = Expression.parse("(x + y)*(x + y)*(x + y)");
+        assertEquals(Polynomial.of(cube), Polynomial.of(cube, 8));
+        assertNull(Polynomial.of(cube, 5));
+        assertNull(Polynomial.of(Expression.parse("x + y + z"), 2));
+        assertEquals(Polynomial.of(Expression.parse("x + y")), Polynomial.of(Expression.parse("x + y"), 2));
+    }
+
+    @Test
+    public void testNotFinite() {
+        final String huge = "1" + String.join("", Collections.nCopies(200, "0"));
+        final String overflow = String.join("", Collections.nCopies(400, "9"));
+        assertNull(Polynomial.of(Expression.parse(overflow + "*x")));
+        assertNull(Polynomial.of(Expression.parse(huge + "*x*" + huge + " + y"), Polynomial.MAX_TERMS));
+        assertNull(Polynomial.of(Expression.parse("(x + " + huge + ")*(" + huge + " + y)")));
+        assertNotNull(Polynomial.of(Expression.parse(huge + "*x + " + huge)));
+    }
+
+    @Test
+    public void testToExpressionCanonicalOrder() {
+        assertEquals("0.0000", Polynomial.ZERO.toExpression().toString());
+        assertEquals("3.0000", Polynomial.constant(3).toExpression().toString());
+        assertEquals("(((x*x*x + y*y*z) + 2.0000*x*y) + 7.0000)",
+                Polynomial.of(Expression.parse("7 + y*z*y + y*x + x*x*x + x*y")).toExpression().toString());
+    }
+
+    @Test
+    public void testToExpressionPreservesValue() {
+        final Random random = new Random(6005);
+        for (String input : EXPRESSIONS) {
+            Expression expression = Expression.parse(input);
+            Expression normal = Polynomial.of(expression).toExpression();
+            for (int trial = 0; trial < 20; trial++) {
+                Map<String, Double> environment = new HashMap<>();
+                environment.put("x", (double) random.nextInt(10));
+                environment.put("y", random.nextInt(100) / 8.0);
+                environment.put("z", random.nextDouble());
+                double expected = expression.simplify(environment).getValue();
+                assertEquals(input, expected, normal.simplify(environment).getValue(), 1e-9 * (1 + expected));
+            }
+        }
+    }
+
+    @Test
+    public void testArithmetic() {
+        Polynomial x = Polynomial.variable("x");
+        Polynomial y = Polynomial.variable("y");
+        Polynomial two = Polynomial.constant(2);
+        assertEquals(Polynomial.of(Expression.parse("x + y + 2")), x.plus(y).plus(two));
+        assertEquals(Polynomial.of(Expression.parse("x*x*y + 2*x")), x.times(x.times(y).plus(two)));
+        assertEquals(x, x.plus(Polynomial.ZERO));
+        assertEquals(Polynomial.ZERO, x.times(Polynomial.ZERO));
+    }
+
+    @Test
+    public void testDifferentiate() {
+        Polynomial p = Polynomial.of(Expression.parse("x*x*x + 4*x*y + y + 1"));
+        assertEquals(Polynomial.of(Expression.parse("3*x*x + 4*y")), p.differentiate("x"));
+        assertEquals(Polynomial.of(Expression.parse("4*x + 1")), p.differentiate("y"));
+        assertEquals(Polynomial.ZERO, p.differentiate("z"));
+        for (String input : EXPRESSIONS) {
+            Expression expression = Expression.parse(input);
+            assertEquals(input, Polynomial.of(expression.differentiate("x")),
+                    Polynomial.of(expression).differentiate("x"));
+        }
+    }
+}
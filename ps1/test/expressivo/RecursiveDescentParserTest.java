@@ -0,0 +1,100 @@
+package expressivo;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import expressivo.ExpressionParser.Backend;
+
+/**
+ * Differential tests: the recursive-descent parser must agree with the
+ * grammar-based parser on every input.
+ */
+public class RecursiveDescentParserTest {
+
+    // Testing strategy:
+    //   valid inputs: numbers (integer, fractional, leading '.'), variables
+    //     (single letter, multi-letter, mixed case), sums, products, mixed
+    //     precedence, redundant and nested parentheses, spaces: none, between
+    //     tokens, leading, trailing
+    //   invalid inputs: empty, dangling operator, unbalanced parentheses,
+    //     adjacent primitives, malformed number, illegal characters
+    //   nesting: parentheses 100,000 deep, alternating sums and products, unbalanced
+
+    private static final String[] VALID = {
+        "0", "42", "3.25", ".5", "007",
+        "x", "var", "camelCase",
+        "x + y", "x+y+z", "x * y", "x*y*z",
+        "3*x + 2.4", "3*(x + 2.4)", "x*y + z*w*v + 1",
+        "(x)", "((x))", "(1+2)+(x+y)", "(((1)+2)+((x)+(y)))", "3 + (4 + 5)",
+        "  x", "x  ", "  ( x  +  y )  *  z  ",
+        "x*x*x + x*y + z + 1",
+    };
+
+    private static final String[] INVALID = {
+        "", " ", "x +", "+ x", "x * ", "(x", "x)", "()", "x y", "2x", "1.", "1..2", "x - y", "x^2", "x\t+ y",
+    };
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    @Test
+    public void testValidInputsAgree() {
+        for (String input : VALID) {
+            Expression expected = Expression.parse(input, Backend.GRAMMAR);
+            Expression actual = Expression.parse(input, Backend.RECURSIVE_DESCENT);
+            assertEquals(input, expected, actual);
+            assertEquals(input, expected.toString(), actual.toString());
+        }
+    }
+
+    @Test
+    public void testInvalidInputsRejected() {
+        for (String input : INVALID) {
+            assertRejected(input, Backend.GRAMMAR);
+            assertRejected(input, Backend.RECURSIVE_DESCENT);
+        }
+    }
+
+    @Test
+    public void testRoundTrip() {
+        for (String input : VALID) {
+            Expression e = Expression.parse(input, Backend.RECURSIVE_DESCENT);
+            assertEquals(input, e, Expression.parse(e.toString(), Backend.RECURSIVE_DESCENT));
+        }
+    }
+
+    @Test
+    public void testDeepNesting() {
+        final int depth = 100000;
+        final StringBuilder parens = new StringBuilder();
+        final StringBuilder nested = new StringBuilder();
+        final StringBuilder close = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            parens.append('(');
+            nested.append(i % 2 == 0 ? "x + (" : "y*(");
+            close.append(')');
+        }
+        assertEquals(Expression.variable("x"), Expression.parse(parens + "x" + close, Backend.RECURSIVE_DESCENT));
+        Expression expected = Expression.variable("z");
+        for (int i = depth - 1; i >= 0; i--) {
+            expected = i % 2 == 0
+                    ? Expression.sum(Expression.variable("x"), expected)
+                    : Expression.product(Expression.variable("y"), expected);
+        }
+        assertEquals(expected, Expression.parse(nested + "z" + close, Backend.RECURSIVE_DESCENT));
+        assertRejected(parens + "x", Backend.RECURSIVE_DESCENT);
+        assertRejected(nested + "z" + close + ")", Backend.RECURSIVE_DESCENT);
+    }
+
+    private static void assertRejected(String input, Backend backend) {
+        try {
+            Expression.parse(input, backend);
+            fail(backend + " accepted \"" + input + "\"");
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package expressivo;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * ColumnKernels using the Vector API: each loop processes as many doubles per
+ * step as the CPU's widest SIMD registers hold, then finishes the remaining
+ * elements one at a time. Lane-wise addition and multiplication are the same
+ * IEEE 754 operations as the scalar ones, so results are identical to ScalarKernels.
+ *
+ * <p>Compile and run with --add-modules jdk.incubator.vector. Loaded by
+ * Kernels.vector() through reflection.
+ */
+final class VectorKernels implements ColumnKernels {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    /**
+     * @throws UnsupportedOperationException if the CPU has no SIMD lanes for doubles
+     */
+    VectorKernels() {
+        if (SPECIES.length() < 2) {
+            throw new UnsupportedOperationException("no SIMD lanes for double");
+        }
+    }
+
+    @Override
+    public void add(double[] x, int xOffset, double[] y, int yOffset, double[] out, int length) {
+        final int bound = SPECIES.loopBound(length);
+        int k = 0;
+        for (; k < bound; k += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, x, xOffset + k)
+                    .add(DoubleVector.fromArray(SPECIES, y, yOffset + k))
+                    .intoArray(out, k);
+        }
+        for (; k < length; k++) {
+            out[k] = x[xOffset + k] + y[yOffset + k];
+        }
+    }
+
+    @Override
+    public void add(double[] x, int xOffset, double c, double[] out, int length) {
+        final int bound = SPECIES.loopBound(length);
+        int k = 0;
+        for (; k < bound; k += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, x, xOffset + k).add(c).intoArray(out, k);
+        }
+        for (; k < length; k++) {
+            out[k] = x[xOffset + k] + c;
+        }
+    }
+
+    @Override
+    public void multiply(double[] x, int xOffset, double[] y, int yOffset, double[] out, int length) {
+        final int bound = SPECIES.loopBound(length);
+        int k = 0;
+        for (; k < bound; k += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, x, xOffset + k)
+                    .mul(DoubleVector.fromArray(SPECIES, y, yOffset + k))
+                    .intoArray(out, k);
+        }
+        for (; k < length; k++) {
+            out[k] = x[xOffset + k] * y[yOffset + k];
+        }
+    }
+
+    @Override
+    public void multiply(double[] x, int xOffset, double c, double[] out, int length) {
+        final int bound = SPECIES.loopBound(length);
+        int k = 0;
+        for (; k < bound; k += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, x, xOffset + k).mul(c).intoArray(out, k);
+        }
+        for (; k < length; k++) {
+            out[k] = x[xOffset + k] * c;
+        }
+    }
+}